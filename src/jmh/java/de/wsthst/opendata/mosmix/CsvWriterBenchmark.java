@@ -0,0 +1,49 @@
+package de.wsthst.opendata.mosmix;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CSV rendering of the MOSMIX_L fixture station to a channel and to a print writer, both discarding the output.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CsvWriterBenchmark {
+
+  private PointTimeForecast station;
+  private CsvWriter writer;
+  private WritableByteChannel channel;
+  private PrintWriter printWriter;
+
+  @Setup
+  public void setUp() throws Exception {
+    byte[] kml = MosmixKmlReaderBenchmark.load(MosmixKmlReaderBenchmark.MOSMIX_L);
+    List<PointTimeForecast> stations = new MosmixKmlReader().read(new ByteArrayInputStream(kml),
+        MosmixKmlInput.parseModelRunTime(MosmixKmlReaderBenchmark.MOSMIX_L), "10637");
+    station = stations.get(0);
+    writer = new CsvWriter();
+    channel = Channels.newChannel(OutputStream.nullOutputStream());
+    printWriter = new PrintWriter(OutputStream.nullOutputStream());
+  }
+
+  @Benchmark
+  public void writeChannel() throws Exception {
+    writer.write(station, channel);
+  }
+
+  @Benchmark
+  public void writePrintWriter() {
+    writer.write(station, printWriter);
+  }
+}
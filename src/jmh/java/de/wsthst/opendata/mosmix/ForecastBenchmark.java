@@ -0,0 +1,58 @@
+package de.wsthst.opendata.mosmix;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import static si.uom.NonSI.DEGREE_ANGLE;
+import static tec.units.ri.unit.MetricPrefix.HECTO;
+import static tec.units.ri.unit.Units.*;
+
+/**
+ * {@link Forecast} getters in the units of the KML input and with unit conversion as used by the CSV output.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ForecastBenchmark {
+
+  private Forecast forecast;
+
+  @Setup
+  public void setUp() {
+    forecast = new Forecast(Instant.parse("2019-02-19T04:00:00Z"));
+    forecast.setTTT(275.45, KELVIN);
+    forecast.setPPPP(101820, PASCAL);
+    forecast.setFF(3.6, METRE_PER_SECOND);
+    forecast.setDD(250, DEGREE_ANGLE);
+  }
+
+  @Benchmark
+  public double temperatureKelvin() {
+    return forecast.getTTT(KELVIN);
+  }
+
+  @Benchmark
+  public double temperatureCelsius() {
+    return forecast.getTTT(CELSIUS);
+  }
+
+  @Benchmark
+  public double pressureHectopascal() {
+    return forecast.getPPPP(HECTO(PASCAL));
+  }
+
+  @Benchmark
+  public double windSpeedKilometresPerHour() {
+    return forecast.getFF(KILOMETRE_PER_HOUR);
+  }
+
+  @Benchmark
+  public double windDirectionDegrees() {
+    return forecast.getDD(DEGREE_ANGLE);
+  }
+}
@@ -0,0 +1,63 @@
+package de.wsthst.opendata.mosmix;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sliding window updates of the {@link MeteoCalculator} over the 240 hourly steps of a MOSMIX_L station.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MeteoCalculatorBenchmark {
+
+  private static final int STEPS = 240;
+
+  private final int[] ww = new int[STEPS];
+  private final double[] rr1 = new double[STEPS];
+  private final double[] sund1 = new double[STEPS];
+  private final double[] ttt = new double[STEPS];
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(1);
+    for (int step = 0; step < STEPS; step++) {
+      ww[step] = random.nextInt(100);
+      rr1[step] = random.nextInt(5) == 0 ? random.nextInt(50) / 10.0 : 0;
+      sund1[step] = random.nextInt(3601);
+      ttt[step] = 273.15 + random.nextInt(300) / 10.0;
+    }
+  }
+
+  @Benchmark
+  public void windowUpdates(Blackhole blackhole) {
+    MeteoCalculator calculator = new MeteoCalculator();
+    for (int step = 0; step < STEPS; step++) {
+      calculator.addWW(ww[step]);
+      calculator.addRR1(rr1[step]);
+      calculator.addSUND1(sund1[step]);
+      calculator.addTTT(ttt[step]);
+      blackhole.consume(calculator.getWW3());
+      blackhole.consume(calculator.getRR3());
+      blackhole.consume(calculator.getRR12());
+      blackhole.consume(calculator.getRR24());
+      blackhole.consume(calculator.getSUND3());
+      blackhole.consume(calculator.getSUND24());
+      blackhole.consume(calculator.getTM());
+    }
+  }
+
+  /**
+   * Recalculation of the compensated 24 hour sum on each of the steps, the largest window of {@link #windowUpdates}.
+   */
+  @Benchmark
+  public double[] windowSums24() {
+    return MeteoCalculator.sums(rr1, 24);
+  }
+}
@@ -0,0 +1,90 @@
+package de.wsthst.opendata.mosmix;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the MOSMIX_S and MOSMIX_L fixtures from memory, all stations and a single station, and of the MOSMIX_S
+ * fixture from a file by both engines.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MosmixKmlReaderBenchmark {
+
+  static final String MOSMIX_S = "MOSMIX_S_2018032907_240.kml";
+  static final String MOSMIX_L = "MOSMIX_L_2019021903_10637.kml";
+
+  private byte[] mosmixS;
+  private byte[] mosmixL;
+  private Instant modelRunTimeS;
+  private Instant modelRunTimeL;
+  private MosmixKmlReader reader;
+  private MosmixKmlReader mappedReader;
+  private Path folder;
+  private Path mosmixSFile;
+
+  @Setup
+  public void setUp() throws IOException {
+    mosmixS = load(MOSMIX_S);
+    mosmixL = load(MOSMIX_L);
+    modelRunTimeS = MosmixKmlInput.parseModelRunTime(MOSMIX_S);
+    modelRunTimeL = MosmixKmlInput.parseModelRunTime(MOSMIX_L);
+    reader = new MosmixKmlReader();
+    mappedReader = new MosmixKmlReader(MosmixKmlSchema.ELEMENT_SYMBOLS, 1, MosmixKmlReader.Engine.MAPPED);
+    folder = Files.createTempDirectory("mosmix");
+    mosmixSFile = Files.write(folder.resolve(MOSMIX_S), mosmixS);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.delete(mosmixSFile);
+    Files.delete(folder);
+  }
+
+  @Benchmark
+  public void readAllMosmixS(Blackhole blackhole) throws Exception {
+    reader.readAll(new ByteArrayInputStream(mosmixS), modelRunTimeS, blackhole::consume);
+  }
+
+  @Benchmark
+  public void readAllMosmixL(Blackhole blackhole) throws Exception {
+    reader.readAll(new ByteArrayInputStream(mosmixL), modelRunTimeL, blackhole::consume);
+  }
+
+  @Benchmark
+  public void readFileStaxMosmixS(Blackhole blackhole) throws Exception {
+    reader.readAll(mosmixSFile, blackhole::consume);
+  }
+
+  @Benchmark
+  public void readFileMappedMosmixS(Blackhole blackhole) throws Exception {
+    mappedReader.readAll(mosmixSFile, blackhole::consume);
+  }
+
+  /**
+   * Extracts the last station of MOSMIX_S, skipping the first one.
+   */
+  @Benchmark
+  public void readStationMosmixS(Blackhole blackhole) throws Exception {
+    reader.read(new ByteArrayInputStream(mosmixS), modelRunTimeS, blackhole::consume, "10637");
+  }
+
+  static byte[] load(String resource) throws IOException {
+    try (InputStream in = MosmixKmlReaderBenchmark.class.getResourceAsStream("/" + resource)) {
+      if (in == null) throw new IOException("Resource " + resource + " not found");
+      return in.readAllBytes();
+    }
+  }
+}
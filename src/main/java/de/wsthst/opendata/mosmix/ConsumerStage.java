@@ -0,0 +1,96 @@
+package de.wsthst.opendata.mosmix;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Pipeline stage passing items in order to a consumer running on its own thread. Items are handed over through a
+ * bounded queue, the producer blocks while the queue is full. A failure of the consumer, including errors, is
+ * rethrown once to the producer by the next call of {@link #accept(Object)} or by {@link #close()}, later items are
+ * discarded so the producer never blocks on a failed stage.
+ *
+ * @param <T> The type of the items.
+ */
+final class ConsumerStage<T> implements Consumer<T>, AutoCloseable {
+
+    private static final Object END = new Object();
+
+    private final Consumer<T> consumer;
+    private final BlockingQueue<Object> queue;
+    private final Thread thread;
+    private volatile Throwable failure;
+    private boolean failureThrown;
+
+    /**
+     * Constructor, starts the thread of the stage.
+     *
+     * @param name     The name of the thread.
+     * @param capacity The maximum number of items waiting to be consumed.
+     * @param consumer The consumer.
+     */
+    ConsumerStage(String name, int capacity, Consumer<T> consumer) {
+        this.consumer = consumer;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(this::consume, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void consume() {
+        try {
+            Object item;
+            while ((item = queue.take()) != END) {
+                if (failure != null) continue;
+                try {
+                    consumer.accept((T) item);
+                } catch (Throwable e) {
+                    failure = e;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Abandoned
+        }
+    }
+
+    @Override
+    public void accept(T item) {
+        checkFailure();
+        put(item);
+    }
+
+    /**
+     * Waits until all items have been consumed and stops the thread.
+     */
+    @Override
+    public void close() {
+        put(END);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            thread.interrupt();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for stage " + thread.getName(), e);
+        }
+        checkFailure();
+    }
+
+    private void put(Object item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            thread.interrupt();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for stage " + thread.getName(), e);
+        }
+    }
+
+    private void checkFailure() {
+        if (failure == null || failureThrown) return;
+        failureThrown = true;
+        if (failure instanceof Error) throw (Error) failure;
+        if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+        throw new IllegalStateException(failure);
+    }
+}
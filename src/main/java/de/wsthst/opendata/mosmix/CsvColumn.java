@@ -0,0 +1,97 @@
+package de.wsthst.opendata.mosmix;
+
+import javax.measure.Unit;
+import javax.measure.quantity.Length;
+import javax.measure.quantity.Pressure;
+import java.util.function.ToDoubleFunction;
+
+import static si.uom.NonSI.DEGREE_ANGLE;
+import static tec.units.ri.unit.MetricPrefix.HECTO;
+import static tec.units.ri.unit.MetricPrefix.MILLI;
+import static tec.units.ri.unit.Units.*;
+
+/**
+ * Columns of the CSV output in order with header, unit and the value in the unit of the column.
+ */
+enum CsvColumn {
+
+    TT("TT", "°C", Format.DECIMAL, fc -> fc.getTTT(CELSIUS)),
+    TD("Td", "°C", Format.DECIMAL, fc -> fc.getTD(CELSIUS)),
+    TX("Tx", "°C", Format.DECIMAL, fc -> fc.getTX(CELSIUS)),
+    TN("Tn", "°C", Format.DECIMAL, fc -> fc.getTN(CELSIUS)),
+    TM("Tm", "°C", Format.DECIMAL, fc -> fc.getTM(CELSIUS)),
+    TG("Tg", "°C", Format.DECIMAL, fc -> fc.getT5cm(CELSIUS)),
+    DD("dd", "°", Format.INTEGER, fc -> CsvWriter.round(fc.getDD(DEGREE_ANGLE), 0)),
+    FF("ff", "km/h", Format.DECIMAL, fc -> fc.getFF(KILOMETRE_PER_HOUR)),
+    FX("fx", "km/h", Format.DECIMAL, fc -> fc.getFX1(KILOMETRE_PER_HOUR)),
+    FX3("fx3", "km/h", Format.DECIMAL, fc -> fc.getFX3(KILOMETRE_PER_HOUR)),
+    RR1("RR1", "mm", Format.DECIMAL, fc -> fc.getRR1(ColumnUnits.MILLIMETRE)),
+    RR3("RR3", "mm", Format.DECIMAL, fc -> fc.getRR3(ColumnUnits.MILLIMETRE)),
+    RR12("RR12", "mm", Format.DECIMAL, fc -> fc.getRR12(ColumnUnits.MILLIMETRE)),
+    RR24("RR24", "mm", Format.DECIMAL, fc -> fc.getRR24(ColumnUnits.MILLIMETRE)),
+    WW("ww", "WW Code", Format.CODE, Forecast::getWW),
+    WW3("ww3", "WW Code", Format.CODE, Forecast::getWW3),
+    N("N", "1/8", Format.INTEGER, fc -> CsvWriter.round(fc.getN(PERCENT), 2) / 100.0 * 8.0),
+    NF("Nf", "1/8", Format.INTEGER, fc -> CsvWriter.round(fc.getNEFF(PERCENT), 2) / 100.0 * 8.0),
+    PPPP("PPPP", "hPa", Format.DECIMAL, fc -> fc.getPPPP(ColumnUnits.HECTOPASCAL)),
+    SS1("SS1", "h", Format.DECIMAL, fc -> fc.getSUND1(HOUR)),
+    SS3("SS3", "h", Format.DECIMAL, fc -> fc.getSUND3(HOUR)),
+    SS24("SS24", "h", Format.DECIMAL, fc -> fc.getSUND24(HOUR));
+
+    /**
+     * Formatting of the values.
+     */
+    enum Format {
+        /**
+         * Rounded to one decimal.
+         */
+        DECIMAL,
+        /**
+         * Rounded to an integer.
+         */
+        INTEGER,
+        /**
+         * Integer code.
+         */
+        CODE
+    }
+
+    private final String header;
+    private final String unit;
+    private final Format format;
+    private final ToDoubleFunction<Forecast> value;
+
+    CsvColumn(String header, String unit, Format format, ToDoubleFunction<Forecast> value) {
+        this.header = header;
+        this.unit = unit;
+        this.format = format;
+        this.value = value;
+    }
+
+    String getHeader() {
+        return header;
+    }
+
+    String getUnit() {
+        return unit;
+    }
+
+    Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Returns the value of a forecast in the unit of the column.
+     */
+    double value(Forecast fc) {
+        return value.applyAsDouble(fc);
+    }
+
+    /**
+     * Units of the columns not predefined.
+     */
+    private static final class ColumnUnits {
+        private static final Unit<Length> MILLIMETRE = MILLI(METRE);
+        private static final Unit<Pressure> HECTOPASCAL = HECTO(PASCAL);
+    }
+}
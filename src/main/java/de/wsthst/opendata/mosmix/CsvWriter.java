@@ -1,68 +1,334 @@
 package de.wsthst.opendata.mosmix;
 
 import org.apache.commons.math3.util.Precision;
-import org.apache.commons.text.TextStringBuilder;
 
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import static java.time.ZoneOffset.UTC;
-import static si.uom.NonSI.DEGREE_ANGLE;
-import static tec.units.ri.unit.MetricPrefix.HECTO;
-import static tec.units.ri.unit.MetricPrefix.MILLI;
-import static tec.units.ri.unit.Units.*;
 
+/**
+ * Writes a point time forecast as CSV.
+ * <p>
+ * Rows are rendered into a reusable UTF-8 byte buffer without allocations per value: numbers are formatted by a
+ * fixed decimal formatter, timestamps are cached per hour and missing values are written as "---" directly.
+ * The output is identical to rounding with {@link Precision#round(double, int)} and printing the result, only values
+ * of 10^7 and more are formatted exactly that way.
+ * An instance is not thread-safe but should be reused for many stations.
+ */
 public final class CsvWriter {
 
+    static final String NO_VALUE_STRING = "---";
+
+    private static final CsvColumn[] COLUMNS = CsvColumn.values();
+    private static final byte[] HEADER = ascii("forecast;parameter;"
+        + Arrays.stream(COLUMNS).map(CsvColumn::getHeader).collect(Collectors.joining(";")));
+    private static final byte[] TODAY = ascii("today ");
+    private static final byte[] UNIT_HEADER = ("UTC;unit;"
+        + Arrays.stream(COLUMNS).map(CsvColumn::getUnit).collect(Collectors.joining(";"))).getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NO_VALUE = ascii(NO_VALUE_STRING);
+    private static final byte[] NO_VALUES = ascii(String.join(";", Collections.nCopies(COLUMNS.length, NO_VALUE_STRING)));
+    private static final byte[] LINE_SEPARATOR = ascii(System.lineSeparator());
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yy;HH:mm");
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_VALUE_LENGTH = 32;
+    private static final double FAST_PATH_LIMIT = 1e7;
+    private static final double TIE_EPSILON = 1e-6;
+    private static final int TIME_CACHE_SIZE = 512;
+
+    private final List<DerivedParameter> derivedParameters;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+    private int position;
+    private WritableByteChannel channel;
+    private PrintWriter writer;
+    private final long[] cachedHours = new long[TIME_CACHE_SIZE];
+    private final byte[][] cachedTimes = new byte[TIME_CACHE_SIZE][];
+
+    /**
+     * Constructor for the MOSMIX elements only.
+     */
+    public CsvWriter() {
+        this(Collections.emptyList());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param derivedParameters Derived parameters written as additional columns, calculated by a {@link DerivedParameterEngine}.
+     */
+    public CsvWriter(List<? extends DerivedParameter> derivedParameters) {
+        this.derivedParameters = List.copyOf(derivedParameters);
+        Arrays.fill(cachedHours, Long.MIN_VALUE);
+    }
+
     public void write(PointTimeForecast ptfc, PrintWriter writer) {
+        this.writer = writer;
+        try {
+            write(ptfc);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            this.writer = null;
+        }
+    }
+
+    /**
+     * Writes the CSV encoded in UTF-8 to a channel.
+     */
+    public void write(PointTimeForecast ptfc, WritableByteChannel channel) throws IOException {
+        this.channel = channel;
+        try {
+            write(ptfc);
+        } finally {
+            this.channel = null;
+        }
+    }
+
+    private void write(PointTimeForecast ptfc) throws IOException {
+        position = 0;
         ZonedDateTime modelRunTimeUtc = ptfc.getModelRunTime().atZone(UTC);
-        DateTimeFormatter timeFormat = DateTimeFormatter.ofPattern("dd.MM.yy;HH:mm");
-        writer.println("forecast;parameter;TT;Td;Tx;Tn;Tm;Tg;dd;ff;fx;fx3;RR1;RR3;RR12;RR24;ww;ww3;N;Nf;PPPP;SS1;SS3;SS24");
-        writer.printf("today %02d UTC;unit;°C;°C;°C;°C;°C;°C;°;km/h;km/h;km/h;mm;mm;mm;mm;WW Code;WW Code;1/8;1/8;hPa;h;h;h", modelRunTimeUtc.getHour());
-        writer.println();
+        append(HEADER);
+        for (DerivedParameter parameter : derivedParameters) {
+            append(';');
+            append(parameter.getName().getBytes(StandardCharsets.UTF_8));
+        }
+        append(LINE_SEPARATOR);
+        append(TODAY);
+        appendTwoDigits(modelRunTimeUtc.getHour());
+        append(' ');
+        append(UNIT_HEADER);
+        for (DerivedParameter parameter : derivedParameters) {
+            append(';');
+            append(parameter.getUnit().getBytes(StandardCharsets.UTF_8));
+        }
+        append(LINE_SEPARATOR);
 
-        TextStringBuilder line = new TextStringBuilder();
         ZonedDateTime modelRunTimeUtcMidnight = modelRunTimeUtc.withHour(0);
         Duration durationToMidnight = Duration.between(modelRunTimeUtcMidnight, modelRunTimeUtc);
         for (int hour = 0; hour <= durationToMidnight.toHours(); hour++) {
-            line
-                .append(modelRunTimeUtcMidnight.plusHours(hour).format(timeFormat)).append(";")
-                .append("---;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---");
-            writer.println(line);
-            line.clear();
+            appendTime(modelRunTimeUtcMidnight.plusHours(hour).toInstant());
+            append(';');
+            append(NO_VALUES);
+            for (int i = 0; i < derivedParameters.size(); i++) {
+                append(';');
+                append(NO_VALUE);
+            }
+            append(LINE_SEPARATOR);
         }
 
         for (Forecast fc : ptfc) {
-            line
-                .append(fc.getForecastTime().atZone(UTC).format(timeFormat)).append(";")
-                .append(Precision.round(fc.getTTT(CELSIUS), 1)).append(";")
-                .append(Precision.round(fc.getTD(CELSIUS), 1)).append(";")
-                .append(Precision.round(fc.getTX(CELSIUS), 1)).append(";")
-                .append(Precision.round(fc.getTN(CELSIUS), 1)).append(";")
-                .append(Precision.round(fc.getTM(CELSIUS), 1)).append(";")
-                .append(Precision.round(fc.getT5cm(CELSIUS), 1)).append(";")
-                .append("%.0f", Precision.round(fc.getDD(DEGREE_ANGLE), 0)).append(";")
-                .append(Precision.round(fc.getFF(KILOMETRE_PER_HOUR), 1)).append(";")
-                .append(Precision.round(fc.getFX1(KILOMETRE_PER_HOUR), 1)).append(";")
-                .append(Precision.round(fc.getFX3(KILOMETRE_PER_HOUR), 1)).append(";")
-                .append(Precision.round(fc.getRR1(MILLI(METRE)), 1)).append(";")
-                .append(Precision.round(fc.getRR3(MILLI(METRE)), 1)).append(";")
-                .append(Precision.round(fc.getRR12(MILLI(METRE)), 1)).append(";")
-                .append(Precision.round(fc.getRR24(MILLI(METRE)), 1)).append(";")
-                .append(fc.getWW()).append(";")
-                .append(fc.getWW3()).append(";")
-                .append("%.0f", Precision.round(fc.getN(PERCENT), 2) / 100.0 * 8.0).append(";")
-                .append("%.0f", Precision.round(fc.getNEFF(PERCENT), 2) / 100.0 * 8.0).append(";")
-                .append(Precision.round(fc.getPPPP(HECTO(PASCAL)), 1)).append(";")
-                .append(Precision.round(fc.getSUND1(HOUR), 1)).append(";")
-                .append(Precision.round(fc.getSUND3(HOUR), 1)).append(";")
-                .append(Precision.round(fc.getSUND24(HOUR), 1))
-                .replaceAll("NaN", "---");
-            writer.println(line);
-            line.clear();
+            appendTime(fc.getForecastTime());
+            for (CsvColumn column : COLUMNS) {
+                switch (column.getFormat()) {
+                    case DECIMAL -> appendScale1(column.value(fc));
+                    case INTEGER -> appendInteger(column.value(fc));
+                    case CODE -> appendCode(column.value(fc));
+                }
+            }
+            for (DerivedParameter parameter : derivedParameters) {
+                appendScale1(fc.getDerived(parameter.getName()));
+            }
+            append(LINE_SEPARATOR);
+        }
+        flush();
+    }
+
+    /**
+     * Appends a delimiter and the value rounded to one decimal, printed like {@link Double#toString(double)}.
+     */
+    private void appendScale1(double value) {
+        ensure(MAX_VALUE_LENGTH);
+        buffer[position++] = ';';
+        if (Double.isNaN(value)) {
+            append(NO_VALUE);
+            return;
         }
+        long tenths = roundHalfUp(Math.abs(value), 10);
+        if (tenths < 0) {
+            append(ascii(Double.toString(Precision.round(value, 1))));
+            return;
+        }
+        if (Double.doubleToRawLongBits(value) < 0) buffer[position++] = '-';
+        appendLong(tenths / 10);
+        buffer[position++] = '.';
+        buffer[position++] = (byte) ('0' + tenths % 10);
     }
 
+    /**
+     * Appends a delimiter and the value formatted with "%.0f".
+     */
+    private void appendInteger(double value) {
+        ensure(MAX_VALUE_LENGTH);
+        buffer[position++] = ';';
+        if (Double.isNaN(value)) {
+            append(NO_VALUE);
+            return;
+        }
+        long units = roundHalfUp(Math.abs(value), 1);
+        if (units < 0) {
+            append(ascii(String.format("%.0f", value)));
+            return;
+        }
+        if (Double.doubleToRawLongBits(value) < 0) buffer[position++] = '-';
+        appendLong(units);
+    }
+
+    /**
+     * Appends a delimiter and the code, no value for {@link Forecast#NO_CODE}.
+     */
+    private void appendCode(double value) {
+        append(';');
+        if (value == Forecast.NO_CODE) {
+            append(NO_VALUE);
+            return;
+        }
+        appendLong((long) value);
+    }
+
+    /**
+     * Returns the text of a single CSV value, e.g. for further processing into other formats.
+     */
+    static String format(CsvColumn.Format format, double value) {
+        if (Double.isNaN(value)) return NO_VALUE_STRING;
+        return switch (format) {
+            case DECIMAL -> Double.toString(round(value, 1));
+            case INTEGER -> {
+                long units = roundHalfUp(Math.abs(value), 1);
+                if (units < 0) yield String.format("%.0f", value);
+                yield Double.doubleToRawLongBits(value) < 0 ? "-" + units : Long.toString(units);
+            }
+            case CODE -> value == Forecast.NO_CODE ? NO_VALUE_STRING : Long.toString((long) value);
+        };
+    }
+
+    /**
+     * Rounds like {@link Precision#round(double, int)}.
+     */
+    static double round(double value, int scale) {
+        if (Double.isNaN(value)) return value;
+        double factor = scale == 2 ? 100 : Math.pow(10, scale);
+        long units = roundHalfUp(Math.abs(value), factor);
+        if (units < 0) return Precision.round(value, scale);
+        return Math.copySign(units / factor, value);
+    }
+
+    /**
+     * Returns the positive value multiplied by the factor and rounded half up like its shortest decimal representation,
+     * or -1 if the value is too large.
+     * <p>
+     * Close to a tie the value is compared to the double nearest to the decimal tie, the quotient of two exact integers.
+     * Any decimal representation of a larger double is above the tie, of a smaller double below, and the tie itself is
+     * the shortest representation of the double nearest to it, which rounds up.
+     */
+    private static long roundHalfUp(double value, double factor) {
+        if (!(value < FAST_PATH_LIMIT)) return -1;
+        double scaled = value * factor;
+        double floor = Math.floor(scaled);
+        double fraction = scaled - floor;
+        if (Math.abs(fraction - 0.5) < TIE_EPSILON) return (long) floor + (value >= (2 * floor + 1) / (2 * factor) ? 1 : 0);
+        return (long) floor + (fraction > 0.5 ? 1 : 0);
+    }
+
+    private void appendTime(Instant time) {
+        long epochSecond = time.getEpochSecond();
+        if (epochSecond % 3600 != 0 || time.getNano() != 0) {
+            append(ascii(time.atZone(UTC).format(TIME_FORMAT)));
+            return;
+        }
+        long hour = epochSecond / 3600;
+        int slot = Math.floorMod(hour, TIME_CACHE_SIZE);
+        if (cachedHours[slot] != hour) {
+            cachedTimes[slot] = ascii(time.atZone(UTC).format(TIME_FORMAT));
+            cachedHours[slot] = hour;
+        }
+        append(cachedTimes[slot]);
+    }
+
+    private void appendTwoDigits(int value) {
+        ensure(2);
+        buffer[position++] = (byte) ('0' + value / 10);
+        buffer[position++] = (byte) ('0' + value % 10);
+    }
+
+    private void appendLong(long value) {
+        ensure(20);
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int start = position;
+        do {
+            buffer[position++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+    }
+
+    private void append(char c) {
+        ensure(1);
+        buffer[position++] = (byte) c;
+    }
+
+    private void append(byte[] bytes) {
+        if (bytes.length > BUFFER_SIZE) {
+            flushUnchecked();
+            try {
+                writeOut(bytes, bytes.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return;
+        }
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void ensure(int length) {
+        if (position + length > BUFFER_SIZE) flushUnchecked();
+    }
+
+    private void flushUnchecked() {
+        try {
+            flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void flush() throws IOException {
+        writeOut(buffer, position);
+        position = 0;
+    }
+
+    private void writeOut(byte[] bytes, int length) throws IOException {
+        if (writer != null) {
+            writer.write(new String(bytes, 0, length, StandardCharsets.UTF_8));
+        } else {
+            ByteBuffer out = bytes == buffer ? byteBuffer.clear().limit(length) : ByteBuffer.wrap(bytes, 0, length);
+            while (out.hasRemaining()) channel.write(out);
+        }
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
 }
@@ -0,0 +1,39 @@
+package de.wsthst.opendata.mosmix;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Meteorological parameter derived from the MOSMIX elements of a station, calculated by the {@link DerivedParameterEngine}
+ * over complete time series.
+ */
+public interface DerivedParameter {
+
+    /**
+     * Returns the name, used as CSV column header and for {@link Forecast#getDerived(String)}.
+     */
+    String getName();
+
+    /**
+     * Returns the unit of the calculated values as written to the CSV unit header.
+     */
+    String getUnit();
+
+    /**
+     * Returns the MOSMIX element symbols required for the calculation, e.g. TTT.
+     */
+    Set<String> getElements();
+
+    /**
+     * Returns the number of hourly time steps each value covers, 1 for values of a single time step.
+     */
+    int getWindow();
+
+    /**
+     * Calculates the parameter for all time steps.
+     *
+     * @param series The time series of the required elements by symbol in the units of the KML input.
+     * @return The values for all time steps, NaN where they cannot be calculated.
+     */
+    double[] calculate(Map<String, double[]> series);
+}
@@ -0,0 +1,73 @@
+package de.wsthst.opendata.mosmix;
+
+import java.util.*;
+
+/**
+ * Calculates derived parameters for point time forecasts. The time series of all required elements are extracted
+ * once per station, each parameter is then calculated over its complete series. The results are attached to the
+ * forecasts, see {@link Forecast#getDerived(String)}.
+ */
+public final class DerivedParameterEngine {
+
+    private final List<DerivedParameter> parameters;
+    private final Map<String, Integer> parameterIndex;
+    private final Map<String, ElementRegistry.Element> inputs = new LinkedHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param parameters The parameters to calculate.
+     */
+    public DerivedParameterEngine(Collection<? extends DerivedParameter> parameters) {
+        this.parameters = List.copyOf(parameters);
+        Map<String, Integer> index = new HashMap<>();
+        for (DerivedParameter parameter : this.parameters) {
+            if (index.put(parameter.getName(), index.size()) != null) {
+                throw new IllegalArgumentException("Duplicate derived parameter " + parameter.getName());
+            }
+            for (String element : parameter.getElements()) {
+                ElementRegistry.Element registered = ElementRegistry.find(element);
+                if (registered == null) throw new IllegalArgumentException("Unknown element " + element + " of derived parameter " + parameter.getName());
+                inputs.put(element, registered);
+            }
+        }
+        parameterIndex = Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * Returns the parameters in the order of calculation.
+     */
+    public List<DerivedParameter> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Calculates all parameters of a point time forecast and attaches the values to its forecasts.
+     */
+    public void apply(PointTimeForecast ptfc) {
+        List<Forecast> forecasts = new ArrayList<>();
+        ptfc.forEach(forecasts::add);
+
+        Map<String, double[]> series = new HashMap<>();
+        for (Map.Entry<String, ElementRegistry.Element> input : inputs.entrySet()) {
+            double[] values = new double[forecasts.size()];
+            for (int step = 0; step < values.length; step++) values[step] = forecasts.get(step).get(input.getValue());
+            series.put(input.getKey(), values);
+        }
+
+        double[][] results = new double[parameters.size()][];
+        for (int i = 0; i < results.length; i++) {
+            DerivedParameter parameter = parameters.get(i);
+            results[i] = parameter.calculate(Collections.unmodifiableMap(series));
+            if (results[i].length != forecasts.size()) {
+                throw new IllegalStateException("Derived parameter " + parameter.getName() + " returned " + results[i].length + " values for " + forecasts.size() + " forecasts");
+            }
+        }
+
+        for (int step = 0; step < forecasts.size(); step++) {
+            double[] values = new double[results.length];
+            for (int i = 0; i < results.length; i++) values[i] = results[i][step];
+            forecasts.get(step).setDerived(parameterIndex, values);
+        }
+    }
+}
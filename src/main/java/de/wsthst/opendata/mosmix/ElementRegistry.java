@@ -0,0 +1,207 @@
+package de.wsthst.opendata.mosmix;
+
+import com.google.common.collect.ImmutableMap;
+
+import javax.measure.IncommensurableException;
+import javax.measure.Quantity;
+import javax.measure.UnconvertibleException;
+import javax.measure.Unit;
+import javax.measure.UnitConverter;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static si.uom.NonSI.DEGREE_ANGLE;
+import static tec.units.ri.AbstractUnit.ONE;
+import static tec.units.ri.unit.MetricPrefix.KILO;
+import static tec.units.ri.unit.MetricPrefix.MILLI;
+import static tec.units.ri.unit.Units.*;
+
+/**
+ * Registry of the MOSMIX elements, mapping each symbol to the unit of its values in the KML input and a storage slot.
+ * The units are read from the bundled table mosmix_elements.csv, which lists the MOSMIX_L element set. Elements not
+ * listed are registered on first use as dimensionless. The elements of {@link MosmixKmlSchema#ELEMENT_SYMBOLS} are
+ * stored in the typed fields of {@link Forecast}, all others in the {@link ElementSeries} of their station.
+ */
+final class ElementRegistry {
+
+    private static final String RESOURCE = "/mosmix_elements.csv";
+    private static final String DIFFERENCE_UNIT = "dK";
+
+    private static final Map<String, Unit<?>> UNITS = ImmutableMap.<String, Unit<?>>builder()
+        .put("K", KELVIN)
+        .put("dK", KELVIN)
+        .put("Pa", PASCAL)
+        .put("deg", DEGREE_ANGLE)
+        .put("m/s", METRE_PER_SECOND)
+        .put("%", PERCENT)
+        .put("m", METRE)
+        .put("mm", MILLI(METRE))
+        .put("s", SECOND)
+        .put("kJ/m2", KILO(JOULE).divide(SQUARE_METRE))
+        .put("1", ONE)
+        .build();
+
+    private static final Map<String, ForecastColumn> COLUMNS = ImmutableMap.<String, ForecastColumn>builder()
+        .put(MosmixKmlSchema.PPPP_SYMBOL, ForecastColumn.PPPP)
+        .put(MosmixKmlSchema.TX_SYMBOL, ForecastColumn.TX)
+        .put(MosmixKmlSchema.TTT_SYMBOL, ForecastColumn.TTT)
+        .put(MosmixKmlSchema.TD_SYMBOL, ForecastColumn.TD)
+        .put(MosmixKmlSchema.TN_SYMBOL, ForecastColumn.TN)
+        .put(MosmixKmlSchema.T5CM_SYMBOL, ForecastColumn.T5CM)
+        .put(MosmixKmlSchema.DD_SYMBOL, ForecastColumn.DD)
+        .put(MosmixKmlSchema.FF_SYMBOL, ForecastColumn.FF)
+        .put(MosmixKmlSchema.FX1_SYMBOL, ForecastColumn.FX1)
+        .put(MosmixKmlSchema.FX3_SYMBOL, ForecastColumn.FX3)
+        .put(MosmixKmlSchema.N_SYMBOL, ForecastColumn.N)
+        .put(MosmixKmlSchema.NEFF_SYMBOL, ForecastColumn.NEFF)
+        .put(MosmixKmlSchema.WW_SYMBOL, ForecastColumn.WW)
+        .put(MosmixKmlSchema.RR1_SYMBOL, ForecastColumn.RR1)
+        .put(MosmixKmlSchema.RR3_SYMBOL, ForecastColumn.RR3)
+        .put(MosmixKmlSchema.SUND1_SYMBOL, ForecastColumn.SUND1)
+        .build();
+
+    private static final AtomicInteger NEXT_SLOT = new AtomicInteger();
+    private static final Map<String, Element> ELEMENTS = new ConcurrentHashMap<>();
+    private static final Set<String> LISTED_SYMBOLS = loadElements();
+
+    private ElementRegistry() {}
+
+    /**
+     * Returns the symbols of the elements listed in the bundled table, in table order.
+     */
+    static Set<String> getListedSymbols() {
+        return LISTED_SYMBOLS;
+    }
+
+    /**
+     * Returns a listed or already registered element.
+     *
+     * @return The element or null if the symbol is unknown.
+     */
+    static Element find(String symbol) {
+        return ELEMENTS.get(symbol);
+    }
+
+    /**
+     * Returns the element of the given symbol, registering an unknown symbol as dimensionless element.
+     */
+    static Element register(String symbol) {
+        Element element = ELEMENTS.get(symbol);
+        if (element != null) return element;
+        return ELEMENTS.computeIfAbsent(symbol, s -> new Element(s, ONE, NEXT_SLOT.getAndIncrement(), null, false));
+    }
+
+    private static Set<String> loadElements() {
+        Set<String> symbols = new LinkedHashSet<>();
+        try (InputStream in = ElementRegistry.class.getResourceAsStream(RESOURCE)) {
+            if (in == null) throw new IllegalStateException("Resource " + RESOURCE + " not found");
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line = reader.readLine();
+            while (line != null && line.startsWith("#")) line = reader.readLine();
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                String[] fields = line.split(";");
+                Unit<?> unit = UNITS.get(fields[1]);
+                if (unit == null) throw new IllegalStateException("Unknown unit " + fields[1] + " of element " + fields[0] + " in " + RESOURCE);
+                ELEMENTS.put(fields[0], new Element(fields[0], unit, NEXT_SLOT.getAndIncrement(), COLUMNS.get(fields[0]),
+                    DIFFERENCE_UNIT.equals(fields[1])));
+                symbols.add(fields[0]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!symbols.containsAll(COLUMNS.keySet())) throw new IllegalStateException("Missing elements in " + RESOURCE);
+        return Collections.unmodifiableSet(symbols);
+    }
+
+    /**
+     * A MOSMIX element.
+     */
+    static final class Element {
+
+        private final String symbol;
+        private final Unit<?> unit;
+        private final int slot;
+        private final ForecastColumn column;
+        private final boolean difference;
+        private final Map<Unit<?>, UnitConverter> converters = new ConcurrentHashMap<>();
+
+        private Element(String symbol, Unit<?> unit, int slot, ForecastColumn column, boolean difference) {
+            this.symbol = symbol;
+            this.unit = unit;
+            this.slot = slot;
+            this.column = column;
+            this.difference = difference;
+        }
+
+        String getSymbol() {
+            return symbol;
+        }
+
+        /**
+         * Returns the unit of the values in the KML input.
+         */
+        Unit<?> getUnit() {
+            return unit;
+        }
+
+        /**
+         * Returns the slot of the values in an {@link ElementSeries}, unique among all elements.
+         */
+        int getSlot() {
+            return slot;
+        }
+
+        /**
+         * Returns the column of the typed field of {@link Forecast} or null if the values are stored in an
+         * {@link ElementSeries}.
+         */
+        ForecastColumn getColumn() {
+            return column;
+        }
+
+        /**
+         * Returns true if the values are differences, e.g. the error range of a temperature, which only convert to units
+         * without offset.
+         */
+        boolean isDifference() {
+            return difference;
+        }
+
+        /**
+         * Converts a value given in the unit of the element to the given unit.
+         *
+         * @throws IllegalArgumentException If the unit is incompatible with the unit of the element or has an offset to
+         * the unit of a difference.
+         */
+        <Q extends Quantity<Q>> double convert(double value, Unit<Q> to) {
+            if (to.equals(unit)) return value;
+            return converters.computeIfAbsent(to, this::converterTo).convert(value);
+        }
+
+        private UnitConverter converterTo(Unit<?> to) {
+            UnitConverter converter;
+            try {
+                converter = unit.getConverterToAny(to);
+            } catch (IncommensurableException | UnconvertibleException e) {
+                throw new IllegalArgumentException("Unit " + to + " is incompatible with unit " + unit + " of element " + symbol, e);
+            }
+            if (difference && !converter.isLinear()) {
+                throw new IllegalArgumentException("Unit " + to + " has an offset to unit " + unit + " of the difference element " + symbol);
+            }
+            return converter;
+        }
+
+        @Override
+        public String toString() {
+            return symbol;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package de.wsthst.opendata.mosmix;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Time series of the elements of one station without typed fields in {@link Forecast}, shared by all forecasts of the
+ * station. Only the elements present in the station are stored, as one array per element sorted by slot.
+ */
+final class ElementSeries {
+
+    private final int[] slots;
+    private final double[][] values;
+
+    /**
+     * Constructor.
+     *
+     * @param valuesBySlot The values of each time step by slot of the element, see {@link ElementRegistry.Element#getSlot()}.
+     */
+    ElementSeries(SortedMap<Integer, double[]> valuesBySlot) {
+        this.slots = new int[valuesBySlot.size()];
+        this.values = new double[valuesBySlot.size()][];
+        int i = 0;
+        for (Map.Entry<Integer, double[]> entry : valuesBySlot.entrySet()) {
+            slots[i] = entry.getKey();
+            values[i++] = entry.getValue();
+        }
+    }
+
+    /**
+     * Returns the value of an element at a time step beginning with 0 in the unit of the element.
+     *
+     * @return The value or NaN if the element is not present.
+     */
+    double get(int slot, int step) {
+        int i = Arrays.binarySearch(slots, slot);
+        return i >= 0 ? values[i][step] : Double.NaN;
+    }
+
+    /**
+     * Returns the number of elements stored.
+     */
+    int size() {
+        return slots.length;
+    }
+}
@@ -7,42 +7,58 @@ import javax.measure.Quantity;
 import javax.measure.Unit;
 import javax.measure.quantity.*;
 import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Objects;
 
 import static java.lang.Double.NaN;
-import static si.uom.NonSI.DEGREE_ANGLE;
-import static tec.units.ri.unit.MetricPrefix.MILLI;
-import static tec.units.ri.unit.Units.*;
-import static tec.uom.se.quantity.Quantities.getQuantity;
 
 /**
  * Value object for one meteorological forecast.
+ * Values are stored as primitives in the units of the KML input and converted on access.
  */
 public final class Forecast implements Comparable<Forecast> {
 
+    /**
+     * Significant weather code of an element not read.
+     */
+    public static final int NO_CODE = -1;
+
+    private static final UnitConversion<Pressure> PRESSURE = new UnitConversion<>(MosmixKmlSchema.PPPP_UNIT);
+    private static final UnitConversion<Temperature> TEMPERATURE = new UnitConversion<>(MosmixKmlSchema.T_UNIT);
+    private static final UnitConversion<Angle> ANGLE = new UnitConversion<>(MosmixKmlSchema.DD_UNIT);
+    private static final UnitConversion<Speed> SPEED = new UnitConversion<>(MosmixKmlSchema.F_UNIT);
+    private static final UnitConversion<Dimensionless> CLOUD_COVER = new UnitConversion<>(MosmixKmlSchema.N_UNIT);
+    private static final UnitConversion<Length> PRECIPITATION = new UnitConversion<>(MosmixKmlSchema.RR_UNIT);
+    private static final UnitConversion<Time> SUNSHINE_DURATION = new UnitConversion<>(MosmixKmlSchema.SUND_UNIT);
+
     private Instant forecastTime;
-    private Quantity<Pressure> pppp;
-    private Quantity<Temperature> ttt;
-    private Quantity<Temperature> td;
-    private Quantity<Temperature> t5cm;
-    private Quantity<Temperature> tx;
-    private Quantity<Temperature> tn;
-    private Quantity<Temperature> tm;
-    private Quantity<Angle> dd;
-    private Quantity<Speed> ff;
-    private Quantity<Speed> fx1;
-    private Quantity<Speed> fx3;
-    private Quantity<Dimensionless> n;
-    private Quantity<Dimensionless> neff;
-    private int ww;
-    private int ww3;
-    private Quantity<Length> rr1;
-    private Quantity<Length> rr3;
-    private Quantity<Length> rr12;
-    private Quantity<Length> rr24;
-    private Quantity<Time> sund1;
-    private Quantity<Time> sund3;
-    private Quantity<Time> sund24;
+    private double pppp = NaN;
+    private double ttt = NaN;
+    private double td = NaN;
+    private double t5cm = NaN;
+    private double tx = NaN;
+    private double tn = NaN;
+    private double tm = NaN;
+    private double dd = NaN;
+    private double ff = NaN;
+    private double fx1 = NaN;
+    private double fx3 = NaN;
+    private double n = NaN;
+    private double neff = NaN;
+    private int ww = NO_CODE;
+    private int ww3 = NO_CODE;
+    private double rr1 = NaN;
+    private double rr3 = NaN;
+    private double rr12 = NaN;
+    private double rr24 = NaN;
+    private double sund1 = NaN;
+    private double sund3 = NaN;
+    private double sund24 = NaN;
+    private Map<String, Integer> derivedIndex = Collections.emptyMap();
+    private double[] derivedValues;
+    private ElementSeries elementSeries;
+    private int step;
 
     /**
      * Constructor.
@@ -51,26 +67,6 @@ public final class Forecast implements Comparable<Forecast> {
      */
     public Forecast(Instant forecastTime) {
         this.forecastTime = forecastTime;
-        pppp = getQuantity(NaN, PASCAL);
-        tx = getQuantity(NaN, KELVIN);
-        ttt = getQuantity(NaN, KELVIN);
-        td = getQuantity(NaN, KELVIN);
-        tn = getQuantity(NaN, KELVIN);
-        t5cm = getQuantity(NaN, KELVIN);
-        tm = getQuantity(NaN, KELVIN);
-        dd = getQuantity(NaN, DEGREE_ANGLE);
-        ff = getQuantity(NaN, METRE_PER_SECOND);
-        fx1 = getQuantity(NaN, METRE_PER_SECOND);
-        fx3 = getQuantity(NaN, METRE_PER_SECOND);
-        n = getQuantity(NaN, PERCENT);
-        neff = getQuantity(NaN, PERCENT);
-        rr1 = getQuantity(NaN, MILLI(METRE));
-        rr3 = getQuantity(NaN, MILLI(METRE));
-        rr12 = getQuantity(NaN, MILLI(METRE));
-        rr24 = getQuantity(NaN, MILLI(METRE));
-        sund1 = getQuantity(NaN, SECOND);
-        sund3 = getQuantity(NaN, SECOND);
-        sund24 = getQuantity(NaN, SECOND);
     }
 
     public Instant getForecastTime() {
@@ -82,140 +78,140 @@ public final class Forecast implements Comparable<Forecast> {
     }
 
     void setPPPP(double value, Unit<Pressure> unit) {
-        pppp = getQuantity(value, unit);
+        pppp = PRESSURE.toCanonical(value, unit);
     }
 
     /**
      * Returns the air pressure at sea level.
      */
     public double getPPPP(Unit<Pressure> unit) {
-        return pppp.to(unit).getValue().doubleValue();
+        return PRESSURE.fromCanonical(pppp, unit);
     }
 
     void setTX(double value, Unit<Temperature> unit) {
-        tx = getQuantity(value, unit);
+        tx = TEMPERATURE.toCanonical(value, unit);
     }
 
     public double getTX(Unit<Temperature> unit) {
-        return tx.to(unit).getValue().doubleValue();
+        return TEMPERATURE.fromCanonical(tx, unit);
     }
 
     void setTTT(double value, Unit<Temperature> unit) {
-        ttt = getQuantity(value, unit);
+        ttt = TEMPERATURE.toCanonical(value, unit);
     }
 
     /**
      * Return the temperature air.
      */
     public double getTTT(Unit<Temperature> unit) {
-        return ttt.to(unit).getValue().doubleValue();
+        return TEMPERATURE.fromCanonical(ttt, unit);
     }
 
     void setTD(double value, Unit<Temperature> unit) {
-        td = getQuantity(value, unit);
+        td = TEMPERATURE.toCanonical(value, unit);
     }
 
     /**
      * Returns the dew point.
      */
     public double getTD(Unit<Temperature> unit) {
-        return td.to(unit).getValue().doubleValue();
+        return TEMPERATURE.fromCanonical(td, unit);
     }
 
     void setTN(double value, Unit<Temperature> unit) {
-        tn = getQuantity(value, unit);
+        tn = TEMPERATURE.toCanonical(value, unit);
     }
 
     public double getTN(Unit<Temperature> unit) {
-        return tn.to(unit).getValue().doubleValue();
+        return TEMPERATURE.fromCanonical(tn, unit);
     }
 
     void setTM(double value, Unit<Temperature> unit) {
-        tm = getQuantity(value, unit);
+        tm = TEMPERATURE.toCanonical(value, unit);
     }
 
     /**
      * Returns the temperature air daily mean of the last 24 hours.
      */
     public double getTM(Unit<Temperature> unit) {
-        return tm.to(unit).getValue().doubleValue();
+        return TEMPERATURE.fromCanonical(tm, unit);
     }
 
     void setT5cm(double value, Unit<Temperature> unit) {
-        t5cm = getQuantity(value, unit);
+        t5cm = TEMPERATURE.toCanonical(value, unit);
     }
 
     /**
      * Returns the temperature air at 5 cm over ground.
      */
     public double getT5cm(Unit<Temperature> unit) {
-        return t5cm.to(unit).getValue().doubleValue();
+        return TEMPERATURE.fromCanonical(t5cm, unit);
     }
 
     void setDD(double value, Unit<Angle> unit) {
-        dd = getQuantity(value, unit);
+        dd = ANGLE.toCanonical(value, unit);
     }
 
     /**
      * Returns the wind direction.
      */
     public double getDD(Unit<Angle> unit) {
-        return dd.to(unit).getValue().doubleValue();
+        return ANGLE.fromCanonical(dd, unit);
     }
 
     void setFF(double value, Unit<Speed> unit) {
-        ff = getQuantity(value, unit);
+        ff = SPEED.toCanonical(value, unit);
     }
 
     /**
      * Returns the wind speed.
      */
     public double getFF(Unit<Speed> unit) {
-        return ff.to(unit).getValue().doubleValue();
+        return SPEED.fromCanonical(ff, unit);
     }
 
     void setFX1(double value, Unit<Speed> unit) {
-        fx1 = getQuantity(value, unit);
+        fx1 = SPEED.toCanonical(value, unit);
     }
 
     /**
      * Returns the wind highest gust within 1 hour.
      */
     public double getFX1(Unit<Speed> unit) {
-        return fx1.to(unit).getValue().doubleValue();
+        return SPEED.fromCanonical(fx1, unit);
     }
 
     void setFX3(double value, Unit<Speed> unit) {
-        fx3 = getQuantity(value, unit);
+        fx3 = SPEED.toCanonical(value, unit);
     }
 
     /**
      * Returns the wind highest gust within 3 hours.
      */
     public double getFX3(Unit<Speed> unit) {
-        return fx3.to(unit).getValue().doubleValue();
+        return SPEED.fromCanonical(fx3, unit);
     }
 
     void setN(double value, Unit<Dimensionless> unit) {
-        n = getQuantity(value, unit);
+        n = CLOUD_COVER.toCanonical(value, unit);
     }
 
     /**
      * Returns the total cloud cover.
      */
     public double getN(Unit<Dimensionless> unit) {
-        return n.to(unit).getValue().doubleValue();
+        return CLOUD_COVER.fromCanonical(n, unit);
     }
 
     void setNEFF(double value, Unit<Dimensionless> unit) {
-        neff = getQuantity(value, unit);
+        neff = CLOUD_COVER.toCanonical(value, unit);
     }
 
     /**
      * Returns the effective cloud cover.
      */
     public double getNEFF(Unit<Dimensionless> unit) {
-        return neff.to(unit).getValue().doubleValue();
+        return CLOUD_COVER.fromCanonical(neff, unit);
     }
 
     void setWW(int ww) {
@@ -223,7 +219,7 @@ public final class Forecast implements Comparable<Forecast> {
     }
 
     /**
-     * Returns the significant weather code.
+     * Returns the significant weather code or {@link #NO_CODE} if not read.
      */
     public int getWW() {
         return ww;
@@ -234,87 +230,130 @@ public final class Forecast implements Comparable<Forecast> {
     }
 
     /**
-     * Returns the maximum significant weather code over 3 hours.
+     * Returns the maximum significant weather code over 3 hours or {@link #NO_CODE} if not read.
      */
     public int getWW3() {
         return ww3;
     }
 
     void setRR1(double value, Unit<Length> unit) {
-        rr1 = getQuantity(value, unit);
+        rr1 = PRECIPITATION.toCanonical(value, unit);
     }
 
     /**
      * Returns the 1-hour precipitation amount.
      */
     public double getRR1(Unit<Length> unit) {
-        return rr1.to(unit).getValue().doubleValue();
+        return PRECIPITATION.fromCanonical(rr1, unit);
     }
 
     void setRR3(double value, Unit<Length> unit) {
-        rr3 = getQuantity(value, unit);
+        rr3 = PRECIPITATION.toCanonical(value, unit);
     }
 
     /**
      * Returns the 3-hours precipitation amount.
      */
     public double getRR3(Unit<Length> unit) {
-        return rr3.to(unit).getValue().doubleValue();
+        return PRECIPITATION.fromCanonical(rr3, unit);
     }
 
     void setRR12(double value, Unit<Length> unit) {
-        rr12 = getQuantity(value, unit);
+        rr12 = PRECIPITATION.toCanonical(value, unit);
     }
 
     /**
      * Returns the 12-hours precipitation amount.
      */
     public double getRR12(Unit<Length> unit) {
-        return rr12.to(unit).getValue().doubleValue();
+        return PRECIPITATION.fromCanonical(rr12, unit);
     }
 
     void setRR24(double value, Unit<Length> unit) {
-        rr24 = getQuantity(value, unit);
+        rr24 = PRECIPITATION.toCanonical(value, unit);
     }
 
     /**
      * Returns the 24-hours precipitation amount.
      */
     public double getRR24(Unit<Length> unit) {
-        return rr24.to(unit).getValue().doubleValue();
+        return PRECIPITATION.fromCanonical(rr24, unit);
     }
 
     void setSUND1(double value, Unit<Time> unit) {
-        sund1 = getQuantity(value, unit);
+        sund1 = SUNSHINE_DURATION.toCanonical(value, unit);
     }
 
     /**
      * Returns the 1-hour sunshine duration.
      */
     public double getSUND1(Unit<Time> unit) {
-        return sund1.to(unit).getValue().doubleValue();
+        return SUNSHINE_DURATION.fromCanonical(sund1, unit);
     }
 
     void setSUND24(double value, Unit<Time> unit) {
-        sund24 = getQuantity(value, unit);
+        sund24 = SUNSHINE_DURATION.toCanonical(value, unit);
     }
 
     /**
      * Returns the 24-hours sunshine duration.
      */
     public double getSUND24(Unit<Time> unit) {
-        return sund24.to(unit).getValue().doubleValue();
+        return SUNSHINE_DURATION.fromCanonical(sund24, unit);
     }
 
     void setSUND3(double value, Unit<Time> unit) {
-        sund3 = getQuantity(value, unit);
+        sund3 = SUNSHINE_DURATION.toCanonical(value, unit);
     }
 
     /**
      * Returns the 3-hours sunshine duration.
      */
     public double getSUND3(Unit<Time> unit) {
-        return sund3.to(unit).getValue().doubleValue();
+        return SUNSHINE_DURATION.fromCanonical(sund3, unit);
+    }
+
+    void setDerived(Map<String, Integer> derivedIndex, double[] derivedValues) {
+        this.derivedIndex = derivedIndex;
+        this.derivedValues = derivedValues;
+    }
+
+    /**
+     * Returns the value of a derived parameter calculated by a {@link DerivedParameterEngine}.
+     *
+     * @param name The name of the derived parameter.
+     * @return The value in the unit of the parameter or NaN if the parameter has not been calculated.
+     */
+    public double getDerived(String name) {
+        Integer index = derivedIndex.get(name);
+        return index != null ? derivedValues[index] : NaN;
+    }
+
+    void setElementSeries(ElementSeries elementSeries, int step) {
+        this.elementSeries = elementSeries;
+        this.step = step;
+    }
+
+    /**
+     * Returns the value of any MOSMIX element read, e.g. VV or wwP, see {@link MosmixKmlReader#ALL_ELEMENTS}.
+     *
+     * @param element The element symbol.
+     * @param unit    The unit, compatible with the unit of the element.
+     * @return The value or NaN if the element has not been read.
+     * @throws IllegalArgumentException If the unit is incompatible with the unit of the element.
+     */
+    public <Q extends Quantity<Q>> double get(String element, Unit<Q> unit) {
+        ElementRegistry.Element registered = ElementRegistry.find(element);
+        if (registered == null) return NaN;
+        return registered.convert(get(registered), unit);
+    }
+
+    /**
+     * Returns the value of an element in its unit.
+     */
+    double get(ElementRegistry.Element element) {
+        if (element.getColumn() != null) return element.getColumn().get(this);
+        return elementSeries != null ? elementSeries.get(element.getSlot(), step) : NaN;
     }
 
     /**
@@ -0,0 +1,626 @@
+package de.wsthst.opendata.mosmix;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Compressed archive of many model runs in a single file, appended run by run and queried per station and element.
+ * <p>
+ * Every station of a model run is stored as a block of columns encoded by the {@link ForecastColumnCodec}, as delta to
+ * the same station of the previous model run. Every {@link #KEYFRAME_INTERVAL}th model run is encoded on its own, so
+ * decoding a station never needs more than that many blocks of the station. A query reads and decodes only the
+ * blocks of the requested station and only the requested column of them.
+ * <p>
+ * File layout, all numbers big endian:
+ * <ul>
+ * <li>Header: magic, version, keyframe interval, offset of the last run directory, column count and names</li>
+ * <li>Per model run: the station blocks, followed by the run directory holding the model run time, the offset of the
+ * previous run directory, the forecast times and per station the ID, block offset, block length and delta flag,
+ * sorted by station ID</li>
+ * </ul>
+ * Model runs are appended behind the last run directory and committed by updating its offset in the header, so an
+ * interrupted append leaves the archive unchanged. An append closed without commit is discarded and truncated.
+ */
+public final class ForecastArchive implements Closeable {
+
+    static final byte[] MAGIC = "MOSMIXFA".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    static final int KEYFRAME_INTERVAL = 8;
+    static final int LAST_DIRECTORY_POSITION = 16;
+    static final int HEADER_SIZE = 28;
+    static final int DIRECTORY_HEADER_SIZE = 24;
+    static final int RECORD_SIZE = 21;
+    static final int MAX_STATION_ID_LENGTH = Long.BYTES;
+    private static final int COORDINATES_SIZE = 3 * Double.BYTES;
+
+    private final FileChannel channel;
+    private final ForecastColumn[] columns;
+    private final int keyframeInterval;
+    private final long dataOffset;
+    private final List<Run> runs = new ArrayList<>();
+    private RunAppender appender;
+    private ValueFile lastRunValues;
+
+    private ForecastArchive(FileChannel channel) throws IOException {
+        this.channel = channel;
+        if (channel.size() == 0) {
+            columns = ForecastColumn.values();
+            keyframeInterval = KEYFRAME_INTERVAL;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(keyframeInterval);
+            out.writeLong(0);
+            out.writeInt(columns.length);
+            for (ForecastColumn column : columns) out.writeUTF(column.name());
+            write(ByteBuffer.wrap(bytes.toByteArray()), 0);
+            channel.force(true);
+            dataOffset = bytes.size();
+            return;
+        }
+
+        ByteBuffer header = read(0, HEADER_SIZE);
+        byte[] magic = new byte[MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, MAGIC) || header.getInt() != VERSION) throw new IOException("No forecast archive version " + VERSION);
+        keyframeInterval = header.getInt();
+        long lastDirectory = header.getLong();
+        columns = new ForecastColumn[header.getInt()];
+        long position = HEADER_SIZE;
+        for (int i = 0; i < columns.length; i++) {
+            int length = read(position, 2).getShort() & 0xFFFF;
+            columns[i] = ForecastColumn.valueOf(StandardCharsets.UTF_8.decode(read(position + 2, length)).toString());
+            position += 2 + length;
+        }
+        dataOffset = position;
+
+        for (long directory = lastDirectory; directory != 0; ) {
+            ByteBuffer directoryHeader = read(directory, DIRECTORY_HEADER_SIZE);
+            Instant modelRunTime = Instant.ofEpochMilli(directoryHeader.getLong());
+            long previousDirectory = directoryHeader.getLong();
+            long[] forecastTimes = new long[directoryHeader.getInt()];
+            int stationCount = directoryHeader.getInt();
+            read(directory + DIRECTORY_HEADER_SIZE, forecastTimes.length * Long.BYTES).asLongBuffer().get(forecastTimes);
+            runs.add(new Run(modelRunTime, directory, forecastTimes, stationCount));
+            directory = previousDirectory;
+        }
+        Collections.reverse(runs);
+    }
+
+    /**
+     * Opens a forecast archive file, an archive is created if the file does not exist.
+     *
+     * @param file The archive file.
+     * @return The opened archive.
+     */
+    public static ForecastArchive open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new ForecastArchive(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the times of all archived model runs in ascending order.
+     */
+    public List<Instant> getModelRunTimes() {
+        List<Instant> modelRunTimes = new ArrayList<>(runs.size());
+        runs.forEach(run -> modelRunTimes.add(run.modelRunTime));
+        return modelRunTimes;
+    }
+
+    /**
+     * Starts appending a model run, which has to be later than all archived model runs.
+     * The model run is added to the archive by {@link RunAppender#commit()}, closing the appender without commit
+     * discards it.
+     *
+     * @param modelRunTime The model run time.
+     * @return The appender accepting the stations of the model run.
+     */
+    public RunAppender append(Instant modelRunTime) throws IOException {
+        if (appender != null) throw new IllegalStateException("Model run " + appender.modelRunTime + " is still being appended");
+        if (!runs.isEmpty() && !modelRunTime.isAfter(runs.get(runs.size() - 1).modelRunTime)) {
+            throw new IllegalArgumentException("Model run " + modelRunTime + " is not after the last archived model run " + runs.get(runs.size() - 1).modelRunTime);
+        }
+        appender = new RunAppender(modelRunTime, runs.isEmpty() ? dataOffset : runs.get(runs.size() - 1).end());
+        return appender;
+    }
+
+    /**
+     * Returns the forecast of a station of an archived model run.
+     *
+     * @param stationId    The station ID.
+     * @param modelRunTime The model run time.
+     * @return The forecast or null if the model run or the station is not contained.
+     */
+    public PointTimeForecast get(String stationId, Instant modelRunTime) throws IOException {
+        int runIndex = indexOf(modelRunTime);
+        if (runIndex < 0 || !isValidStationId(stationId)) return null;
+        Block block = decode(runIndex, stationKey(stationId), allColumns());
+        if (block == null) return null;
+
+        Run run = runs.get(runIndex);
+        List<Forecast> forecasts = new ArrayList<>(run.forecastTimes.length);
+        for (int step = 0; step < run.forecastTimes.length; step++) {
+            Forecast fc = new Forecast(Instant.ofEpochMilli(run.forecastTimes[step]));
+            for (int column = 0; column < columns.length; column++) columns[column].set(fc, block.values[column][step]);
+            forecasts.add(fc);
+        }
+        return new PointTimeForecast(stationId, block.latitude, block.longitude, block.height, modelRunTime, forecasts);
+    }
+
+    /**
+     * Returns the forecasts of an element for a station from all model runs in a time range.
+     *
+     * @param stationId The station ID.
+     * @param element   The element, the name of a {@link ForecastColumn} like TTT or RR1, in the units of the KML input.
+     * @param from      The first model run time, inclusive.
+     * @param to        The last model run time, inclusive.
+     * @return The forecasts per model run in ascending order, model runs without the station are left out.
+     */
+    public List<Series> query(String stationId, String element, Instant from, Instant to) throws IOException {
+        int column = Arrays.asList(columns).indexOf(ForecastColumn.valueOf(element));
+        if (column < 0) throw new IllegalArgumentException("Element " + element + " is not archived");
+        List<Series> series = new ArrayList<>();
+        if (!isValidStationId(stationId)) return series;
+        long key = stationKey(stationId);
+
+        int first = 0;
+        while (first < runs.size() && runs.get(first).modelRunTime.isBefore(from)) first++;
+        int start = first;
+        while (start > 0 && start < runs.size() && isDelta(runs.get(start).find(key))) start--;
+
+        double[][] previous = null;
+        for (int runIndex = start; runIndex < runs.size() && !runs.get(runIndex).modelRunTime.isAfter(to); runIndex++) {
+            Run run = runs.get(runIndex);
+            Record record = run.find(key);
+            if (record == null) {
+                previous = null;
+                continue;
+            }
+            Block block = decode(runIndex, record, new int[] {column}, isDelta(record) ? previous : null);
+            if (runIndex >= first) series.add(new Series(run.modelRunTime, run.forecastTimes, block.values[0]));
+            previous = block.values;
+        }
+        return series;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            closeLastRunValues();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void closeLastRunValues() throws IOException {
+        ValueFile values = lastRunValues;
+        lastRunValues = null;
+        if (values != null) values.close();
+    }
+
+    private int indexOf(Instant modelRunTime) {
+        for (int i = 0; i < runs.size(); i++) {
+            if (runs.get(i).modelRunTime.equals(modelRunTime)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes the given columns of a station block, including all model runs the block is a delta to.
+     *
+     * @return The block or null if the station is not contained.
+     */
+    private Block decode(int runIndex, long stationKey, int[] columnIndexes) throws IOException {
+        Record record = runs.get(runIndex).find(stationKey);
+        if (record == null) return null;
+        Block previous = isDelta(record) ? decode(runIndex - 1, stationKey, columnIndexes) : null;
+        return decode(runIndex, record, columnIndexes, previous != null ? previous.values : null);
+    }
+
+    private Block decode(int runIndex, Record record, int[] columnIndexes, double[][] previousValues) throws IOException {
+        Run run = runs.get(runIndex);
+        ByteBuffer data = read(record.offset, record.length);
+        Block block = new Block(data.getDouble(), data.getDouble(), data.getDouble());
+        int[] offsets = new int[columns.length + 1];
+        for (int column = 0; column < columns.length; column++) {
+            offsets[column + 1] = offsets[column] + (int) ForecastColumnCodec.readVarint(data);
+        }
+        int columnsOffset = data.position();
+        int[] alignment = previousValues != null ? alignment(run.forecastTimes, runs.get(runIndex - 1).forecastTimes) : null;
+        block.values = new double[columnIndexes.length][];
+        for (int i = 0; i < columnIndexes.length; i++) {
+            double[] values = new double[run.forecastTimes.length];
+            data.position(columnsOffset + offsets[columnIndexes[i]]);
+            ForecastColumnCodec.decode(data, alignment != null ? align(previousValues[i], alignment) : null, values);
+            block.values[i] = values;
+        }
+        return block;
+    }
+
+    private static double[] align(double[] previousValues, int[] alignment) {
+        double[] references = new double[alignment.length];
+        for (int step = 0; step < alignment.length; step++) {
+            references[step] = alignment[step] >= 0 ? previousValues[alignment[step]] : Double.NaN;
+        }
+        return references;
+    }
+
+    private int[] allColumns() {
+        int[] allColumns = new int[columns.length];
+        Arrays.setAll(allColumns, i -> i);
+        return allColumns;
+    }
+
+    private static boolean isDelta(Record record) {
+        return record != null && record.delta;
+    }
+
+    /**
+     * Returns for each forecast time the step of the previous model run with the same forecast time or -1.
+     */
+    private static int[] alignment(long[] forecastTimes, long[] previousForecastTimes) {
+        int[] alignment = new int[forecastTimes.length];
+        for (int step = 0; step < alignment.length; step++) {
+            int previousStep = Arrays.binarySearch(previousForecastTimes, forecastTimes[step]);
+            alignment[step] = previousStep >= 0 ? previousStep : -1;
+        }
+        return alignment;
+    }
+
+    private static boolean isValidStationId(String stationId) {
+        if (stationId.isEmpty() || stationId.length() > MAX_STATION_ID_LENGTH) return false;
+        return stationId.chars().allMatch(c -> c > 0 && c < 0x80);
+    }
+
+    /**
+     * Returns the station ID as ASCII bytes in a long, so that unsigned comparison sorts like the ID.
+     */
+    private static long stationKey(String stationId) {
+        long key = 0;
+        for (int i = 0; i < MAX_STATION_ID_LENGTH; i++) key = key << 8 | (i < stationId.length() ? stationId.charAt(i) : 0);
+        return key;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new EOFException("Forecast archive truncated");
+        }
+        return buffer.flip();
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) position += channel.write(buffer, position);
+    }
+
+    /**
+     * Forecasts of an element for a station from a single model run.
+     */
+    public static final class Series {
+
+        private final Instant modelRunTime;
+        private final long[] forecastTimes;
+        private final double[] values;
+
+        private Series(Instant modelRunTime, long[] forecastTimes, double[] values) {
+            this.modelRunTime = modelRunTime;
+            this.forecastTimes = forecastTimes;
+            this.values = values;
+        }
+
+        public Instant getModelRunTime() {
+            return modelRunTime;
+        }
+
+        public List<Instant> getForecastTimes() {
+            List<Instant> times = new ArrayList<>(forecastTimes.length);
+            for (long forecastTime : forecastTimes) times.add(Instant.ofEpochMilli(forecastTime));
+            return times;
+        }
+
+        /**
+         * Returns the values in the order of the forecast times, NaN if missing.
+         */
+        public double[] getValues() {
+            return values.clone();
+        }
+    }
+
+    /**
+     * Appends the stations of a model run to the archive as they are passed in.
+     * <p>
+     * The decoded values of the stations are kept in a temporary file until the next append if it is encoded as delta,
+     * so the previous model run has to be decoded from the archive only for the first append after opening it.
+     */
+    public final class RunAppender implements Consumer<PointTimeForecast>, Closeable {
+
+        private final Instant modelRunTime;
+        private final int runIndex;
+        private final long start;
+        private final ValueFile previousValues;
+        private ValueFile values;
+        private final List<Record> records = new ArrayList<>();
+        private final Set<Long> stationKeys = new HashSet<>();
+        private long[] forecastTimes;
+        private int[] alignment;
+        private long position;
+        private boolean committed;
+
+        private RunAppender(Instant modelRunTime, long position) {
+            this.modelRunTime = modelRunTime;
+            this.runIndex = runs.size();
+            this.start = position;
+            this.position = position;
+            this.previousValues = lastRunValues;
+        }
+
+        /**
+         * Appends a station. All stations must share the model run and forecast times, each station only once.
+         */
+        @Override
+        public void accept(PointTimeForecast ptfc) {
+            if (committed) throw new IllegalStateException("Model run " + modelRunTime + " is already committed");
+            String stationId = ptfc.getStationId();
+            if (!isValidStationId(stationId)) throw new IllegalArgumentException("Station ID " + stationId + " is not up to " + MAX_STATION_ID_LENGTH + " ASCII characters");
+            long key = stationKey(stationId);
+            List<Forecast> forecasts = new ArrayList<>();
+            ptfc.forEach(forecasts::add);
+            try {
+                if (forecastTimes == null) start(forecasts);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (!ptfc.getModelRunTime().equals(modelRunTime) || forecasts.size() != forecastTimes.length
+                || !forecasts.isEmpty() && forecasts.get(0).getForecastTime().toEpochMilli() != forecastTimes[0]) {
+                throw new IllegalArgumentException("Station " + stationId + " does not belong to model run " + modelRunTime);
+            }
+            if (!stationKeys.add(key)) throw new IllegalArgumentException("Station " + stationId + " appended twice");
+
+            try {
+                double[][] previous = alignment != null ? previousValues(key) : null;
+                ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+                int[] lengths = new int[columns.length];
+                double[][] stationValues = new double[columns.length][];
+                for (int column = 0; column < columns.length; column++) {
+                    double[] columnValues = new double[forecastTimes.length];
+                    for (int step = 0; step < columnValues.length; step++) columnValues[step] = columns[column].get(forecasts.get(step));
+                    int size = encoded.size();
+                    ForecastColumnCodec.encode(columnValues, previous != null ? align(previous[column], alignment) : null, encoded);
+                    lengths[column] = encoded.size() - size;
+                    stationValues[column] = columnValues;
+                }
+                if (values != null) values.put(key, stationValues);
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(COORDINATES_SIZE + 2 * columns.length + encoded.size());
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeDouble(ptfc.getStationLatitude(MosmixKmlSchema.STATION_COORDINATES_UNIT));
+                out.writeDouble(ptfc.getStationLongitude(MosmixKmlSchema.STATION_COORDINATES_UNIT));
+                out.writeDouble(ptfc.getStationHeight(MosmixKmlSchema.STATION_HEIGHT_UNIT));
+                for (int length : lengths) ForecastColumnCodec.writeVarint(bytes, length);
+                encoded.writeTo(bytes);
+                write(ByteBuffer.wrap(bytes.toByteArray()), position);
+                records.add(new Record(key, position, bytes.size(), previous != null));
+                position += bytes.size();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Returns the values of a station of the previous model run, decoded from the archive if not kept.
+         */
+        private double[][] previousValues(long key) throws IOException {
+            if (previousValues != null) return previousValues.get(key);
+            Block previous = decode(runIndex - 1, key, allColumns());
+            return previous != null ? previous.values : null;
+        }
+
+        private void start(List<Forecast> forecasts) throws IOException {
+            forecastTimes = new long[forecasts.size()];
+            for (int step = 0; step < forecastTimes.length; step++) forecastTimes[step] = forecasts.get(step).getForecastTime().toEpochMilli();
+            if (runIndex > 0 && runIndex % keyframeInterval != 0) {
+                alignment = alignment(forecastTimes, runs.get(runIndex - 1).forecastTimes);
+            }
+            if ((runIndex + 1) % keyframeInterval != 0) values = new ValueFile(columns.length, forecastTimes.length);
+        }
+
+        /**
+         * Writes the run directory and commits the model run. Call once after all stations have been appended.
+         */
+        public void commit() throws IOException {
+            if (committed) throw new IllegalStateException("Model run " + modelRunTime + " is already committed");
+            if (forecastTimes == null) forecastTimes = new long[0];
+            records.sort((a, b) -> Long.compareUnsigned(a.stationKey, b.stationKey));
+            ByteBuffer directory = ByteBuffer.allocate(DIRECTORY_HEADER_SIZE + forecastTimes.length * Long.BYTES + records.size() * RECORD_SIZE)
+                .putLong(modelRunTime.toEpochMilli())
+                .putLong(runs.isEmpty() ? 0 : runs.get(runs.size() - 1).directoryOffset)
+                .putInt(forecastTimes.length)
+                .putInt(records.size());
+            for (long forecastTime : forecastTimes) directory.putLong(forecastTime);
+            for (Record record : records) directory.putLong(record.stationKey).putLong(record.offset).putInt(record.length).put((byte) (record.delta ? 1 : 0));
+            write(directory.flip(), position);
+            channel.force(false);
+
+            Run run = new Run(modelRunTime, position, forecastTimes, records.size());
+            closeLastRunValues();
+            write(ByteBuffer.allocate(Long.BYTES).putLong(0, position), LAST_DIRECTORY_POSITION);
+            committed = true;
+            runs.add(run);
+            lastRunValues = values;
+            channel.truncate(run.end());
+            channel.force(true);
+        }
+
+        /**
+         * Ends the append. A model run not committed is discarded and the archive truncated to its previous end.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                if (!committed) {
+                    if (values != null) values.close();
+                    channel.truncate(start);
+                }
+            } finally {
+                appender = null;
+            }
+        }
+    }
+
+    /**
+     * Decoded values of the stations of a model run in a temporary file, deleted on close. Every station takes a slot of
+     * its columns one after another, so only the slot indexes of the stations are kept in memory.
+     */
+    private static final class ValueFile implements Closeable {
+
+        private final FileChannel channel;
+        private final int columns;
+        private final int steps;
+        private final Map<Long, Integer> slots = new HashMap<>();
+
+        ValueFile(int columns, int steps) throws IOException {
+            Path file = Files.createTempFile("mosmix-archive-", ".values");
+            this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+            this.columns = columns;
+            this.steps = steps;
+        }
+
+        void put(long stationKey, double[][] values) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(slotSize());
+            for (double[] columnValues : values) {
+                for (double value : columnValues) buffer.putDouble(value);
+            }
+            int slot = slots.size();
+            slots.put(stationKey, slot);
+            buffer.flip();
+            long position = (long) slot * slotSize();
+            while (buffer.hasRemaining()) position += channel.write(buffer, position);
+        }
+
+        /**
+         * Returns the values of a station or null if not contained.
+         */
+        double[][] get(long stationKey) throws IOException {
+            Integer slot = slots.get(stationKey);
+            if (slot == null) return null;
+            ByteBuffer buffer = ByteBuffer.allocate(slotSize());
+            long position = (long) slot * slotSize();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) throw new EOFException("Value file truncated");
+            }
+            buffer.flip();
+            double[][] values = new double[columns][steps];
+            for (double[] columnValues : values) {
+                for (int step = 0; step < steps; step++) columnValues[step] = buffer.getDouble();
+            }
+            return values;
+        }
+
+        private int slotSize() {
+            return columns * steps * Double.BYTES;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Model run read from a run directory.
+     */
+    private final class Run {
+
+        private final Instant modelRunTime;
+        private final long directoryOffset;
+        private final long[] forecastTimes;
+        private final int stationCount;
+
+        Run(Instant modelRunTime, long directoryOffset, long[] forecastTimes, int stationCount) {
+            this.modelRunTime = modelRunTime;
+            this.directoryOffset = directoryOffset;
+            this.forecastTimes = forecastTimes;
+            this.stationCount = stationCount;
+        }
+
+        /**
+         * Returns the record of a station by binary search or null.
+         */
+        Record find(long stationKey) throws IOException {
+            long recordsOffset = directoryOffset + DIRECTORY_HEADER_SIZE + (long) forecastTimes.length * Long.BYTES;
+            int low = 0;
+            int high = stationCount - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                ByteBuffer record = read(recordsOffset + (long) middle * RECORD_SIZE, RECORD_SIZE);
+                int comparison = Long.compareUnsigned(record.getLong(0), stationKey);
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    return new Record(stationKey, record.getLong(8), record.getInt(16), record.get(20) != 0);
+                }
+            }
+            return null;
+        }
+
+        long end() {
+            return directoryOffset + DIRECTORY_HEADER_SIZE + (long) forecastTimes.length * Long.BYTES + (long) stationCount * RECORD_SIZE;
+        }
+    }
+
+    /**
+     * Run directory entry of a station block.
+     */
+    private static final class Record {
+
+        private final long stationKey;
+        private final long offset;
+        private final int length;
+        private final boolean delta;
+
+        Record(long stationKey, long offset, int length, boolean delta) {
+            this.stationKey = stationKey;
+            this.offset = offset;
+            this.length = length;
+            this.delta = delta;
+        }
+    }
+
+    /**
+     * Decoded columns of a station block.
+     */
+    private static final class Block {
+
+        private final double latitude;
+        private final double longitude;
+        private final double height;
+        private double[][] values;
+
+        Block(double latitude, double longitude, double height) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.height = height;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package de.wsthst.opendata.mosmix;
+
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * All values of a {@link Forecast}, read and written in the units of the KML input.
+ * Significant weather codes are represented as double.
+ */
+enum ForecastColumn {
+
+    PPPP(fc -> fc.getPPPP(MosmixKmlSchema.PPPP_UNIT), (fc, v) -> fc.setPPPP(v, MosmixKmlSchema.PPPP_UNIT)),
+    TX(fc -> fc.getTX(MosmixKmlSchema.T_UNIT), (fc, v) -> fc.setTX(v, MosmixKmlSchema.T_UNIT)),
+    TTT(fc -> fc.getTTT(MosmixKmlSchema.T_UNIT), (fc, v) -> fc.setTTT(v, MosmixKmlSchema.T_UNIT)),
+    TD(fc -> fc.getTD(MosmixKmlSchema.T_UNIT), (fc, v) -> fc.setTD(v, MosmixKmlSchema.T_UNIT)),
+    TN(fc -> fc.getTN(MosmixKmlSchema.T_UNIT), (fc, v) -> fc.setTN(v, MosmixKmlSchema.T_UNIT)),
+    TM(fc -> fc.getTM(MosmixKmlSchema.T_UNIT), (fc, v) -> fc.setTM(v, MosmixKmlSchema.T_UNIT)),
+    T5CM(fc -> fc.getT5cm(MosmixKmlSchema.T_UNIT), (fc, v) -> fc.setT5cm(v, MosmixKmlSchema.T_UNIT)),
+    DD(fc -> fc.getDD(MosmixKmlSchema.DD_UNIT), (fc, v) -> fc.setDD(v, MosmixKmlSchema.DD_UNIT)),
+    FF(fc -> fc.getFF(MosmixKmlSchema.F_UNIT), (fc, v) -> fc.setFF(v, MosmixKmlSchema.F_UNIT)),
+    FX1(fc -> fc.getFX1(MosmixKmlSchema.F_UNIT), (fc, v) -> fc.setFX1(v, MosmixKmlSchema.F_UNIT)),
+    FX3(fc -> fc.getFX3(MosmixKmlSchema.F_UNIT), (fc, v) -> fc.setFX3(v, MosmixKmlSchema.F_UNIT)),
+    N(fc -> fc.getN(MosmixKmlSchema.N_UNIT), (fc, v) -> fc.setN(v, MosmixKmlSchema.N_UNIT)),
+    NEFF(fc -> fc.getNEFF(MosmixKmlSchema.N_UNIT), (fc, v) -> fc.setNEFF(v, MosmixKmlSchema.N_UNIT)),
+    WW(Forecast::getWW, (fc, v) -> fc.setWW((int) v)),
+    WW3(Forecast::getWW3, (fc, v) -> fc.setWW3((int) v)),
+    RR1(fc -> fc.getRR1(MosmixKmlSchema.RR_UNIT), (fc, v) -> fc.setRR1(v, MosmixKmlSchema.RR_UNIT)),
+    RR3(fc -> fc.getRR3(MosmixKmlSchema.RR_UNIT), (fc, v) -> fc.setRR3(v, MosmixKmlSchema.RR_UNIT)),
+    RR12(fc -> fc.getRR12(MosmixKmlSchema.RR_UNIT), (fc, v) -> fc.setRR12(v, MosmixKmlSchema.RR_UNIT)),
+    RR24(fc -> fc.getRR24(MosmixKmlSchema.RR_UNIT), (fc, v) -> fc.setRR24(v, MosmixKmlSchema.RR_UNIT)),
+    SUND1(fc -> fc.getSUND1(MosmixKmlSchema.SUND_UNIT), (fc, v) -> fc.setSUND1(v, MosmixKmlSchema.SUND_UNIT)),
+    SUND3(fc -> fc.getSUND3(MosmixKmlSchema.SUND_UNIT), (fc, v) -> fc.setSUND3(v, MosmixKmlSchema.SUND_UNIT)),
+    SUND24(fc -> fc.getSUND24(MosmixKmlSchema.SUND_UNIT), (fc, v) -> fc.setSUND24(v, MosmixKmlSchema.SUND_UNIT));
+
+    private final ToDoubleFunction<Forecast> getter;
+    private final ObjDoubleConsumer<Forecast> setter;
+
+    ForecastColumn(ToDoubleFunction<Forecast> getter, ObjDoubleConsumer<Forecast> setter) {
+        this.getter = getter;
+        this.setter = setter;
+    }
+
+    double get(Forecast fc) {
+        return getter.applyAsDouble(fc);
+    }
+
+    void set(Forecast fc, double value) {
+        setter.accept(fc, value);
+    }
+}
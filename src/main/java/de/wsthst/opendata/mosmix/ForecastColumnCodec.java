@@ -0,0 +1,139 @@
+package de.wsthst.opendata.mosmix;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import static java.lang.Double.NaN;
+
+/**
+ * Lossless delta and run length encoding of the values of a forecast column, used by the {@link ForecastArchive}.
+ * <p>
+ * Each value is encoded as difference to a reference: the value of the previous model run for the same forecast time
+ * if given, else the value of the previous forecast step. Values which are exact decimals with up to three digits are
+ * encoded as differences of scaled integers, all other columns as XOR of the IEEE 754 bits. Equal differences are
+ * run length encoded, so unchanged values cost no more than a single pair of varints.
+ * <p>
+ * Encoding: scale byte, 0 to 3 decimal digits or {@link #RAW}, followed by pairs of varints run length and token until
+ * all values are covered. For decimals the token is 0 for NaN, else the zigzag encoded difference plus one.
+ */
+final class ForecastColumnCodec {
+
+    static final int RAW = 0xFF;
+    private static final double[] FACTORS = {1, 10, 100, 1000};
+    private static final double MAX_SCALED = 0x1p50;
+
+    private ForecastColumnCodec() {}
+
+    /**
+     * Encodes a column.
+     *
+     * @param values     The values of all forecast steps.
+     * @param references The values of the previous model run for the same forecast times, NaN where not available, or null.
+     * @param out        The output.
+     */
+    static void encode(double[] values, double[] references, ByteArrayOutputStream out) {
+        int scale = scale(values);
+        out.write(scale);
+        long token = 0;
+        long runLength = 0;
+        for (int step = 0; step < values.length; step++) {
+            long next = token(scale, values[step], reference(values, references, step));
+            if (runLength > 0 && next != token) {
+                writeVarint(out, runLength);
+                writeVarint(out, token);
+                runLength = 0;
+            }
+            token = next;
+            runLength++;
+        }
+        if (runLength > 0) {
+            writeVarint(out, runLength);
+            writeVarint(out, token);
+        }
+    }
+
+    /**
+     * Decodes a column.
+     *
+     * @param in         The encoded column.
+     * @param references The references passed to {@link #encode(double[], double[], ByteArrayOutputStream)}.
+     * @param values     The values of all forecast steps to decode.
+     */
+    static void decode(ByteBuffer in, double[] references, double[] values) {
+        int scale = in.get() & 0xFF;
+        int step = 0;
+        while (step < values.length) {
+            long runLength = readVarint(in);
+            long token = readVarint(in);
+            for (; runLength > 0; runLength--, step++) {
+                values[step] = value(scale, token, reference(values, references, step));
+            }
+        }
+    }
+
+    /**
+     * Returns the fewest decimal digits representing all values exactly or {@link #RAW}.
+     */
+    private static int scale(double[] values) {
+        for (int scale = 0; scale < FACTORS.length; scale++) {
+            if (isExact(values, FACTORS[scale])) return scale;
+        }
+        return RAW;
+    }
+
+    private static boolean isExact(double[] values, double factor) {
+        for (double value : values) {
+            if (Double.isNaN(value)) continue;
+            double scaled = value * factor;
+            if (!(Math.abs(scaled) < MAX_SCALED)) return false;
+            if (Double.doubleToRawLongBits(Math.round(scaled) / factor) != Double.doubleToRawLongBits(value)) return false;
+        }
+        return true;
+    }
+
+    private static double reference(double[] values, double[] references, int step) {
+        if (references != null && !Double.isNaN(references[step])) return references[step];
+        return step > 0 ? values[step - 1] : 0;
+    }
+
+    private static long token(int scale, double value, double reference) {
+        if (scale == RAW) return Double.doubleToRawLongBits(value) ^ Double.doubleToRawLongBits(reference);
+        if (Double.isNaN(value)) return 0;
+        long difference = scaled(value, FACTORS[scale]) - scaled(reference, FACTORS[scale]);
+        return ((difference << 1) ^ (difference >> 63)) + 1;
+    }
+
+    private static double value(int scale, long token, double reference) {
+        if (scale == RAW) return Double.longBitsToDouble(token ^ Double.doubleToRawLongBits(reference));
+        if (token == 0) return NaN;
+        long zigzag = token - 1;
+        long difference = (zigzag >>> 1) ^ -(zigzag & 1);
+        return (scaled(reference, FACTORS[scale]) + difference) / FACTORS[scale];
+    }
+
+    /**
+     * Returns the value as scaled integer, 0 for references which cannot be scaled.
+     */
+    private static long scaled(double value, double factor) {
+        double scaled = value * factor;
+        if (!(Math.abs(scaled) < MAX_SCALED)) return 0;
+        return Math.round(scaled);
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+}
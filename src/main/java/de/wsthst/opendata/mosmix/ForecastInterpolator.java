@@ -0,0 +1,381 @@
+package de.wsthst.opendata.mosmix;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+import static java.lang.Double.NaN;
+
+/**
+ * Interpolates the forecasts of the stations of a model run to arbitrary points and regular grids by inverse distance
+ * weighting of the nearest stations.
+ * <p>
+ * Wind directions are averaged as unit vectors, significant weather codes are taken from the nearest station.
+ * Missing station values are left out of the weighting, the value of a station at the location of a point is taken as
+ * is, or if missing interpolated from the other stations. With height correction, temperatures are adjusted by the
+ * standard atmosphere lapse rate of {@link #LAPSE_RATE} from the station height to the height of the point.
+ * Points are evaluated in parallel on a fork-join pool, for each point the neighbours are searched only once.
+ */
+public final class ForecastInterpolator {
+
+    static final double LAPSE_RATE = 0.0065;
+    static final byte[] GRID_MAGIC = "MOSMIXGR".getBytes(StandardCharsets.US_ASCII);
+    static final int GRID_VERSION = 1;
+    static final String GRID_EXTENSION = ".grid";
+    private static final double EXACT_DISTANCE_KM = 0.001;
+    private static final int TASK_SIZE = 64;
+    private static final ForecastColumn[] COLUMNS = ForecastColumn.values();
+    private static final Set<ForecastColumn> TEMPERATURE_COLUMNS = EnumSet.of(
+        ForecastColumn.TX, ForecastColumn.TTT, ForecastColumn.TD, ForecastColumn.TN, ForecastColumn.TM, ForecastColumn.T5CM);
+    private static final Set<ForecastColumn> CODE_COLUMNS = EnumSet.of(ForecastColumn.WW, ForecastColumn.WW3);
+
+    private final Instant modelRunTime;
+    private final List<Instant> forecastTimes;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double[] heights;
+    private final double[][] values;
+    private final Map<String, Integer> stationIndex = new HashMap<>();
+    private final SpatialIndex spatialIndex;
+    private final int neighbours;
+    private final double power;
+    private final boolean heightCorrection;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructor using the common fork-join pool.
+     *
+     * @param stations         The stations of a model run.
+     * @param neighbours       The number of nearest stations to interpolate from.
+     * @param power            The power of the inverse distance weights, usually 2.
+     * @param heightCorrection True to correct temperatures by the height difference of stations and points.
+     */
+    public ForecastInterpolator(Collection<PointTimeForecast> stations, int neighbours, double power, boolean heightCorrection) {
+        this(stations, neighbours, power, heightCorrection, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param stations         The stations of a model run.
+     * @param neighbours       The number of nearest stations to interpolate from.
+     * @param power            The power of the inverse distance weights, usually 2.
+     * @param heightCorrection True to correct temperatures by the height difference of stations and points.
+     * @param pool             The pool evaluating the points.
+     */
+    public ForecastInterpolator(Collection<PointTimeForecast> stations, int neighbours, double power, boolean heightCorrection, ForkJoinPool pool) {
+        if (stations.isEmpty()) throw new IllegalArgumentException("No stations to interpolate from");
+        if (neighbours < 1) throw new IllegalArgumentException("Invalid number of neighbours " + neighbours);
+        this.neighbours = neighbours;
+        this.power = power;
+        this.heightCorrection = heightCorrection;
+        this.pool = pool;
+
+        PointTimeForecast first = stations.iterator().next();
+        modelRunTime = first.getModelRunTime();
+        List<Instant> times = new ArrayList<>();
+        first.forEach(fc -> times.add(fc.getForecastTime()));
+        forecastTimes = Collections.unmodifiableList(times);
+        int steps = forecastTimes.size();
+
+        List<String> stationIds = new ArrayList<>(stations.size());
+        latitudes = new double[stations.size()];
+        longitudes = new double[stations.size()];
+        heights = new double[stations.size()];
+        values = new double[COLUMNS.length][stations.size() * steps];
+        int station = 0;
+        for (PointTimeForecast ptfc : stations) {
+            if (!ptfc.getModelRunTime().equals(modelRunTime)) {
+                throw new IllegalArgumentException("Station " + ptfc.getStationId() + " does not belong to model run " + modelRunTime);
+            }
+            stationIds.add(ptfc.getStationId());
+            stationIndex.put(ptfc.getStationId(), station);
+            latitudes[station] = ptfc.getStationLatitude(MosmixKmlSchema.STATION_COORDINATES_UNIT);
+            longitudes[station] = ptfc.getStationLongitude(MosmixKmlSchema.STATION_COORDINATES_UNIT);
+            heights[station] = ptfc.getStationHeight(MosmixKmlSchema.STATION_HEIGHT_UNIT);
+            int step = 0;
+            for (Forecast fc : ptfc) {
+                if (step == steps || !fc.getForecastTime().equals(forecastTimes.get(step))) {
+                    throw new IllegalArgumentException("Station " + ptfc.getStationId() + " has other forecast times");
+                }
+                for (int column = 0; column < COLUMNS.length; column++) values[column][station * steps + step] = COLUMNS[column].get(fc);
+                step++;
+            }
+            if (step != steps) throw new IllegalArgumentException("Station " + ptfc.getStationId() + " has other forecast times");
+            station++;
+        }
+        spatialIndex = SpatialIndex.build(stationIds, latitudes, longitudes);
+    }
+
+    /**
+     * Interpolates the forecasts to points.
+     *
+     * @param points The points.
+     * @return The forecast of each point in the order of the points.
+     */
+    public List<PointTimeForecast> interpolate(List<Point> points) {
+        PointTimeForecast[] forecasts = new PointTimeForecast[points.size()];
+        forEach(points.size(), i -> {
+            Point point = points.get(i);
+            Weights weights = weights(point.latitude, point.longitude, point.height);
+            List<Forecast> pointForecasts = new ArrayList<>(forecastTimes.size());
+            for (int step = 0; step < forecastTimes.size(); step++) {
+                Forecast fc = new Forecast(forecastTimes.get(step));
+                for (int column = 0; column < COLUMNS.length; column++) COLUMNS[column].set(fc, evaluate(weights, column, step));
+                pointForecasts.add(fc);
+            }
+            forecasts[i] = new PointTimeForecast(point.id, point.latitude, point.longitude, Double.isNaN(point.height) ? 0 : point.height,
+                modelRunTime, pointForecasts);
+        });
+        return Arrays.asList(forecasts);
+    }
+
+    /**
+     * Interpolates the forecasts to a grid and writes a binary grid file for every element and forecast step,
+     * named like <code>TTT_001.grid</code>. Elements without any station value are left out.
+     * <p>
+     * File layout, all numbers big endian: magic, version, rows, columns, minimum latitude, minimum longitude,
+     * resolution, model run time and forecast time in milliseconds, followed by the values as 32 bit floats row by row
+     * from south to north, each row from west to east. Missing values are NaN.
+     * Grid cells have no height, so temperatures are not height corrected.
+     *
+     * @param grid   The grid.
+     * @param folder The output folder.
+     * @return The number of written files.
+     */
+    public int writeGrid(Grid grid, Path folder) throws IOException {
+        Weights[] cells = new Weights[grid.rows * grid.columns];
+        forEach(cells.length, cell -> cells[cell] = weights(grid.latitude(cell / grid.columns), grid.longitude(cell % grid.columns), NaN));
+
+        int files = 0;
+        float[] gridValues = new float[cells.length];
+        for (int column = 0; column < COLUMNS.length; column++) {
+            if (Arrays.stream(values[column]).allMatch(Double::isNaN)) continue;
+            for (int step = 0; step < forecastTimes.size(); step++) {
+                int gridColumn = column;
+                int gridStep = step;
+                forEach(cells.length, cell -> gridValues[cell] = (float) evaluate(cells[cell], gridColumn, gridStep));
+                Path file = folder.resolve(String.format("%s_%03d%s", COLUMNS[column].name(), step + 1, GRID_EXTENSION));
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                    out.write(GRID_MAGIC);
+                    out.writeInt(GRID_VERSION);
+                    out.writeInt(grid.rows);
+                    out.writeInt(grid.columns);
+                    out.writeDouble(grid.minLatitude);
+                    out.writeDouble(grid.minLongitude);
+                    out.writeDouble(grid.resolution);
+                    out.writeLong(modelRunTime.toEpochMilli());
+                    out.writeLong(forecastTimes.get(step).toEpochMilli());
+                    for (float value : gridValues) out.writeFloat(value);
+                }
+                files++;
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Searches the nearest stations of a location and calculates their weights. Stations at the location get no weight,
+     * the first of them is kept as exact match.
+     */
+    private Weights weights(double latitude, double longitude, double height) {
+        List<String> nearest = spatialIndex.nearest(latitude, longitude, neighbours);
+        int[] stations = new int[nearest.size()];
+        double[] weights = new double[nearest.size()];
+        double[] offsets = new double[nearest.size()];
+        int exact = -1;
+        for (int i = 0; i < stations.length; i++) {
+            int station = stationIndex.get(nearest.get(i));
+            stations[i] = station;
+            double distance = SpatialIndex.distance(latitude, longitude, latitudes[station], longitudes[station]);
+            if (distance < EXACT_DISTANCE_KM) {
+                if (exact < 0) exact = i;
+            } else {
+                weights[i] = 1 / Math.pow(distance, power);
+            }
+            offsets[i] = offset(station, height);
+        }
+        return new Weights(stations, weights, offsets, exact);
+    }
+
+    private double offset(int station, double height) {
+        if (!heightCorrection || Double.isNaN(height) || Double.isNaN(heights[station])) return 0;
+        return LAPSE_RATE * (heights[station] - height);
+    }
+
+    /**
+     * Returns the interpolated value of a column and forecast step, the value of the exact match if present.
+     */
+    private double evaluate(Weights weights, int column, int step) {
+        int steps = forecastTimes.size();
+        double[] columnValues = values[column];
+        if (CODE_COLUMNS.contains(COLUMNS[column])) return columnValues[weights.stations[0] * steps + step];
+
+        boolean direction = COLUMNS[column] == ForecastColumn.DD;
+        boolean temperature = TEMPERATURE_COLUMNS.contains(COLUMNS[column]);
+        double sum = 0;
+        double east = 0;
+        double north = 0;
+        double weightSum = 0;
+        int exact = weights.exact >= 0 && !Double.isNaN(columnValues[weights.stations[weights.exact] * steps + step]) ? weights.exact : -1;
+        for (int i = 0; i < weights.stations.length; i++) {
+            if (exact >= 0 && i != exact) continue;
+            double value = columnValues[weights.stations[i] * steps + step];
+            if (Double.isNaN(value)) continue;
+            double weight = exact >= 0 ? 1 : weights.weights[i];
+            if (direction) {
+                east += weight * Math.sin(Math.toRadians(value));
+                north += weight * Math.cos(Math.toRadians(value));
+            } else {
+                sum += weight * (temperature ? value + weights.offsets[i] : value);
+            }
+            weightSum += weight;
+        }
+        if (weightSum == 0) return NaN;
+        if (direction) {
+            double degrees = Math.toDegrees(Math.atan2(east, north));
+            return degrees < 0 ? degrees + 360 : degrees;
+        }
+        return sum / weightSum;
+    }
+
+    /**
+     * Runs a task for every index on the fork-join pool.
+     */
+    private void forEach(int count, IntConsumer task) {
+        pool.invoke(new RangeTask(0, count, task));
+    }
+
+    /**
+     * Fork-join task splitting a range of indexes.
+     */
+    private static final class RangeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final transient IntConsumer task;
+
+        RangeTask(int from, int to, IntConsumer task) {
+            this.from = from;
+            this.to = to;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TASK_SIZE) {
+                for (int i = from; i < to; i++) task.accept(i);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, middle, task), new RangeTask(middle, to, task));
+        }
+    }
+
+    /**
+     * Nearest stations of a point with their inverse distance weights and temperature offsets, and the index of the
+     * station at the point or -1.
+     */
+    private static final class Weights {
+
+        private final int[] stations;
+        private final double[] weights;
+        private final double[] offsets;
+        private final int exact;
+
+        Weights(int[] stations, double[] weights, double[] offsets, int exact) {
+            this.stations = stations;
+            this.weights = weights;
+            this.offsets = offsets;
+            this.exact = exact;
+        }
+    }
+
+    /**
+     * Point to interpolate to.
+     */
+    public static final class Point {
+
+        private final String id;
+        private final double latitude;
+        private final double longitude;
+        private final double height;
+
+        /**
+         * Constructor.
+         *
+         * @param id        The point ID, used as station ID of the interpolated forecast.
+         * @param latitude  The latitude in degrees.
+         * @param longitude The longitude in degrees.
+         * @param height    The height in metres or NaN if unknown, then temperatures are not height corrected.
+         */
+        public Point(String id, double latitude, double longitude, double height) {
+            this.id = id;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.height = height;
+        }
+
+        public String getId() {
+            return id;
+        }
+    }
+
+    /**
+     * Regular latitude longitude grid, the cells centred on the grid points.
+     */
+    public static final class Grid {
+
+        private final double minLatitude;
+        private final double minLongitude;
+        private final double resolution;
+        private final int rows;
+        private final int columns;
+
+        /**
+         * Constructor.
+         *
+         * @param minLatitude  The latitude of the southern row in degrees.
+         * @param minLongitude The longitude of the western column in degrees.
+         * @param maxLatitude  The maximum latitude in degrees.
+         * @param maxLongitude The maximum longitude in degrees, greater than the minimum longitude.
+         * @param resolution   The distance of grid points in degrees.
+         */
+        public Grid(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude, double resolution) {
+            if (!(resolution > 0) || !(maxLatitude >= minLatitude) || !(maxLongitude >= minLongitude)) {
+                throw new IllegalArgumentException("Invalid grid");
+            }
+            this.minLatitude = minLatitude;
+            this.minLongitude = minLongitude;
+            this.resolution = resolution;
+            rows = (int) Math.floor((maxLatitude - minLatitude) / resolution + 1e-9) + 1;
+            columns = (int) Math.floor((maxLongitude - minLongitude) / resolution + 1e-9) + 1;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public int getColumns() {
+            return columns;
+        }
+
+        double latitude(int row) {
+            return minLatitude + row * resolution;
+        }
+
+        double longitude(int column) {
+            return minLongitude + column * resolution;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package de.wsthst.opendata.mosmix;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+
+/**
+ * HTTP service answering {@code GET /stations/{id}} from a model run held in memory.
+ * The response is the CSV of the {@link CsvWriter}, or the JSON of the {@link JsonWriter} for {@code ?format=json}
+ * or an {@code Accept: application/json} header. Rendered responses are kept per station until the model run is replaced.
+ * <p>
+ * The model run can be replaced at any time. Requests in flight keep using the model run they started with,
+ * which is released once the last of them has finished.
+ */
+final class ForecastServer implements Closeable {
+
+    static final String STATIONS_PATH = "/stations/";
+    private static final String CSV_CONTENT_TYPE = "text/csv; charset=UTF-8";
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final List<DerivedParameter> derivedParameters;
+    private volatile ModelRun modelRun;
+
+    /**
+     * Constructor, the server is not started yet and serves no stations until {@link #update(Instant, Map)}.
+     *
+     * @param port The port to listen on, 0 for any free port.
+     */
+    ForecastServer(int port) throws IOException {
+        this(port, List.of());
+    }
+
+    /**
+     * Constructor, see {@link #ForecastServer(int)}.
+     *
+     * @param port              The port to listen on, 0 for any free port.
+     * @param derivedParameters Derived parameters written as additional columns, calculated by a
+     *                          {@link DerivedParameterEngine} before {@link #update(Instant, Map)}.
+     */
+    ForecastServer(int port, List<? extends DerivedParameter> derivedParameters) throws IOException {
+        this.derivedParameters = List.copyOf(derivedParameters);
+        modelRun = new ModelRun(null, Map.of(), this.derivedParameters);
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        server.setExecutor(executor);
+        server.createContext(STATIONS_PATH, this::handle);
+    }
+
+    /**
+     * Atomically replaces the served model run.
+     *
+     * @param modelRunTime The model run time.
+     * @param stations     The forecasts of the model run by station ID.
+     */
+    void update(Instant modelRunTime, Map<String, PointTimeForecast> stations) {
+        modelRun = new ModelRun(modelRunTime, stations, derivedParameters);
+    }
+
+    /**
+     * Returns the time of the served model run or null if none has been set.
+     */
+    Instant getModelRunTime() {
+        return modelRun.modelRunTime;
+    }
+
+    void start() {
+        server.start();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     */
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "text/plain; charset=UTF-8", "Method not allowed\n".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            ModelRun current = modelRun;
+            String stationId = exchange.getRequestURI().getPath().substring(STATIONS_PATH.length());
+            boolean json = "format=json".equals(exchange.getRequestURI().getQuery())
+                || StringUtils.contains(exchange.getRequestHeaders().getFirst("Accept"), "application/json");
+            byte[] body = json ? current.json(stationId) : current.csv(stationId);
+            if (body == null) {
+                send(exchange, 404, "text/plain; charset=UTF-8", ("Station " + stationId + " not found\n").getBytes(StandardCharsets.UTF_8));
+            } else {
+                send(exchange, 200, json ? JSON_CONTENT_TYPE : CSV_CONTENT_TYPE, body);
+            }
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Forecasts of a model run and their rendered responses.
+     */
+    private static final class ModelRun {
+
+        private final Instant modelRunTime;
+        private final Map<String, PointTimeForecast> stations;
+        private final List<DerivedParameter> derivedParameters;
+        private final Map<String, byte[]> csv = new ConcurrentHashMap<>();
+        private final Map<String, byte[]> json = new ConcurrentHashMap<>();
+
+        ModelRun(Instant modelRunTime, Map<String, PointTimeForecast> stations, List<DerivedParameter> derivedParameters) {
+            this.modelRunTime = modelRunTime;
+            this.stations = Map.copyOf(stations);
+            this.derivedParameters = derivedParameters;
+        }
+
+        byte[] csv(String stationId) {
+            return render(stationId, csv, new CsvWriter(derivedParameters)::write);
+        }
+
+        byte[] json(String stationId) {
+            return render(stationId, json, new JsonWriter(derivedParameters)::write);
+        }
+
+        private byte[] render(String stationId, Map<String, byte[]> rendered, BiConsumer<PointTimeForecast, PrintWriter> writer) {
+            PointTimeForecast ptfc = stations.get(stationId);
+            if (ptfc == null) return null;
+            return rendered.computeIfAbsent(stationId, id -> {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (PrintWriter out = new PrintWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8))) {
+                    writer.accept(ptfc, out);
+                }
+                return bytes.toByteArray();
+            });
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package de.wsthst.opendata.mosmix;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.function.ToDoubleFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.time.ZoneOffset.UTC;
+
+/**
+ * Writes a point time forecast as JSON in the structure of the {@code mosmix2json.py} script applied to the CSV of the
+ * {@link CsvWriter}: per element a list of the CSV values and its unit, the forecast times in local time of Germany,
+ * the significant weather texts from {@code ww.json} and {@code n.json}, wind directions, integer rounded values and
+ * the highlighted gusts. The JSON is streamed directly without materializing the CSV.
+ */
+public final class JsonWriter {
+
+    private static final String RESOURCE_FOLDER = "/mosmix2json/";
+    private static final Map<String, String> WW_TEXTS = loadTexts("ww.json");
+    private static final Map<String, String> N_TEXTS = loadTexts("n.json");
+    private static final ZoneId LOCAL_ZONE = ZoneId.of("Europe/Berlin");
+    private static final String[] WEEKDAYS = {"Montag", "Dienstag", "Mittwoch", "Donnerstag", "Freitag", "Samstag", "Sonntag"};
+    private static final Set<CsvColumn> ROUNDED_COLUMNS = EnumSet.of(
+        CsvColumn.TT, CsvColumn.FF, CsvColumn.FX3, CsvColumn.PPPP, CsvColumn.TD, CsvColumn.TX, CsvColumn.TN, CsvColumn.TG, CsvColumn.TM);
+    private static final int GUST_HIGHLIGHT = 40;
+
+    private final List<DerivedParameter> derivedParameters;
+
+    /**
+     * Constructor for the MOSMIX elements only.
+     */
+    public JsonWriter() {
+        this(Collections.emptyList());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param derivedParameters Derived parameters written as additional elements, calculated by a {@link DerivedParameterEngine}.
+     */
+    public JsonWriter(List<? extends DerivedParameter> derivedParameters) {
+        this.derivedParameters = List.copyOf(derivedParameters);
+    }
+
+    public void write(PointTimeForecast ptfc, PrintWriter writer) {
+        try {
+            write(ptfc, (Appendable) writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the JSON followed by a line break.
+     */
+    public void write(PointTimeForecast ptfc, Appendable out) throws IOException {
+        // rows of the CSV, beginning with the empty rows from midnight to the model run time
+        ZonedDateTime modelRunTimeUtc = ptfc.getModelRunTime().atZone(UTC);
+        List<Instant> times = new ArrayList<>();
+        List<Forecast> forecasts = new ArrayList<>();
+        ZonedDateTime modelRunTimeUtcMidnight = modelRunTimeUtc.withHour(0);
+        for (ZonedDateTime time = modelRunTimeUtcMidnight; !time.isAfter(modelRunTimeUtc); time = time.plus(1, ChronoUnit.HOURS)) {
+            times.add(time.toInstant());
+            forecasts.add(null);
+        }
+        for (Forecast fc : ptfc) {
+            times.add(fc.getForecastTime());
+            forecasts.add(fc);
+        }
+
+        Map<String, Value> values = new TreeMap<>();
+        List<ZonedDateTime> localTimes = times.stream().map(time -> time.atZone(LOCAL_ZONE)).toList();
+        values.put("forecast_step_year", list(localTimes.size(), row -> (long) localTimes.get(row).getYear()));
+        values.put("forecast_step_month", list(localTimes.size(), row -> twoDigits(localTimes.get(row).getMonthValue())));
+        values.put("forecast_step_day", list(localTimes.size(), row -> twoDigits(localTimes.get(row).getDayOfMonth())));
+        values.put("forecast_step_hour", list(localTimes.size(), row -> twoDigits(localTimes.get(row).getHour())));
+        values.put("forecast_step_dow", list(localTimes.size(), row -> WEEKDAYS[localTimes.get(row).getDayOfWeek().ordinal()]));
+        values.put("forecast_step_tz", list(localTimes.size(),
+            row -> LOCAL_ZONE.getRules().isDaylightSavings(times.get(row)) ? "CEST" : "CET"));
+
+        Map<String, String[]> cells = new HashMap<>();
+        for (CsvColumn column : CsvColumn.values()) {
+            String[] columnCells = cells(forecasts, column.getFormat(), column::value);
+            cells.put(column.getHeader(), columnCells);
+            values.put(column.getHeader() + "_unit", string(column.getUnit()));
+            if (ROUNDED_COLUMNS.contains(column)) {
+                values.put(column.getHeader(), list(columnCells.length, row -> rounded(columnCells[row])));
+                values.put(column.getHeader() + "_org", list(columnCells.length, row -> columnCells[row]));
+            } else {
+                values.put(column.getHeader(), list(columnCells.length, row -> columnCells[row]));
+            }
+        }
+        for (DerivedParameter parameter : derivedParameters) {
+            String[] parameterCells = cells(forecasts, CsvColumn.Format.DECIMAL, fc -> fc.getDerived(parameter.getName()));
+            values.put(parameter.getName(), list(parameterCells.length, row -> parameterCells[row]));
+            values.put(parameter.getName() + "_unit", string(parameter.getUnit()));
+        }
+
+        String[] ww = cells.get(CsvColumn.WW.getHeader());
+        String[] ww3 = cells.get(CsvColumn.WW3.getHeader());
+        String[] nf = cells.get(CsvColumn.NF.getHeader());
+        String[] dd = cells.get(CsvColumn.DD.getHeader());
+        String[] fx = cells.get(CsvColumn.FX.getHeader());
+        String[] fx3 = cells.get(CsvColumn.FX3.getHeader());
+        values.put("wwn", list(ww.length, row -> weatherText(ww[row], nf[row])));
+        values.put("wwn3", list(ww3.length, row -> weatherText(ww3[row], nf[row])));
+        values.put("ddd", list(dd.length, row -> windDirection(dd[row])));
+        values.put("fx3_html", list(fx3.length, row -> {
+            Object value = rounded(fx3[row]);
+            return value instanceof Long gust && gust >= GUST_HIGHLIGHT ? highlight(gust.toString()) : CsvWriter.NO_VALUE_STRING;
+        }));
+        values.put("fx1_html", list(fx.length, row -> {
+            if (fx[row].equals(CsvWriter.NO_VALUE_STRING) || Double.parseDouble(fx[row]) < GUST_HIGHLIGHT) return CsvWriter.NO_VALUE_STRING;
+            return highlight(new BigDecimal(Double.parseDouble(fx[row])).setScale(0, RoundingMode.HALF_EVEN).toPlainString());
+        }));
+        values.put("modelrun", string(twoDigits(modelRunTimeUtc.getHour()) + " UTC"));
+
+        out.append('{');
+        boolean first = true;
+        for (Map.Entry<String, Value> entry : values.entrySet()) {
+            out.append(first ? "\n " : ",\n ");
+            first = false;
+            appendString(out, entry.getKey());
+            out.append(": ");
+            entry.getValue().write(out);
+        }
+        out.append("\n}\n");
+    }
+
+    private static String[] cells(List<Forecast> forecasts, CsvColumn.Format format, ToDoubleFunction<Forecast> value) {
+        String[] cells = new String[forecasts.size()];
+        for (int row = 0; row < cells.length; row++) {
+            Forecast fc = forecasts.get(row);
+            cells[row] = fc != null ? CsvWriter.format(format, value.applyAsDouble(fc)) : CsvWriter.NO_VALUE_STRING;
+        }
+        return cells;
+    }
+
+    /**
+     * Returns a CSV value rounded half even to an integer or the missing value.
+     */
+    private static Object rounded(String cell) {
+        if (cell.equals(CsvWriter.NO_VALUE_STRING)) return cell;
+        return (long) Math.rint(Double.parseDouble(cell));
+    }
+
+    /**
+     * Returns the text of a significant weather code, else the text of the effective cloud cover.
+     */
+    private static String weatherText(String ww, String nf) {
+        String text = WW_TEXTS.get(ww);
+        if (text != null) return text;
+        return N_TEXTS.getOrDefault(nf, nf);
+    }
+
+    private static String windDirection(String dd) {
+        if (dd.equals(CsvWriter.NO_VALUE_STRING)) return dd;
+        double value = Double.parseDouble(dd);
+        if (337.5 < value && value <= 360) return "N";
+        if (0 <= value && value <= 22.5) return "N";
+        if (22.5 < value && value <= 67.5) return "NO";
+        if (67.5 < value && value <= 112.5) return "O";
+        if (112.5 < value && value <= 157.5) return "SO";
+        if (157.5 < value && value <= 202.5) return "S";
+        if (202.5 < value && value <= 247.5) return "SW";
+        if (247.5 < value && value <= 292.5) return "W";
+        if (292.5 < value && value <= 337.5) return "NW";
+        return "ERR";
+    }
+
+    private static String highlight(String gust) {
+        return "<font color='red'><b>" + gust + "</b></font>";
+    }
+
+    private static String twoDigits(int value) {
+        return value < 10 ? "0" + value : Integer.toString(value);
+    }
+
+    /**
+     * JSON value writing itself.
+     */
+    private interface Value {
+        void write(Appendable out) throws IOException;
+    }
+
+    private static Value string(String text) {
+        return out -> appendString(out, text);
+    }
+
+    /**
+     * Returns a list of strings and integer numbers, which are created row by row while writing.
+     */
+    private static Value list(int size, IntFunction<Object> element) {
+        return out -> {
+            if (size == 0) {
+                out.append("[]");
+                return;
+            }
+            out.append('[');
+            for (int row = 0; row < size; row++) {
+                out.append(row == 0 ? "\n  " : ",\n  ");
+                Object value = element.apply(row);
+                if (value instanceof String text) {
+                    appendString(out, text);
+                } else {
+                    out.append(value.toString());
+                }
+            }
+            out.append("\n ]");
+        };
+    }
+
+    /**
+     * Appends a quoted string, non ASCII characters escaped.
+     */
+    private static void appendString(Appendable out, String text) throws IOException {
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                case '\b' -> out.append("\\b");
+                case '\f' -> out.append("\\f");
+                default -> {
+                    if (c < 0x20 || c > 0x7e) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Loads a flat JSON object of strings from the mosmix2json resources.
+     */
+    private static Map<String, String> loadTexts(String fileName) {
+        try (InputStream in = JsonWriter.class.getResourceAsStream(RESOURCE_FOLDER + fileName)) {
+            if (in == null) throw new IllegalStateException("Resource " + RESOURCE_FOLDER + fileName + " not found");
+            String json = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            Map<String, String> texts = new HashMap<>();
+            Matcher entry = Pattern.compile("\"((?:[^\"\\\\]|\\\\.)*)\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"").matcher(json);
+            while (entry.find()) texts.put(unescape(entry.group(1)), unescape(entry.group(2)));
+            return Collections.unmodifiableMap(texts);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String unescape(String text) {
+        StringBuilder unescaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '\\') {
+                unescaped.append(c);
+                continue;
+            }
+            char escaped = text.charAt(++i);
+            switch (escaped) {
+                case 'n' -> unescaped.append('\n');
+                case 'r' -> unescaped.append('\r');
+                case 't' -> unescaped.append('\t');
+                case 'b' -> unescaped.append('\b');
+                case 'f' -> unescaped.append('\f');
+                case 'u' -> {
+                    unescaped.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+                    i += 4;
+                }
+                default -> unescaped.append(escaped);
+            }
+        }
+        return unescaped.toString();
+    }
+}
@@ -0,0 +1,179 @@
+package de.wsthst.opendata.mosmix;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Processes many KML or KMZ files concurrently on a bounded thread pool and collects per-file timings and failures.
+ */
+final class KmlBatch {
+
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    /**
+     * Processing of a single file.
+     */
+    interface FileTask {
+
+        /**
+         * Processes a file.
+         *
+         * @return The number of extracted stations.
+         */
+        int process(Path kmlFile) throws Exception;
+    }
+
+    private final int jobs;
+
+    /**
+     * Constructor.
+     *
+     * @param jobs Number of files processed concurrently.
+     */
+    KmlBatch(int jobs) {
+        if (jobs < 1) throw new IllegalArgumentException("Number of jobs must be at least 1: " + jobs);
+        this.jobs = jobs;
+    }
+
+    /**
+     * Returns true if the given path is a directory or a glob pattern.
+     */
+    static boolean isBatch(Path path) {
+        return Files.isDirectory(path) || StringUtils.containsAny(path.getFileName().toString(), GLOB_CHARACTERS);
+    }
+
+    /**
+     * Resolves a directory to all contained KML and KMZ files, or a glob pattern to all matching files.
+     * The glob pattern may only be used in the file name.
+     *
+     * @return Matching files sorted by name.
+     */
+    static List<Path> resolve(Path path) throws IOException {
+        Path directory;
+        PathMatcher matcher;
+        if (Files.isDirectory(path)) {
+            directory = path;
+            matcher = FileSystems.getDefault().getPathMatcher("glob:*{" + MosmixKmlInput.KML_EXTENSION + "," + MosmixKmlInput.KMZ_EXTENSION + "}");
+        } else {
+            directory = path.getParent();
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + path.getFileName());
+        }
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file) && matcher.matches(file.getFileName())) files.add(file);
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    /**
+     * Processes all files. Failures of single files do not stop the batch.
+     *
+     * @return The results in the order of the files.
+     */
+    List<Result> run(List<Path> files, FileTask task) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(jobs);
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (Path file : files) {
+                futures.add(executor.submit(() -> process(file, task)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Result process(Path file, FileTask task) {
+        long start = System.nanoTime();
+        try {
+            int stations = task.process(file);
+            return new Result(file, Duration.ofNanos(System.nanoTime() - start), stations, null);
+        } catch (Exception | Error e) {
+            return new Result(file, Duration.ofNanos(System.nanoTime() - start), 0, e);
+        }
+    }
+
+    /**
+     * Prints a summary line per file and the totals.
+     */
+    static void printSummary(List<Result> results, Duration total, PrintStream out) {
+        long failed = results.stream().filter(result -> !result.isSuccess()).count();
+        out.printf(Locale.ROOT, "Processed %d files in %.3f s, %d failed%n", results.size(), total.toNanos() / 1e9, failed);
+        for (Result result : results) {
+            out.printf(Locale.ROOT, "%-6s %8.3f s %6d stations  %s%s%n",
+                result.isSuccess() ? "OK" : "FAILED",
+                result.getDuration().toNanos() / 1e9,
+                result.getStations(),
+                result.getFile().getFileName(),
+                result.isSuccess() ? "" : "  " + result.getError());
+        }
+    }
+
+    /**
+     * Outcome of processing a single file.
+     */
+    static final class Result {
+
+        private final Path file;
+        private final Duration duration;
+        private final int stations;
+        private final Throwable error;
+
+        Result(Path file, Duration duration, int stations, Throwable error) {
+            this.file = file;
+            this.duration = duration;
+            this.stations = stations;
+            this.error = error;
+        }
+
+        Path getFile() {
+            return file;
+        }
+
+        Duration getDuration() {
+            return duration;
+        }
+
+        int getStations() {
+            return stations;
+        }
+
+        /**
+         * Returns the failure or null on success.
+         */
+        Throwable getError() {
+            return error;
+        }
+
+        boolean isSuccess() {
+            return error == null;
+        }
+    }
+}
@@ -3,26 +3,70 @@ package de.wsthst.opendata.mosmix;
 import org.apache.commons.cli.*;
 import org.apache.commons.lang3.StringUtils;
 
-import java.io.BufferedInputStream;
-import java.io.File;
-import java.io.InputStream;
+import javax.xml.stream.XMLStreamException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-
-import static java.time.ZoneOffset.UTC;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public final class Main {
 
+    private static final String ALL_STATIONS = "all";
+    private static final String ALL_DERIVED_PARAMETERS = "all";
+    private static final String FORMAT_CSV = "csv";
+    private static final String FORMAT_JSON = "json";
+    private static final int WRITE_STAGE_CAPACITY = 32;
+
     private String[] stationIds;
+    private double[] nearLocation;
+    private int nearCount = 1;
+    private double[] boundingBox;
+    private String[] elements;
+    private int threads = 1;
+    private MosmixKmlReader.Engine engine = MosmixKmlReader.Engine.STAX;
+    private int jobs = Runtime.getRuntime().availableProcessors();
     private Path kmlFile;
+    private List<Path> kmlFiles;
+    private Path cacheFile;
+    private Path watchFolder;
+    private Path compileFile;
+    private Path archiveFile;
+    private Path pointsFile;
+    private ForecastInterpolator.Grid grid;
+    private int neighbours = 4;
+    private boolean heightCorrection;
+    private boolean useIndex;
+    private boolean pipeline;
     private Path outFolder;
+    private Integer servePort;
+    private DerivedParameterEngine derivedParameters;
+    private JsonWriter jsonWriter;
+    private boolean printMetrics;
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    private final ThreadLocal<CsvWriter> csvWriters = ThreadLocal.withInitial(() ->
+        new CsvWriter(derivedParameters != null ? derivedParameters.getParameters() : Collections.emptyList()));
 
     public static void main(String[] args) throws Exception {
         new Main().run(args);
@@ -31,55 +75,482 @@ public final class Main {
     private void run(String[] args) throws Exception {
         parseCommandLine(args);
 
-        Instant modelRunTime = parseModelRuntime();
-        List<PointTimeForecast> ptfcs;
-        try (InputStream kmlStream = new BufferedInputStream(Files.newInputStream(kmlFile))) {
-            ptfcs = new MosmixKmlReader().read(kmlStream, modelRunTime, stationIds);
+        if (servePort != null) {
+            serve();
+            return;
+        }
+        long start = System.nanoTime();
+        boolean success = true;
+        try {
+            success = execute();
+        } finally {
+            if (printMetrics) System.err.println(metrics.toJson(Duration.ofNanos(System.nanoTime() - start)));
+        }
+        if (!success) System.exit(1);
+    }
+
+    /**
+     * Executes the action of a run which terminates.
+     *
+     * @return False if a file of a batch failed.
+     */
+    private boolean execute() throws Exception {
+        if (pointsFile != null || grid != null) {
+            interpolate();
+            return true;
+        }
+        if (cacheFile != null) {
+            readCache();
+            return true;
+        }
+
+        if (archiveFile != null) {
+            archive();
+            return true;
+        }
+        if (kmlFiles != null) {
+            return runBatch();
+        }
+        extract(kmlFile, outFolder);
+        return true;
+    }
+
+    private boolean runBatch() throws Exception {
+        if (kmlFiles.isEmpty()) {
+            System.err.println("WARNING: No KML or KMZ files found for " + kmlFile);
+            return true;
+        }
+        long start = System.nanoTime();
+        List<KmlBatch.Result> results = new KmlBatch(jobs).run(kmlFiles, file -> {
+            Path runFolder = outFolder.resolve(StringUtils.substringBeforeLast(file.getFileName().toString(), "."));
+            Files.createDirectories(runFolder);
+            return extract(file, runFolder);
+        });
+        KmlBatch.printSummary(results, Duration.ofNanos(System.nanoTime() - start), System.out);
+        return results.stream().allMatch(KmlBatch.Result::isSuccess);
+    }
+
+    private MosmixKmlReader createReader() {
+        MosmixKmlReader reader = new MosmixKmlReader(elements != null ? Arrays.asList(elements) : MosmixKmlSchema.ELEMENT_SYMBOLS, threads, engine);
+        reader.setMetrics(metrics);
+        reader.setReadAhead(pipeline);
+        return reader;
+    }
+
+    /**
+     * Extracts the selected stations of a KML file.
+     *
+     * @return The number of extracted stations.
+     */
+    private int extract(Path kmlFile, Path outFolder) throws IOException, XMLStreamException {
+        MosmixKmlReader reader = createReader();
+        String[] stationIds = this.stationIds;
+        PlacemarkIndex index = null;
+        if (nearLocation != null || boundingBox != null) {
+            SpatialIndex spatialIndex;
+            if (MosmixKmlInput.isKmz(kmlFile)) {
+                spatialIndex = SpatialIndex.scan(kmlFile);
+            } else {
+                index = PlacemarkIndex.open(kmlFile);
+                spatialIndex = index.getSpatialIndex();
+            }
+            List<String> selected = nearLocation != null
+                ? spatialIndex.nearest(nearLocation[0], nearLocation[1], nearCount)
+                : spatialIndex.within(boundingBox[0], boundingBox[1], boundingBox[2], boundingBox[3]);
+            if (selected.isEmpty()) System.err.println("WARNING: No stations found in the area in " + kmlFile.getFileName());
+            stationIds = selected.toArray(new String[0]);
+        } else if (useIndex) {
+            index = PlacemarkIndex.open(kmlFile);
+        }
+        AtomicInteger count = new AtomicInteger();
+        Consumer<PointTimeForecast> writer = ptfc -> {
+            write(ptfc, outFolder);
+            count.incrementAndGet();
+        };
+        if (compileFile != null) {
+            try (ModelRunCacheWriter cacheWriter = new ModelRunCacheWriter(compileFile)) {
+                reader.readAll(kmlFile, cacheWriter.andThen(ptfc -> count.incrementAndGet()));
+                cacheWriter.commit();
+            }
+            return count.get();
         }
+        if (pipeline) {
+            // Derive and write on a separate thread, while the reader parses the next stations
+            try (ConsumerStage<PointTimeForecast> stage = new ConsumerStage<>("mosmix-write", WRITE_STAGE_CAPACITY, writer)) {
+                read(reader, kmlFile, index, stationIds, stage);
+            }
+        } else {
+            read(reader, kmlFile, index, stationIds, writer);
+        }
+        return count.get();
+    }
 
-        for (PointTimeForecast ptfc : ptfcs) {
-            if (outFolder != null) {
-                Path outFile = outFolder.resolve("mosmix_" + ptfc.getStationId() + ".csv");
-                try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(outFile, StandardCharsets.UTF_8))) {
-                    new CsvWriter().write(ptfc, out);
+    private void read(MosmixKmlReader reader, Path kmlFile, PlacemarkIndex index, String[] stationIds, Consumer<PointTimeForecast> writer) throws IOException, XMLStreamException {
+        if (isAllStations()) {
+            reader.readAll(kmlFile, writer);
+            return;
+        }
+        if (index != null) {
+            reader.read(index, writer, stationIds);
+        } else {
+            reader.read(kmlFile, writer, stationIds);
+        }
+        for (String missingStationId : reader.getMissingStationIds()) {
+            System.err.println("WARNING: Station " + missingStationId + " not found in " + kmlFile.getFileName());
+        }
+    }
+
+    /**
+     * Appends all stations of the KML files to the archive in the order of their model runs.
+     */
+    private void archive() throws IOException, XMLStreamException {
+        List<Path> files = new ArrayList<>(kmlFiles != null ? kmlFiles : List.of(kmlFile));
+        Map<Path, Instant> fileModelRunTimes = new HashMap<>();
+        for (Path file : files) fileModelRunTimes.put(file, MosmixKmlInput.readModelRunTime(file));
+        files.sort(Comparator.comparing(fileModelRunTimes::get));
+        MosmixKmlReader reader = createReader();
+        try (ForecastArchive archive = ForecastArchive.open(archiveFile)) {
+            for (Path file : files) {
+                Instant modelRunTime = fileModelRunTimes.get(file);
+                List<Instant> modelRunTimes = archive.getModelRunTimes();
+                if (!modelRunTimes.isEmpty() && !modelRunTime.isAfter(modelRunTimes.get(modelRunTimes.size() - 1))) {
+                    System.err.println("WARNING: Model run " + modelRunTime + " of " + file.getFileName() + " is not after the last archived model run, skipped");
+                    continue;
+                }
+                AtomicInteger count = new AtomicInteger();
+                try (ForecastArchive.RunAppender appender = archive.append(modelRunTime)) {
+                    reader.readAll(file, appender.andThen(ptfc -> count.incrementAndGet()));
+                    appender.commit();
+                }
+                System.out.println("Archived " + count + " stations of model run " + modelRunTime + " from " + file.getFileName());
+            }
+        }
+    }
+
+    /**
+     * Interpolates all stations of a model run to the points or the grid.
+     */
+    private void interpolate() throws IOException, XMLStreamException {
+        List<PointTimeForecast> stations = new ArrayList<>();
+        if (cacheFile != null) {
+            try (ModelRunCache cache = ModelRunCache.open(cacheFile)) {
+                cache.getStationIds().forEach(stationId -> stations.add(cache.get(stationId)));
+            }
+        } else {
+            MosmixKmlReader reader = createReader();
+            reader.readAll(kmlFile, stations::add);
+        }
+        ForecastInterpolator interpolator = new ForecastInterpolator(stations, neighbours, 2, heightCorrection);
+        if (grid != null) {
+            int files = interpolator.writeGrid(grid, outFolder);
+            System.out.println("Wrote " + files + " grids of " + grid.getRows() + "x" + grid.getColumns() + " points to " + outFolder);
+            return;
+        }
+        for (PointTimeForecast ptfc : interpolator.interpolate(readPoints(pointsFile))) write(ptfc, outFolder);
+    }
+
+    /**
+     * Reads points from lines <code>id;latitude;longitude[;height]</code>, ignoring empty lines and comments starting with #.
+     */
+    private static List<ForecastInterpolator.Point> readPoints(Path pointsFile) throws IOException {
+        List<ForecastInterpolator.Point> points = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(pointsFile, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] parts = line.split(";");
+            try {
+                if (parts.length < 3 || parts.length > 4) throw new NumberFormatException();
+                double height = parts.length == 4 ? Double.parseDouble(parts[3].trim()) : Double.NaN;
+                points.add(new ForecastInterpolator.Point(parts[0].trim(), Double.parseDouble(parts[1].trim()), Double.parseDouble(parts[2].trim()), height));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid point in line " + lineNumber + " of " + pointsFile.getFileName() + ": " + line);
+            }
+        }
+        return points;
+    }
+
+    private void serve() throws Exception {
+        ForecastServer server = new ForecastServer(servePort, derivedParameters != null ? derivedParameters.getParameters() : Collections.emptyList());
+        if (watchFolder != null) {
+            // model runs are read one after another off the watcher thread, which keeps observing the directory
+            ExecutorService updates = Executors.newSingleThreadExecutor();
+            ModelRunWatcher watcher = new ModelRunWatcher(watchFolder, file -> updates.execute(() -> update(server, file)));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    watcher.close();
+                } catch (IOException e) {
+                    System.err.println("ERROR: Closing watcher of " + watchFolder + " failed: " + e);
+                }
+                updates.shutdownNow();
+                server.close();
+            }));
+        } else {
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            if (cacheFile != null) {
+                try (ModelRunCache cache = ModelRunCache.open(cacheFile)) {
+                    Map<String, PointTimeForecast> stations = new HashMap<>();
+                    cache.getStationIds().forEach(stationId -> stations.put(stationId, cache.get(stationId)));
+                    if (derivedParameters != null) stations.values().forEach(derivedParameters::apply);
+                    server.update(cache.getModelRunTime(), stations);
                 }
             } else {
-                System.out.println(ptfc.getStationId());
-                PrintWriter out = new PrintWriter(System.out);
-                new CsvWriter().write(ptfc, out);
-                out.println("");
-                out.flush();
+                update(server, kmlFile);
+            }
+        }
+        server.start();
+        System.out.println("Serving at http://localhost:" + server.getPort() + ForecastServer.STATIONS_PATH + "{id}");
+    }
+
+    /**
+     * Reads all stations of a KML file and serves them, unless a newer model run is already served.
+     */
+    private void update(ForecastServer server, Path kmlFile) {
+        try {
+            Instant modelRunTime = MosmixKmlInput.readModelRunTime(kmlFile);
+            if (server.getModelRunTime() != null && !modelRunTime.isAfter(server.getModelRunTime())) return;
+            MosmixKmlReader reader = createReader();
+            Map<String, PointTimeForecast> stations = new HashMap<>();
+            reader.readAll(kmlFile, ptfc -> stations.put(ptfc.getStationId(), ptfc));
+            if (derivedParameters != null) stations.values().forEach(derivedParameters::apply);
+            server.update(modelRunTime, stations);
+            System.out.println("Serving " + stations.size() + " stations of model run " + modelRunTime + " from " + kmlFile.getFileName());
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            System.err.println("ERROR: Reading " + kmlFile.getFileName() + " failed: " + e);
+        }
+    }
+
+    private void readCache() throws IOException {
+        try (ModelRunCache cache = ModelRunCache.open(cacheFile)) {
+            Collection<String> ids = isAllStations() ? cache.getStationIds() : Arrays.asList(stationIds);
+            for (String stationId : ids) {
+                PointTimeForecast ptfc = cache.get(stationId);
+                if (ptfc != null) {
+                    write(ptfc, outFolder);
+                } else {
+                    System.err.println("WARNING: Station " + stationId + " not found in " + cacheFile.getFileName());
+                }
             }
         }
     }
 
-    private Instant parseModelRuntime() {
-        String modelrunTimeString = kmlFile.getFileName().toString();
-        if(modelrunTimeString.contains(File.separator)) modelrunTimeString = StringUtils.substringAfterLast(modelrunTimeString, File.separator);
-        modelrunTimeString = StringUtils.split(modelrunTimeString, '_')[2];
-        return LocalDateTime.parse(modelrunTimeString, DateTimeFormatter.ofPattern("yyyyMMddHH")).atZone(UTC).toInstant();
+    private boolean isAllStations() {
+        return stationIds != null && stationIds.length == 1 && stationIds[0].equalsIgnoreCase(ALL_STATIONS);
     }
 
-    private void parseCommandLine(String[] args) {
+    private void write(PointTimeForecast ptfc, Path outFolder) {
+        if (derivedParameters != null) {
+            long start = System.nanoTime();
+            PipelineEvents.DerivedValues event = new PipelineEvents.DerivedValues();
+            event.begin();
+            derivedParameters.apply(ptfc);
+            event.stationId = ptfc.getStationId();
+            event.parameters = derivedParameters.getParameters().size();
+            event.commit();
+            metrics.addPhase(PipelineMetrics.Phase.DERIVED, start);
+        }
+        long start = System.nanoTime();
+        PipelineEvents.Write event = new PipelineEvents.Write();
+        event.begin();
+        long bytes = jsonWriter != null ? writeJson(ptfc, outFolder) : writeCsv(ptfc, outFolder);
+        event.stationId = ptfc.getStationId();
+        event.format = jsonWriter != null ? FORMAT_JSON : FORMAT_CSV;
+        event.bytes = bytes;
+        event.commit();
+        metrics.addPhase(PipelineMetrics.Phase.WRITE, start);
+        metrics.addBytesWritten(bytes);
+    }
+
+    /**
+     * Writes a station as CSV file or to standard out.
+     *
+     * @return The number of bytes written to a file, 0 for standard out.
+     */
+    private long writeCsv(PointTimeForecast ptfc, Path outFolder) {
+        if (outFolder != null) {
+            Path outFile = outFolder.resolve("mosmix_" + ptfc.getStationId() + ".csv");
+            try (FileChannel out = FileChannel.open(outFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                csvWriters.get().write(ptfc, out);
+                return out.position();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            System.out.println(ptfc.getStationId());
+            PrintWriter out = new PrintWriter(System.out);
+            csvWriters.get().write(ptfc, out);
+            out.println("");
+            out.flush();
+            return 0;
+        }
+    }
+
+    /**
+     * Writes a station as JSON file or to standard out.
+     *
+     * @return The number of bytes written to a file, 0 for standard out.
+     */
+    private long writeJson(PointTimeForecast ptfc, Path outFolder) {
+        if (outFolder != null) {
+            Path outFile = outFolder.resolve("mosmix_" + ptfc.getStationId() + ".json");
+            try {
+                try (BufferedWriter out = Files.newBufferedWriter(outFile, StandardCharsets.UTF_8)) {
+                    jsonWriter.write(ptfc, out);
+                }
+                return Files.size(outFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            System.out.println(ptfc.getStationId());
+            PrintWriter out = new PrintWriter(System.out);
+            jsonWriter.write(ptfc, out);
+            out.println("");
+            out.flush();
+            return 0;
+        }
+    }
+
+    private void parseCommandLine(String[] args) throws IOException {
         Options options = new Options();
-        options.addOption(Option.builder()
+        OptionGroup input = new OptionGroup();
+        input.addOption(Option.builder()
             .longOpt("kml")
             .argName("KML File")
-            .desc("MOSMIX KML file, underscore delimites. Model run time yyyyMMddHH has to be at third position.")
+            .desc("MOSMIX KML or KMZ file, underscore delimites. Model run time yyyyMMddHH has to be at third position. "
+                + "A directory or a glob pattern like 'MOSMIX_S_*.kmz' processes all matching files concurrently, each into a subfolder of --out.")
             .hasArg()
-            .required()
             .build());
-        options.addOption(Option.builder()
+        input.addOption(Option.builder()
+            .longOpt("cache")
+            .argName("Cache file")
+            .desc("Model run cache file written by --compile, read instead of a KML file.")
+            .hasArg()
+            .build());
+        input.addOption(Option.builder()
+            .longOpt("watch")
+            .argName("Directory")
+            .desc("Drop directory watched for new MOSMIX KML or KMZ files with --serve. Each completely written model run is read in the background and replaces the served one.")
+            .hasArg()
+            .build());
+        input.setRequired(true);
+        options.addOptionGroup(input);
+        OptionGroup action = new OptionGroup();
+        action.addOption(Option.builder()
             .longOpt("stations")
             .argName("station1,station2,...")
-            .desc("Comma delimited station identifiers, whose data will be extracted.")
+            .desc("Comma delimited station identifiers, whose data will be extracted, or 'all' for all stations.")
+            .hasArg()
+            .build());
+        action.addOption(Option.builder()
+            .longOpt("near")
+            .argName("lat,lon[,k]")
+            .desc("Extracts the k stations nearest to a location in degrees, default the nearest one.")
+            .hasArg()
+            .build());
+        action.addOption(Option.builder()
+            .longOpt("bbox")
+            .argName("minLat,minLon,maxLat,maxLon")
+            .desc("Extracts all stations within a bounding box in degrees. A minimum longitude greater than the maximum crosses the antimeridian.")
+            .hasArg()
+            .build());
+        action.addOption(Option.builder()
+            .longOpt("points")
+            .argName("Points file")
+            .desc("Interpolates the forecasts to the points of a file with lines id;lat;lon[;height] from the nearest stations by inverse distance weighting.")
+            .hasArg()
+            .build());
+        action.addOption(Option.builder()
+            .longOpt("grid")
+            .argName("minLat,minLon,maxLat,maxLon,resolution")
+            .desc("Interpolates the forecasts to a grid in degrees, written as a binary file per element and forecast step into --out.")
+            .hasArg()
+            .build());
+        action.addOption(Option.builder()
+            .longOpt("compile")
+            .argName("Cache file")
+            .desc("Compiles all stations of the KML file into a binary model run cache file instead of extracting CSV.")
+            .hasArg()
+            .build());
+        action.addOption(Option.builder()
+            .longOpt("archive")
+            .argName("Archive file")
+            .desc("Appends all stations of the KML files as model runs to a compressed forecast archive, which is created if missing.")
+            .hasArg()
+            .build());
+        action.addOption(Option.builder()
+            .longOpt("serve")
+            .argName("Port")
+            .desc("Keeps all stations in memory and serves them via HTTP GET /stations/{id} as CSV, or as JSON with ?format=json.")
+            .hasArg()
+            .build());
+        action.setRequired(true);
+        options.addOptionGroup(action);
+        options.addOption(Option.builder()
+            .longOpt("elements")
+            .argName("element1,element2,...")
+            .desc("Comma delimited MOSMIX element symbols to extract, e.g. TTT,RR1c,FF, out of the elements written to the output. All other values are left empty.")
+            .hasArg()
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("derived")
+            .argName("parameter1,parameter2,...")
+            .desc("Comma delimited derived parameters written as additional CSV columns, or 'all': "
+                + StringUtils.join(StandardDerivedParameter.values(), ",") + ".")
+            .hasArg()
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("format")
+            .argName("csv|json")
+            .desc("Output format, default csv. json writes the structure of the mosmix2json.py script directly.")
+            .hasArg()
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("engine")
+            .argName("stax|mapped")
+            .desc("Engine parsing the KML, default stax. mapped scans the bytes of the memory-mapped file, plain KML files only, "
+                + "KMZ files and --index are read by stax.")
+            .hasArg()
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("neighbours")
+            .argName("Number of stations")
+            .desc("Number of nearest stations interpolated by --points and --grid, default 4.")
+            .hasArg()
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("height-correction")
+            .desc("Corrects interpolated temperatures by the height difference of stations and points with the standard lapse rate.")
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("index")
+            .desc("Reads the stations using a placemark index stored next to the KML file, which is built on first use. Plain KML files only.")
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("metrics")
+            .desc("Prints a JSON summary of counters, throughput and the time of each phase to standard error at the end of the run.")
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("pipeline")
+            .desc("Reads or inflates the input, parses stations, and derives and writes them on separate threads connected by bounded buffers.")
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("threads")
+            .argName("Number of threads")
+            .desc("Number of threads parsing stations in parallel, default 1.")
+            .hasArg()
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("jobs")
+            .argName("Number of jobs")
+            .desc("Number of KML files processed concurrently in batch mode, default number of processors.")
             .hasArg()
-            .required()
             .build());
         options.addOption(Option.builder()
             .longOpt("out")
             .argName("Output directory")
-            .desc("Output directory for the CSV file, else output to console standard out.")
+            .desc("Output directory for the CSV or JSON files, else output to console standard out.")
             .hasArg()
             .build());
 
@@ -87,6 +558,27 @@ public final class Main {
         CommandLine cmdLine = null;
         try {
             cmdLine = parser.parse(options, args);
+            if (cmdLine.hasOption("compile") && !cmdLine.hasOption("kml")) throw new ParseException("Option --compile requires --kml");
+            if (cmdLine.hasOption("archive") && !cmdLine.hasOption("kml")) throw new ParseException("Option --archive requires --kml");
+            if ((cmdLine.hasOption("near") || cmdLine.hasOption("bbox")) && !cmdLine.hasOption("kml")) throw new ParseException("Options --near and --bbox require --kml");
+            if (cmdLine.hasOption("near")) parseNear(cmdLine.getOptionValue("near"));
+            if (cmdLine.hasOption("bbox")) boundingBox = parseCoordinates(cmdLine.getOptionValue("bbox"), 4, 4);
+            if (cmdLine.hasOption("grid")) grid = parseGrid(cmdLine.getOptionValue("grid"));
+            if (cmdLine.hasOption("grid") && !cmdLine.hasOption("out")) throw new ParseException("Option --grid requires --out");
+            if (cmdLine.hasOption("metrics") && cmdLine.hasOption("serve")) throw new ParseException("Option --metrics cannot be combined with --serve");
+            if (cmdLine.hasOption("watch") && !cmdLine.hasOption("serve")) throw new ParseException("Option --watch requires --serve");
+            if (cmdLine.hasOption("kml") && KmlBatch.isBatch(resolve(cmdLine.getOptionValue("kml")))) {
+                if (cmdLine.hasOption("compile") || cmdLine.hasOption("serve") || cmdLine.hasOption("points") || cmdLine.hasOption("grid")) {
+                    throw new ParseException("Options --compile, --serve, --points and --grid require a single KML file");
+                }
+                if (!cmdLine.hasOption("out") && !cmdLine.hasOption("archive")) throw new ParseException("Batch mode requires --out");
+            }
+            String format = cmdLine.getOptionValue("format", FORMAT_CSV);
+            if (!format.equals(FORMAT_CSV) && !format.equals(FORMAT_JSON)) throw new ParseException("Unknown format " + format);
+            if (cmdLine.hasOption("engine")) engine = parseEngine(cmdLine.getOptionValue("engine"));
+            if (cmdLine.hasOption("elements")) elements = parseElements(cmdLine.getOptionValue("elements"));
+            if (cmdLine.hasOption("derived")) derivedParameters = new DerivedParameterEngine(parseDerivedParameters(cmdLine.getOptionValue("derived")));
+            if (elements != null && derivedParameters != null) checkDerivedElements(elements, derivedParameters);
         } catch (ParseException e) {
             System.err.println("ERROR: " + e.getMessage());
             System.out.println();
@@ -95,11 +587,115 @@ public final class Main {
             System.exit(-1);
         }
 
-        stationIds = cmdLine.getOptionValue("stations").split(",");
-        kmlFile = resolve(cmdLine.getOptionValue("kml"));
+        if (cmdLine.getOptionValue("format", FORMAT_CSV).equals(FORMAT_JSON)) {
+            jsonWriter = new JsonWriter(derivedParameters != null ? derivedParameters.getParameters() : Collections.emptyList());
+        }
+        if (cmdLine.hasOption("stations")) stationIds = cmdLine.getOptionValue("stations").split(",");
+        if (cmdLine.hasOption("compile")) compileFile = resolve(cmdLine.getOptionValue("compile"));
+        if (cmdLine.hasOption("archive")) archiveFile = resolve(cmdLine.getOptionValue("archive"));
+        if (cmdLine.hasOption("watch")) watchFolder = resolve(cmdLine.getOptionValue("watch"));
+        if (cmdLine.hasOption("cache")) cacheFile = resolve(cmdLine.getOptionValue("cache"));
+        if (cmdLine.hasOption("points")) pointsFile = resolve(cmdLine.getOptionValue("points"));
+        if (cmdLine.hasOption("neighbours")) neighbours = Integer.parseInt(cmdLine.getOptionValue("neighbours"));
+        heightCorrection = cmdLine.hasOption("height-correction");
+        useIndex = cmdLine.hasOption("index");
+        printMetrics = cmdLine.hasOption("metrics");
+        pipeline = cmdLine.hasOption("pipeline");
+        if (cmdLine.hasOption("threads")) threads = Integer.parseInt(cmdLine.getOptionValue("threads"));
+        if (cmdLine.hasOption("serve")) servePort = Integer.parseInt(cmdLine.getOptionValue("serve"));
+        if (cmdLine.hasOption("jobs")) jobs = Integer.parseInt(cmdLine.getOptionValue("jobs"));
+        if (cmdLine.hasOption("kml")) {
+            kmlFile = resolve(cmdLine.getOptionValue("kml"));
+            if (KmlBatch.isBatch(kmlFile)) kmlFiles = KmlBatch.resolve(kmlFile);
+        }
         if (cmdLine.hasOption("out")) outFolder = resolve(cmdLine.getOptionValue("out"));
     }
 
+    private void parseNear(String value) throws ParseException {
+        double[] near = parseCoordinates(value, 2, 3);
+        nearLocation = new double[] {near[0], near[1]};
+        if (near.length == 3) {
+            if (near[2] < 1 || near[2] != Math.rint(near[2])) throw new ParseException("Invalid number of stations " + value);
+            nearCount = (int) near[2];
+        }
+    }
+
+    private static ForecastInterpolator.Grid parseGrid(String value) throws ParseException {
+        double[] coordinates = parseCoordinates(value, 4, 5);
+        if (coordinates.length != 5) throw new ParseException("Invalid grid " + value);
+        try {
+            return new ForecastInterpolator.Grid(coordinates[0], coordinates[1], coordinates[2], coordinates[3], coordinates[4]);
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("Invalid grid " + value);
+        }
+    }
+
+    /**
+     * Parses comma delimited numbers, the first minimum count of them latitudes and longitudes alternating.
+     */
+    private static double[] parseCoordinates(String value, int minCount, int maxCount) throws ParseException {
+        String[] parts = value.split(",");
+        if (parts.length < minCount || parts.length > maxCount) throw new ParseException("Invalid coordinates " + value);
+        double[] coordinates = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                coordinates[i] = Double.parseDouble(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new ParseException("Invalid coordinates " + value);
+            }
+            double limit = i % 2 == 0 ? 90 : 180;
+            if (i < minCount && !(Math.abs(coordinates[i]) <= limit)) throw new ParseException("Invalid coordinates " + value);
+        }
+        return coordinates;
+    }
+
+    private static MosmixKmlReader.Engine parseEngine(String name) throws ParseException {
+        try {
+            return MosmixKmlReader.Engine.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("Unknown engine " + name);
+        }
+    }
+
+    /**
+     * Parses the element symbols, accepting only the elements written to the output.
+     */
+    private static String[] parseElements(String symbols) throws ParseException {
+        String[] elements = symbols.split(",");
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = elements[i].trim();
+            if (!MosmixKmlSchema.ELEMENT_SYMBOLS.contains(elements[i])) {
+                throw new ParseException("Element " + elements[i] + " is not written by the tool, supported elements are " + String.join(",", MosmixKmlSchema.ELEMENT_SYMBOLS));
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * Checks that the selected elements include the elements of all derived parameters.
+     */
+    private static void checkDerivedElements(String[] elements, DerivedParameterEngine derivedParameters) throws ParseException {
+        List<String> selected = Arrays.asList(elements);
+        for (DerivedParameter parameter : derivedParameters.getParameters()) {
+            for (String element : parameter.getElements()) {
+                if (!selected.contains(element)) throw new ParseException("Derived parameter " + parameter.getName() + " requires element " + element + " in --elements");
+            }
+        }
+    }
+
+    private static List<StandardDerivedParameter> parseDerivedParameters(String names) throws ParseException {
+        if (names.equalsIgnoreCase(ALL_DERIVED_PARAMETERS)) return Arrays.asList(StandardDerivedParameter.values());
+        List<StandardDerivedParameter> parameters = new ArrayList<>();
+        for (String name : names.split(",")) {
+            try {
+                parameters.add(StandardDerivedParameter.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                throw new ParseException("Unknown derived parameter " + name);
+            }
+        }
+        return parameters;
+    }
+
     private Path resolve(String filename) {
         Path p = Paths.get(filename);
         if (p.isAbsolute()) return p;
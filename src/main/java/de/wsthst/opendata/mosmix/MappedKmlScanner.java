@@ -0,0 +1,256 @@
+package de.wsthst.opendata.mosmix;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Zero-copy scanner of a plain MOSMIX KML file, memory-mapped by {@link FileChannel#map}. Time steps, station names,
+ * forecast elements, values and coordinates are located by matching the bytes of the tag names, values are parsed
+ * straight from the mapped bytes without decoding the file to characters.
+ * Like {@link PlacemarkSplitter} the scanner relies on the regular structure of DWD KML files, which contain no
+ * comments, CDATA sections or entity references. Files larger than the mapping window are mapped window by window,
+ * each placemark lies completely within one window.
+ */
+final class MappedKmlScanner implements Closeable {
+
+    static final long WINDOW_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final long size;
+    private final long windowSize;
+    private ByteBuffer window;
+    private long windowStart;
+    private int position;
+
+    /**
+     * Constructor.
+     *
+     * @param kmlFile The plain KML file.
+     */
+    MappedKmlScanner(Path kmlFile) throws IOException {
+        this(kmlFile, WINDOW_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param kmlFile    The plain KML file.
+     * @param windowSize The maximum number of bytes mapped at once, at most {@link Integer#MAX_VALUE}.
+     */
+    MappedKmlScanner(Path kmlFile, long windowSize) throws IOException {
+        if (windowSize < 1 || windowSize > Integer.MAX_VALUE) throw new IllegalArgumentException("Invalid window size " + windowSize);
+        this.channel = FileChannel.open(kmlFile, StandardOpenOption.READ);
+        this.windowSize = windowSize;
+        try {
+            this.size = channel.size();
+            map(0);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the forecast time steps of the document header, which has to lie within the first window.
+     */
+    List<Instant> readForecastTimes() {
+        List<Instant> forecastTimes = new ArrayList<>();
+        int limit = window.limit();
+        int tag;
+        while ((tag = indexOf(window, position, limit, '<')) >= 0) {
+            position = tag + 1;
+            if (isTag(window, tag, limit, MosmixKmlSchema.XML_TIMESTEPS_ELEMENT, true)) break;
+            if (!isTag(window, tag, limit, MosmixKmlSchema.XML_TIMESTEP_ELEMENT, false)) continue;
+            int start = indexOf(window, tag, limit, '>') + 1;
+            int end = start > 0 ? indexOf(window, start, limit, '<') : -1;
+            if (end < 0) break;
+            forecastTimes.add(Instant.parse(decode(window, start, end)));
+            position = end;
+        }
+        return forecastTimes;
+    }
+
+    /**
+     * Scans for the next station name and the end of its placemark, mapping the next window if required.
+     *
+     * @return The placemark or null at the end of the file.
+     */
+    Placemark next() throws IOException {
+        while (true) {
+            Placemark placemark = scan();
+            if (placemark != null || windowStart + window.limit() >= size) return placemark;
+            if (position == 0) throw new IOException("Placemark at offset " + windowStart + " exceeds the mapping window");
+            map(windowStart + position);
+        }
+    }
+
+    /**
+     * Returns the number of bytes scanned so far.
+     */
+    long getPosition() {
+        return windowStart + position;
+    }
+
+    private Placemark scan() {
+        ByteBuffer bytes = window;
+        int limit = bytes.limit();
+        int tag = findTag(bytes, position, limit, MosmixKmlSchema.XML_NAME_ELEMENT, false);
+        int start = tag < 0 ? -1 : indexOf(bytes, tag, limit, '>');
+        int end = start < 0 ? -1 : indexOf(bytes, ++start, limit, '<');
+        int placemarkEnd = end < 0 ? -1 : findTag(bytes, end, limit, MosmixKmlSchema.XML_PLACEMARK_ELEMENT, true);
+        if (placemarkEnd >= 0) placemarkEnd = indexOf(bytes, placemarkEnd, limit, '>');
+        if (placemarkEnd < 0) return null;
+        position = placemarkEnd + 1;
+        return new Placemark(decode(bytes, start, end), bytes, end, position);
+    }
+
+    private void map(long start) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, size - start));
+        windowStart = start;
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Returns the position of the next start or end tag with the given local name in the range, or -1.
+     */
+    private static int findTag(ByteBuffer bytes, int from, int to, String localName, boolean endTag) {
+        int tag = from;
+        while ((tag = indexOf(bytes, tag, to, '<')) >= 0 && !isTag(bytes, tag, to, localName, endTag)) tag++;
+        return tag;
+    }
+
+    /**
+     * Returns whether a start or end tag with the given local name and any namespace prefix begins at the position.
+     */
+    private static boolean isTag(ByteBuffer bytes, int tag, int to, String localName, boolean endTag) {
+        int i = tag + 1;
+        if (endTag) {
+            if (i >= to || bytes.get(i) != '/') return false;
+            i++;
+        }
+        int nameStart = i;
+        for (; i < to && !isNameEnd(bytes.get(i)); i++) {
+            if (bytes.get(i) == ':') nameStart = i + 1;
+        }
+        if (i == to || i - nameStart != localName.length()) return false;
+        for (int j = 0; j < localName.length(); j++) {
+            if (bytes.get(nameStart + j) != localName.charAt(j)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isNameEnd(byte b) {
+        return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private static int indexOf(ByteBuffer bytes, int from, int to, char b) {
+        for (int i = from; i < to; i++) {
+            if (bytes.get(i) == b) return i;
+        }
+        return -1;
+    }
+
+    private static String decode(ByteBuffer bytes, int start, int end) {
+        byte[] text = new byte[end - start];
+        bytes.get(start, text);
+        return new String(text, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * A placemark within the mapped bytes, read forward from its station name. A placemark is read by a single thread,
+     * different placemarks of a window may be read in parallel.
+     */
+    static final class Placemark {
+
+        private final String stationId;
+        private final ByteBuffer bytes;
+        private final int end;
+        private int position;
+
+        private Placemark(String stationId, ByteBuffer bytes, int start, int end) {
+            this.stationId = stationId;
+            this.bytes = bytes;
+            this.position = start;
+            this.end = end;
+        }
+
+        String getStationId() {
+            return stationId;
+        }
+
+        /**
+         * Moves to the next forecast element of the placemark.
+         *
+         * @return The element name or null after the last forecast element.
+         */
+        String nextForecastElement() throws IOException {
+            int tag;
+            while ((tag = indexOf(bytes, position, end, '<')) >= 0) {
+                position = tag + 1;
+                if (isTag(bytes, tag, end, MosmixKmlSchema.XML_EXTENDED_DATA_ELEMENT, true)) return null;
+                if (isTag(bytes, tag, end, MosmixKmlSchema.XML_FORECAST_ELEMENT, false)) return readFirstAttributeValue(tag);
+            }
+            position = end;
+            return null;
+        }
+
+        /**
+         * Tokenizes the values of the current forecast element.
+         */
+        void readValues(ValueTokenizer tokenizer, double[] values) throws IOException {
+            int start = contentOf(MosmixKmlSchema.XML_VALUE_ELEMENT);
+            tokenizer.reset(values);
+            tokenizer.feed(bytes, start, position);
+            tokenizer.finish();
+        }
+
+        /**
+         * Reads the coordinates of the placemark.
+         *
+         * @return Longitude, latitude and height.
+         */
+        double[] readCoordinates() throws IOException {
+            int start = contentOf(MosmixKmlSchema.XML_COORDINATES_ELEMENT);
+            String[] coordinates = decode(bytes, start, position).trim().split(MosmixKmlSchema.COORDINATES_DELIMTER);
+            return new double[] {Double.parseDouble(coordinates[0]), Double.parseDouble(coordinates[1]), Double.parseDouble(coordinates[2])};
+        }
+
+        /**
+         * Finds the text content of the next element with the given local name and moves to its end.
+         *
+         * @return The start of the content.
+         */
+        private int contentOf(String localName) throws IOException {
+            int tag = findTag(bytes, position, end, localName, false);
+            int start = tag < 0 ? -1 : indexOf(bytes, tag, end, '>');
+            int contentEnd = start < 0 ? -1 : indexOf(bytes, ++start, end, '<');
+            if (contentEnd < 0) throw new IOException("Missing element " + localName + " in placemark of station " + stationId);
+            position = contentEnd;
+            return start;
+        }
+
+        private String readFirstAttributeValue(int tag) throws IOException {
+            int tagEnd = indexOf(bytes, tag, end, '>');
+            int start = tagEnd < 0 ? 0 : indexOf(bytes, tag, tagEnd, '=') + 1;
+            while (start > 0 && start < tagEnd && Character.isWhitespace((char) (bytes.get(start) & 0xff))) start++;
+            int valueEnd = start > 0 && start < tagEnd ? indexOf(bytes, start + 1, tagEnd, (char) bytes.get(start)) : -1;
+            if (valueEnd < 0) throw new IOException("Missing element name of forecast in placemark of station " + stationId);
+            position = valueEnd + 1;
+            return decode(bytes, start + 1, valueEnd);
+        }
+    }
+
+}
@@ -1,39 +1,41 @@
 package de.wsthst.opendata.mosmix;
 
-import com.google.common.collect.EvictingQueue;
 import org.apache.commons.math3.util.Precision;
 
-import java.util.Queue;
-
 import static java.lang.Double.NaN;
-import static java.util.Comparator.naturalOrder;
 
 /**
  * Encapsulates the functionality for calculating derived meteorological values
  * for a single forecast time.
  * Note that a calulcated meteo is returned only if all values for all time steps are
  * existing and are not NaN. If a value for one time step is missing then NaN will be returned.
+ * <p>
+ * Values are kept in primitive ring buffers of at most 24 values. Sums are recalculated over the buffer on access
+ * with the compensated summation of {@link java.util.stream.DoubleStream#sum()}, so they are bit-identical to summing
+ * the values of the window as a stream. This is O(window) per step instead of a running sum, which would differ in the
+ * last bits and could round RR24 or TM differently: about 16 µs for the 24 hour sums of the 240 steps of a station, see
+ * {@code MeteoCalculatorBenchmark.windowSums24}. The static methods calculate the same values for a complete time series.
  */
 final class MeteoCalculator {
-  private final Queue<Integer> ww3Queue;
-  private final Queue<Double> rr3Queue;
-  private final Queue<Double> rr12Queue;
-  private final Queue<Double> rr24Queue;
-  private final Queue<Double> sund3Queue;
-  private final Queue<Double> sund24Queue;
-  private final Queue<Double> ttt24Queue;
+  private final WindowMaximum ww3Window;
+  private final WindowSum rr3Window;
+  private final WindowSum rr12Window;
+  private final WindowSum rr24Window;
+  private final WindowSum sund3Window;
+  private final WindowSum sund24Window;
+  private final WindowSum ttt24Window;
 
   /**
    * Constructor.
    */
   public MeteoCalculator() {
-    ww3Queue = EvictingQueue.create(3);
-    rr3Queue = EvictingQueue.create(3);
-    rr12Queue = EvictingQueue.create(12);
-    rr24Queue = EvictingQueue.create(24);
-    sund3Queue = EvictingQueue.create(3);
-    sund24Queue = EvictingQueue.create(24);
-    ttt24Queue = EvictingQueue.create(24);
+    ww3Window = new WindowMaximum(3);
+    rr3Window = new WindowSum(3);
+    rr12Window = new WindowSum(12);
+    rr24Window = new WindowSum(24);
+    sund3Window = new WindowSum(3);
+    sund24Window = new WindowSum(24);
+    ttt24Window = new WindowSum(24);
   }
 
   /**
@@ -42,7 +44,7 @@ final class MeteoCalculator {
    * @param ww The key number of the current significant weather to add.
    */
   public void addWW(int ww) {
-    ww3Queue.offer(ww);
+    ww3Window.add(ww);
   }
 
   /**
@@ -51,9 +53,9 @@ final class MeteoCalculator {
    * @param rr1 The current precipitation amount in millimetres.
    */
   public void addRR1(double rr1) {
-    rr3Queue.offer(rr1);
-    rr12Queue.offer(rr1);
-    rr24Queue.offer(rr1);
+    rr3Window.add(rr1);
+    rr12Window.add(rr1);
+    rr24Window.add(rr1);
   }
 
   /**
@@ -62,8 +64,8 @@ final class MeteoCalculator {
    * @param sund1 The current sunshine duration in seconds.
    */
   public void addSUND1(double sund1) {
-    sund3Queue.offer(sund1);
-    sund24Queue.offer(sund1);
+    sund3Window.add(sund1);
+    sund24Window.add(sund1);
   }
 
   /**
@@ -72,7 +74,7 @@ final class MeteoCalculator {
    * @param ttt The current temperature air in Kelvin.
    */
   public void addTTT(double ttt) {
-    ttt24Queue.offer(ttt);
+    ttt24Window.add(ttt);
   }
 
   /**
@@ -81,8 +83,7 @@ final class MeteoCalculator {
    * @return The current WW3 or 0 if less values.
    */
   public int getWW3() {
-    if (ww3Queue.size() < 3) return 0;
-    return ww3Queue.stream().max(naturalOrder()).get();
+    return ww3Window.get();
   }
 
   /**
@@ -91,8 +92,7 @@ final class MeteoCalculator {
    * @return 3-hours precipitation in millimetres.
    */
   public double getRR3() {
-    if (rr3Queue.size() < 3) return NaN;
-    return rr3Queue.stream().mapToDouble(Double::doubleValue).sum();
+    return rr3Window.get();
   }
 
   /**
@@ -101,8 +101,7 @@ final class MeteoCalculator {
    * @return 12-hours precipitation in millimetres.
    */
   public double getRR12() {
-    if (rr12Queue.size() < 12) return NaN;
-    return rr12Queue.stream().mapToDouble(Double::doubleValue).sum();
+    return rr12Window.get();
   }
 
   /**
@@ -111,8 +110,7 @@ final class MeteoCalculator {
    * @return 24-hours precipitation in millimetres.
    */
   public double getRR24() {
-    if (rr24Queue.size() < 24) return NaN;
-    return rr24Queue.stream().mapToDouble(Double::doubleValue).sum();
+    return rr24Window.get();
   }
 
   /**
@@ -121,8 +119,7 @@ final class MeteoCalculator {
    * @return 3-hours sunshine duration in seconds.
    */
   public double getSUND3() {
-    if (sund3Queue.size() < 3) return NaN;
-    return sund3Queue.stream().mapToDouble(Double::doubleValue).sum();
+    return sund3Window.get();
   }
 
   /**
@@ -131,8 +128,7 @@ final class MeteoCalculator {
    * @return 24-hours sunshine duration in seconds.
    */
   public double getSUND24() {
-    if (sund24Queue.size() < 24) return NaN;
-    return sund24Queue.stream().mapToDouble(Double::doubleValue).sum();
+    return sund24Window.get();
   }
 
   /**
@@ -141,10 +137,186 @@ final class MeteoCalculator {
    * @return The temperature air daily mean of the last 24 hours in Kelvin.
    */
   public double getTM() {
-    if (ttt24Queue.size() < 24) return NaN;
-    double tm = ttt24Queue.stream().mapToDouble(Double::doubleValue).average().getAsDouble();
-    tm = Precision.round(tm, 2);
-    return tm;
+    return mean(ttt24Window.get(), 24);
+  }
+
+  /**
+   * Returns the sums over a sliding window for a complete time series, e.g. RR3, RR12 and RR24 from RR1 or
+   * SUND3 and SUND24 from SUND1.
+   *
+   * @param values The hourly time series.
+   * @param hours  The window size.
+   * @return The sum of the last hours for each time step, NaN for the first hours - 1 steps.
+   */
+  public static double[] sums(double[] values, int hours) {
+    WindowSum window = new WindowSum(hours);
+    double[] sums = new double[values.length];
+    for (int step = 0; step < values.length; step++) {
+      window.add(values[step]);
+      sums[step] = window.get();
+    }
+    return sums;
   }
 
+  /**
+   * Returns the temperature air daily means for a complete time series, see {@link #getTM()}.
+   *
+   * @param ttt The hourly temperature air in Kelvin.
+   * @return The daily mean of the last 24 hours for each time step.
+   */
+  public static double[] dailyMeans(double[] ttt) {
+    double[] means = sums(ttt, 24);
+    for (int step = 0; step < means.length; step++) {
+      means[step] = mean(means[step], 24);
+    }
+    return means;
+  }
+
+  /**
+   * Returns the maximum significant weather over 3 hours for a complete time series, see {@link #getWW3()}.
+   *
+   * @param ww The hourly significant weather.
+   * @return The WW3 for each time step.
+   */
+  public static int[] maximums3(int[] ww) {
+    WindowMaximum window = new WindowMaximum(3);
+    int[] ww3 = new int[ww.length];
+    for (int step = 0; step < ww.length; step++) {
+      window.add(ww[step]);
+      ww3[step] = window.get();
+    }
+    return ww3;
+  }
+
+  /**
+   * Returns the maximums over a sliding window for a complete time series.
+   *
+   * @param values The hourly time series.
+   * @param hours  The window size.
+   * @return The maximum of the last hours for each time step, NaN if less values or one of them is NaN.
+   */
+  public static double[] maximums(double[] values, int hours) {
+    return extremes(values, hours, 1);
+  }
+
+  /**
+   * Returns the minimums over a sliding window for a complete time series.
+   *
+   * @param values The hourly time series.
+   * @param hours  The window size.
+   * @return The minimum of the last hours for each time step, NaN if less values or one of them is NaN.
+   */
+  public static double[] minimums(double[] values, int hours) {
+    return extremes(values, hours, -1);
+  }
+
+  /**
+   * Sliding window extremes using a monotonic deque of steps, the sign selects maximum or minimum.
+   */
+  private static double[] extremes(double[] values, int hours, int sign) {
+    double[] extremes = new double[values.length];
+    int[] deque = new int[values.length];
+    int head = 0;
+    int tail = 0;
+    int lastNaN = -hours;
+    for (int step = 0; step < values.length; step++) {
+      double value = values[step];
+      if (Double.isNaN(value)) {
+        lastNaN = step;
+      } else {
+        while (tail > head && sign * values[deque[tail - 1]] <= sign * value) tail--;
+        deque[tail++] = step;
+      }
+      while (tail > head && deque[head] <= step - hours) head++;
+      extremes[step] = step < hours - 1 || lastNaN > step - hours ? NaN : values[deque[head]];
+    }
+    return extremes;
+  }
+
+  private static double mean(double sum, int count) {
+    if (Double.isNaN(sum)) return NaN;
+    return Precision.round(sum / count, 2);
+  }
+
+  /**
+   * Sum of the last values in a ring buffer, summed from the oldest to the newest value like
+   * {@link java.util.stream.DoubleStream#sum()}: Kahan compensated, falling back to the simple sum for infinite values.
+   * The sum is recalculated over the whole buffer on each access to stay bit-identical to the stream sum.
+   */
+  private static final class WindowSum {
+    private final double[] values;
+    private int next;
+    private int size;
+
+    WindowSum(int capacity) {
+      values = new double[capacity];
+    }
+
+    void add(double value) {
+      values[next] = value;
+      next = (next + 1) % values.length;
+      if (size < values.length) size++;
+    }
+
+    /**
+     * Returns the sum or NaN if the window is not filled or contains NaN.
+     */
+    double get() {
+      if (size < values.length) return NaN;
+      double sum = 0;
+      double compensation = 0;
+      double simpleSum = 0;
+      for (int i = 0; i < values.length; i++) {
+        double value = values[(next + i) % values.length];
+        double corrected = value - compensation;
+        double total = sum + corrected;
+        compensation = (total - sum) - corrected;
+        sum = total;
+        simpleSum += value;
+      }
+      double result = sum - compensation;
+      return Double.isNaN(result) && Double.isInfinite(simpleSum) ? simpleSum : result;
+    }
+  }
+
+  /**
+   * Maximum of the last values, kept in a monotonic decreasing deque of positions.
+   */
+  private static final class WindowMaximum {
+    private final int capacity;
+    private final int[] values;
+    private final long[] positions;
+    private int head;
+    private int length;
+    private long position;
+
+    WindowMaximum(int capacity) {
+      this.capacity = capacity;
+      values = new int[capacity];
+      positions = new long[capacity];
+    }
+
+    void add(int value) {
+      if (length > 0 && positions[head] <= position - capacity) {
+        head = (head + 1) % capacity;
+        length--;
+      }
+      while (length > 0 && values[(head + length - 1) % capacity] <= value) {
+        length--;
+      }
+      int tail = (head + length) % capacity;
+      values[tail] = value;
+      positions[tail] = position;
+      length++;
+      position++;
+    }
+
+    /**
+     * Returns the maximum or 0 if the window is not filled.
+     */
+    int get() {
+      if (position < capacity) return 0;
+      return values[head];
+    }
+  }
 }
@@ -0,0 +1,143 @@
+package de.wsthst.opendata.mosmix;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Memory mapped binary model run cache, written by {@link ModelRunCacheWriter}.
+ * Returns the forecast of any station without parsing XML, identical to the forecast read by {@link MosmixKmlReader}.
+ * <p>
+ * File layout, all numbers big endian:
+ * <ul>
+ * <li>Header: magic, version, column count, step count, station count, model run time, data and directory offset</li>
+ * <li>Column names, forecast times</li>
+ * <li>Data: one block per station holding a fixed-stride double column per {@link ForecastColumn}</li>
+ * <li>Directory: station ID, latitude, longitude and height per station in block order</li>
+ * </ul>
+ */
+public final class ModelRunCache implements Closeable {
+
+    static final byte[] MAGIC = "MOSMIXRC".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 48;
+    static final int COLUMN_COUNT_POSITION = 12;
+    static final int STEP_COUNT_POSITION = 16;
+    static final int STATION_COUNT_POSITION = 20;
+    static final int MODEL_RUN_TIME_POSITION = 24;
+    static final int DATA_OFFSET_POSITION = 32;
+    static final int DIRECTORY_OFFSET_POSITION = 40;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer data;
+    private final Instant modelRunTime;
+    private final List<Instant> forecastTimes;
+    private final ForecastColumn[] columns;
+    private final int dataOffset;
+    private final int stationBlockSize;
+    private final Map<String, Integer> stationIndex = new LinkedHashMap<>();
+    private final double[] stationCoordinates;
+
+    private ModelRunCache(FileChannel channel) throws IOException {
+        this.channel = channel;
+        if (channel.size() > Integer.MAX_VALUE) throw new IOException("Model run cache exceeds 2 GB");
+        data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+        byte[] magic = new byte[MAGIC.length];
+        data.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC) || data.getInt(MAGIC.length) != VERSION) throw new IOException("No model run cache version " + VERSION);
+        int columnCount = data.getInt(COLUMN_COUNT_POSITION);
+        int stepCount = data.getInt(STEP_COUNT_POSITION);
+        int stationCount = data.getInt(STATION_COUNT_POSITION);
+        modelRunTime = Instant.ofEpochMilli(data.getLong(MODEL_RUN_TIME_POSITION));
+        dataOffset = (int) data.getLong(DATA_OFFSET_POSITION);
+        int directoryOffset = (int) data.getLong(DIRECTORY_OFFSET_POSITION);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes(HEADER_SIZE, dataOffset)));
+        columns = new ForecastColumn[columnCount];
+        for (int i = 0; i < columnCount; i++) columns[i] = ForecastColumn.valueOf(in.readUTF());
+        List<Instant> times = new ArrayList<>(stepCount);
+        for (int i = 0; i < stepCount; i++) times.add(Instant.ofEpochMilli(in.readLong()));
+        forecastTimes = Collections.unmodifiableList(times);
+        stationBlockSize = columnCount * stepCount * Double.BYTES;
+
+        in = new DataInputStream(new ByteArrayInputStream(bytes(directoryOffset, (int) channel.size())));
+        stationCoordinates = new double[stationCount * 3];
+        for (int i = 0; i < stationCount; i++) {
+            stationIndex.put(in.readUTF(), i);
+            stationCoordinates[i * 3] = in.readDouble();
+            stationCoordinates[i * 3 + 1] = in.readDouble();
+            stationCoordinates[i * 3 + 2] = in.readDouble();
+        }
+    }
+
+    /**
+     * Opens a model run cache file.
+     *
+     * @param file The cache file.
+     * @return The opened cache.
+     */
+    public static ModelRunCache open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new ModelRunCache(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Instant getModelRunTime() {
+        return modelRunTime;
+    }
+
+    /**
+     * Returns all station IDs in the order of the KML file.
+     */
+    public Set<String> getStationIds() {
+        return Collections.unmodifiableSet(stationIndex.keySet());
+    }
+
+    /**
+     * Returns the forecast of a station.
+     *
+     * @param stationId The station ID.
+     * @return The forecast or null if the station is not contained.
+     */
+    public PointTimeForecast get(String stationId) {
+        Integer index = stationIndex.get(stationId);
+        if (index == null) return null;
+
+        List<Forecast> forecasts = new ArrayList<>(forecastTimes.size());
+        forecastTimes.forEach(forecastTime -> forecasts.add(new Forecast(forecastTime)));
+        int blockOffset = dataOffset + index * stationBlockSize;
+        for (int column = 0; column < columns.length; column++) {
+            int columnOffset = blockOffset + column * forecastTimes.size() * Double.BYTES;
+            for (int step = 0; step < forecasts.size(); step++) {
+                columns[column].set(forecasts.get(step), data.getDouble(columnOffset + step * Double.BYTES));
+            }
+        }
+        return new PointTimeForecast(stationId,
+            stationCoordinates[index * 3], stationCoordinates[index * 3 + 1], stationCoordinates[index * 3 + 2],
+            modelRunTime, forecasts);
+    }
+
+    private byte[] bytes(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        data.get(from, bytes);
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
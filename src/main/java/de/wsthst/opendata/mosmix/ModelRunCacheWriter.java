@@ -0,0 +1,132 @@
+package de.wsthst.opendata.mosmix;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Writes the stations of a model run into a binary {@link ModelRunCache} file.
+ * Stations are written as they are passed in, so only a single station is held in memory. The file becomes valid by
+ * {@link #commit()}, closing without commit deletes it.
+ */
+public final class ModelRunCacheWriter implements Consumer<PointTimeForecast>, Closeable {
+
+    private static final ForecastColumn[] COLUMNS = ForecastColumn.values();
+
+    private final Path file;
+    private final FileChannel channel;
+    private final ByteArrayOutputStream directoryBytes = new ByteArrayOutputStream();
+    private final DataOutputStream directory = new DataOutputStream(directoryBytes);
+    private Instant modelRunTime;
+    private List<Instant> forecastTimes;
+    private ByteBuffer block;
+    private long dataOffset;
+    private int stationCount;
+    private boolean committed;
+
+    /**
+     * Constructor.
+     *
+     * @param file The cache file to write, an existing file is replaced.
+     */
+    public ModelRunCacheWriter(Path file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Writes a station. All stations must share the same model run and forecast times.
+     */
+    @Override
+    public void accept(PointTimeForecast ptfc) {
+        if (committed) throw new IllegalStateException("Model run " + modelRunTime + " is already committed");
+        try {
+            if (forecastTimes == null) writeHeader(ptfc);
+            List<Forecast> forecasts = new ArrayList<>();
+            ptfc.forEach(forecasts::add);
+            if (!ptfc.getModelRunTime().equals(modelRunTime) || forecasts.size() != forecastTimes.size()) {
+                throw new IllegalArgumentException("Station " + ptfc.getStationId() + " does not belong to model run " + modelRunTime);
+            }
+
+            block.clear();
+            for (ForecastColumn column : COLUMNS) {
+                for (Forecast fc : forecasts) block.putDouble(column.get(fc));
+            }
+            block.flip();
+            while (block.hasRemaining()) channel.write(block);
+
+            directory.writeUTF(ptfc.getStationId());
+            directory.writeDouble(ptfc.getStationLatitude(MosmixKmlSchema.STATION_COORDINATES_UNIT));
+            directory.writeDouble(ptfc.getStationLongitude(MosmixKmlSchema.STATION_COORDINATES_UNIT));
+            directory.writeDouble(ptfc.getStationHeight(MosmixKmlSchema.STATION_HEIGHT_UNIT));
+            stationCount++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeHeader(PointTimeForecast ptfc) throws IOException {
+        modelRunTime = ptfc.getModelRunTime();
+        forecastTimes = new ArrayList<>();
+        ptfc.forEach(fc -> forecastTimes.add(fc.getForecastTime()));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(new byte[ModelRunCache.HEADER_SIZE]);
+        for (ForecastColumn column : COLUMNS) out.writeUTF(column.name());
+        for (Instant forecastTime : forecastTimes) out.writeLong(forecastTime.toEpochMilli());
+        while (out.size() % Double.BYTES != 0) out.write(0);
+        dataOffset = out.size();
+        channel.write(ByteBuffer.wrap(bytes.toByteArray()));
+
+        block = ByteBuffer.allocate(COLUMNS.length * forecastTimes.size() * Double.BYTES);
+    }
+
+    /**
+     * Writes the station directory and completes the header, after all stations have been written.
+     */
+    public void commit() throws IOException {
+        if (committed) return;
+        if (forecastTimes == null) {
+            forecastTimes = new ArrayList<>();
+            modelRunTime = Instant.EPOCH;
+            dataOffset = ModelRunCache.HEADER_SIZE;
+            channel.write(ByteBuffer.allocate(ModelRunCache.HEADER_SIZE));
+        }
+        long directoryOffset = channel.position();
+        channel.write(ByteBuffer.wrap(directoryBytes.toByteArray()));
+
+        ByteBuffer header = ByteBuffer.allocate(ModelRunCache.HEADER_SIZE)
+            .put(ModelRunCache.MAGIC)
+            .putInt(ModelRunCache.VERSION)
+            .putInt(COLUMNS.length)
+            .putInt(forecastTimes.size())
+            .putInt(stationCount)
+            .putLong(modelRunTime.toEpochMilli())
+            .putLong(dataOffset)
+            .putLong(directoryOffset);
+        header.flip();
+        channel.write(header, 0);
+        committed = true;
+    }
+
+    /**
+     * Closes the file, which is deleted if not committed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        if (!committed) Files.deleteIfExists(file);
+    }
+}
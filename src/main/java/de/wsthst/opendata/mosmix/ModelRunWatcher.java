@@ -0,0 +1,159 @@
+package de.wsthst.opendata.mosmix;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Watches a drop directory for MOSMIX KML and KMZ files and reports each file once it is completely written.
+ * A file counts as complete when its size and modification time have not changed for {@link #STABLE_MILLIS}.
+ * Only files named like model runs, see {@link MosmixKmlInput#parseModelRunTime(String)}, are reported.
+ * Of the files already present on start only the latest model run is reported.
+ */
+final class ModelRunWatcher implements Closeable {
+
+    static final long STABLE_MILLIS = 1000;
+
+    private final Path directory;
+    private final Consumer<Path> listener;
+    private final WatchService watchService;
+    private final Map<Path, Observation> pending = new LinkedHashMap<>();
+    private final Thread thread;
+
+    /**
+     * Constructor, starts watching in a background thread.
+     *
+     * @param directory The drop directory.
+     * @param listener  Called in the background thread for every completed file, which is not watching until it returns.
+     */
+    ModelRunWatcher(Path directory, Consumer<Path> listener) throws IOException {
+        this.directory = directory;
+        this.listener = listener;
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        Path latest = null;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (isModelRun(file) && (latest == null || modelRunTime(file).isAfter(modelRunTime(latest)))) latest = file;
+            }
+        }
+        if (latest != null) pending.put(latest, null);
+        thread = new Thread(this::watch, "model-run-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns true if the file is a KML or KMZ file named like a model run.
+     */
+    static boolean isModelRun(Path file) {
+        String fileName = file.getFileName().toString();
+        if (!StringUtils.endsWithIgnoreCase(fileName, MosmixKmlInput.KML_EXTENSION) && !MosmixKmlInput.isKmz(file)) return false;
+        try {
+            MosmixKmlInput.parseModelRunTime(fileName);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static Instant modelRunTime(Path file) {
+        return MosmixKmlInput.parseModelRunTime(file.getFileName().toString());
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.poll(STABLE_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.context() instanceof Path name && isModelRun(name)) pending.put(directory.resolve(name), null);
+                    }
+                    key.reset();
+                }
+                reportCompleted();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    private void reportCompleted() {
+        List<Path> completed = new ArrayList<>();
+        for (Iterator<Map.Entry<Path, Observation>> entries = pending.entrySet().iterator(); entries.hasNext(); ) {
+            Map.Entry<Path, Observation> entry = entries.next();
+            Observation observation = Observation.of(entry.getKey());
+            if (observation == null) {
+                entries.remove();
+            } else if (observation.equals(entry.getValue()) && System.currentTimeMillis() - observation.lastModified >= STABLE_MILLIS) {
+                entries.remove();
+                completed.add(entry.getKey());
+            } else {
+                entry.setValue(observation);
+            }
+        }
+        completed.sort(Comparator.comparing(ModelRunWatcher::modelRunTime));
+        completed.forEach(listener);
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        watchService.close();
+    }
+
+    /**
+     * Size and modification time of a file.
+     */
+    private static final class Observation {
+
+        private final long size;
+        private final long lastModified;
+
+        private Observation(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Returns the current observation or null if the file does not exist anymore.
+         */
+        static Observation of(Path file) {
+            try {
+                return new Observation(Files.size(file), Files.getLastModifiedTime(file).toMillis());
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Observation observation && size == observation.size && lastModified == observation.lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(size) * 31 + Long.hashCode(lastModified);
+        }
+    }
+}
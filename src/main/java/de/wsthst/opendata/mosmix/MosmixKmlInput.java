@@ -0,0 +1,127 @@
+package de.wsthst.opendata.mosmix;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static java.time.ZoneOffset.UTC;
+
+/**
+ * Opened MOSMIX model run file, either plain KML or a zipped KMZ archive.
+ * The KML content of a KMZ archive is inflated on the fly, no temporary file is written.
+ * Optionally the content is read ahead on a separate thread, see {@link ReadAheadInputStream}.
+ */
+final class MosmixKmlInput implements Closeable {
+
+    static final String KML_EXTENSION = ".kml";
+    static final String KMZ_EXTENSION = ".kmz";
+
+    private final InputStream stream;
+    private final Instant modelRunTime;
+
+    private MosmixKmlInput(InputStream stream, Instant modelRunTime) {
+        this.stream = stream;
+        this.modelRunTime = modelRunTime;
+    }
+
+    /**
+     * Opens a KML or KMZ file. For KMZ archives the model run time is taken from the name of the contained KML entry.
+     *
+     * @param file The KML or KMZ file.
+     * @return The opened input.
+     */
+    static MosmixKmlInput open(Path file) throws IOException {
+        return open(file, false);
+    }
+
+    /**
+     * Opens a KML or KMZ file, see {@link #open(Path)}.
+     *
+     * @param file      The KML or KMZ file.
+     * @param readAhead Whether to read or inflate the content ahead on a separate thread.
+     * @return The opened input.
+     */
+    static MosmixKmlInput open(Path file, boolean readAhead) throws IOException {
+        MosmixKmlInput input = openDirect(file);
+        return readAhead ? new MosmixKmlInput(new ReadAheadInputStream(input.stream), input.modelRunTime) : input;
+    }
+
+    private static MosmixKmlInput openDirect(Path file) throws IOException {
+        InputStream stream = new BufferedInputStream(Files.newInputStream(file));
+        try {
+            if (!isKmz(file)) {
+                return new MosmixKmlInput(stream, parseModelRunTime(file.getFileName().toString()));
+            }
+
+            ZipInputStream zipStream = new ZipInputStream(stream);
+            stream = zipStream;
+            ZipEntry entry;
+            while ((entry = zipStream.getNextEntry()) != null) {
+                if (!entry.isDirectory() && StringUtils.endsWithIgnoreCase(entry.getName(), KML_EXTENSION)) {
+                    return new MosmixKmlInput(new BufferedInputStream(zipStream), parseModelRunTime(entry.getName()));
+                }
+            }
+            throw new IOException("No KML entry found in " + file);
+        } catch (IOException | RuntimeException e) {
+            stream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the model run time of a KML or KMZ file, for KMZ archives taken from the name of the contained KML entry.
+     */
+    static Instant readModelRunTime(Path file) throws IOException {
+        try (MosmixKmlInput input = openDirect(file)) {
+            return input.getModelRunTime();
+        }
+    }
+
+    /**
+     * Returns true if the file is a zipped KMZ archive.
+     */
+    static boolean isKmz(Path file) {
+        return StringUtils.endsWithIgnoreCase(file.getFileName().toString(), KMZ_EXTENSION);
+    }
+
+    /**
+     * Parses the model run time from an underscore delimited file name. The model run time yyyyMMddHH has to be at third position.
+     *
+     * @param fileName The file name, may include a path.
+     * @return The model run time.
+     */
+    static Instant parseModelRunTime(String fileName) {
+        String modelrunTimeString = fileName;
+        if (modelrunTimeString.contains(File.separator)) modelrunTimeString = StringUtils.substringAfterLast(modelrunTimeString, File.separator);
+        if (modelrunTimeString.contains("/")) modelrunTimeString = StringUtils.substringAfterLast(modelrunTimeString, "/");
+        modelrunTimeString = StringUtils.split(modelrunTimeString, '_')[2];
+        return LocalDateTime.parse(modelrunTimeString, DateTimeFormatter.ofPattern("yyyyMMddHH")).atZone(UTC).toInstant();
+    }
+
+    /**
+     * Returns the KML content.
+     */
+    InputStream getStream() {
+        return stream;
+    }
+
+    Instant getModelRunTime() {
+        return modelRunTime;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+}
@@ -1,39 +1,173 @@
 package de.wsthst.opendata.mosmix;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ListMultimap;
-import tec.uom.se.quantity.Quantities;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.CountingInputStream;
 
-import javax.measure.Quantity;
-import javax.measure.quantity.Angle;
-import javax.measure.quantity.Length;
+import javax.measure.Unit;
 import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.util.*;
-
-import static tec.units.ri.unit.MetricPrefix.MILLI;
-import static tec.units.ri.unit.Units.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
  * Responsible for parsing a MOSMIX KML file and extracting the given stations as value objects.
  */
 public final class MosmixKmlReader {
 
+    /**
+     * Engines parsing the KML.
+     */
+    public enum Engine {
+        /**
+         * StAX parser for KML and KMZ files and streams.
+         */
+        STAX,
+        /**
+         * Zero-copy byte scanner over the memory-mapped file, see {@link MappedKmlScanner}. Applies to plain KML files
+         * only, KMZ files and streams are parsed by StAX.
+         */
+        MAPPED
+    }
+
+    /**
+     * Symbol selecting all elements of the KML file, see {@link Forecast#get(String, Unit)}.
+     */
+    public static final String ALL_ELEMENTS = "all";
+
+    private static final int MAX_PENDING_PLACEMARKS_PER_THREAD = 4;
+
     private final XMLInputFactory xmlFactory;
+    private final Set<String> elements;
+    private final boolean allElements;
+    private final int threads;
+    private final Engine engine;
+    private final ValueTokenizer tokenizer = new ValueTokenizer();
+    private final Map<String, double[]> dataForElements = new HashMap<>();
+    private final List<ElementRegistry.Element> stationElements = new ArrayList<>();
     private XMLStreamReader parser;
+    private Set<String> missingStationIds = Collections.emptySet();
+    private boolean allStations;
+    private boolean readAhead;
+    private PipelineMetrics metrics = new PipelineMetrics();
+    private PipelineMetrics readMetrics = new PipelineMetrics();
+    private PipelineEvents.PlacemarkScan scan;
+    private long scanStart;
 
     /**
-     * Constructor.
+     * Constructor. Reads all supported elements.
      */
     public MosmixKmlReader() {
-        xmlFactory = XMLInputFactory.newFactory();
+        this(MosmixKmlSchema.ELEMENT_SYMBOLS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param elements Symbols of the elements to read, e.g. TTT or RR1c, or {@link #ALL_ELEMENTS}. Values of all other
+     *                 elements are skipped and remain NaN, derived values are only calculated if their input element
+     *                 is read.
+     */
+    public MosmixKmlReader(Collection<String> elements) {
+        this(elements, 1);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param elements Symbols of the elements to read, see {@link #MosmixKmlReader(Collection)}.
+     * @param threads  Number of threads parsing placemarks in parallel, 1 for parsing sequentially.
+     */
+    public MosmixKmlReader(Collection<String> elements, int threads) {
+        this(elements, threads, Engine.STAX);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param elements Symbols of the elements to read, see {@link #MosmixKmlReader(Collection)}.
+     * @param threads  Number of threads parsing placemarks in parallel, 1 for parsing sequentially.
+     * @param engine   The engine parsing plain KML files. Results are identical for all engines.
+     */
+    public MosmixKmlReader(Collection<String> elements, int threads, Engine engine) {
+        this(XMLInputFactory.newFactory(), elements, threads, engine);
+    }
+
+    private MosmixKmlReader(XMLInputFactory xmlFactory, Collection<String> elements, int threads, Engine engine) {
+        if (threads < 1) throw new IllegalArgumentException("Number of threads must be at least 1: " + threads);
+        this.xmlFactory = xmlFactory;
+        this.elements = ImmutableSet.copyOf(elements);
+        this.allElements = this.elements.contains(ALL_ELEMENTS);
+        this.threads = threads;
+        this.engine = engine;
+    }
+
+    /**
+     * Reads a KML or KMZ file and extracts the given stations. The model run time is parsed from the file name,
+     * for KMZ archives from the name of the contained KML entry.
+     *
+     * @param kmlFile          The KML or KMZ file.
+     * @param stationIdsToRead Station IDs to extract.
+     * @return Collection with extracted forecasts.
+     */
+    public List<PointTimeForecast> read(Path kmlFile, String... stationIdsToRead) throws IOException, XMLStreamException {
+        List<PointTimeForecast> ptfcs = new ArrayList<>();
+        read(kmlFile, ptfcs::add, stationIdsToRead);
+        return ptfcs;
+    }
+
+    /**
+     * Reads a KML or KMZ file and passes each of the given stations to the consumer as soon as it has been extracted.
+     *
+     * @param kmlFile          The KML or KMZ file.
+     * @param consumer         Consumer for the extracted forecasts, called in file order.
+     * @param stationIdsToRead Station IDs to extract.
+     */
+    public void read(Path kmlFile, Consumer<PointTimeForecast> consumer, String... stationIdsToRead) throws IOException, XMLStreamException {
+        if (isMapped(kmlFile)) {
+            allStations = false;
+            missingStationIds = new LinkedHashSet<>(Arrays.asList(stationIdsToRead));
+            readMapped(kmlFile, consumer);
+            return;
+        }
+        try (MosmixKmlInput input = MosmixKmlInput.open(kmlFile, readAhead)) {
+            read(input.getStream(), input.getModelRunTime(), consumer, stationIdsToRead);
+        }
+    }
+
+    /**
+     * Reads a KML or KMZ file and passes every station to the consumer as soon as it has been extracted.
+     * Only a single station is held in memory at once.
+     *
+     * @param kmlFile  The KML or KMZ file.
+     * @param consumer Consumer for the extracted forecasts, called in file order.
+     */
+    public void readAll(Path kmlFile, Consumer<PointTimeForecast> consumer) throws IOException, XMLStreamException {
+        if (isMapped(kmlFile)) {
+            allStations = true;
+            missingStationIds = new LinkedHashSet<>();
+            readMapped(kmlFile, consumer);
+            return;
+        }
+        try (MosmixKmlInput input = MosmixKmlInput.open(kmlFile, readAhead)) {
+            readAll(input.getStream(), input.getModelRunTime(), consumer);
+        }
     }
 
     /**
      * Reads a KML file and extracts the given stations.
+     * Parsing stops as soon as all given stations have been extracted.
      *
      * @param kmlInput         The KML file.
      * @param stationIdsToRead Station IDs to extract.
@@ -41,81 +175,492 @@ public final class MosmixKmlReader {
      * @return Collection with extracted forecasts.
      */
     public List<PointTimeForecast> read(InputStream kmlInput, Instant modelRunTime, String... stationIdsToRead) throws XMLStreamException {
-        ListMultimap<String, String> dataForElements = ArrayListMultimap.create();
-        Set<String> requiredStationIds = new HashSet<>(Arrays.asList(stationIdsToRead));
-        parser = xmlFactory.createXMLStreamReader(kmlInput);
-
-        // Read forecast times
         List<PointTimeForecast> ptfcs = new ArrayList<>();
+        read(kmlInput, modelRunTime, ptfcs::add, stationIdsToRead);
+        return ptfcs;
+    }
+
+    /**
+     * Reads a KML file and passes each of the given stations to the consumer as soon as it has been extracted.
+     * Parsing stops as soon as all given stations have been extracted.
+     *
+     * @param kmlInput         The KML file.
+     * @param modelRunTime     The model run time.
+     * @param consumer         Consumer for the extracted forecasts, called in file order.
+     * @param stationIdsToRead Station IDs to extract.
+     */
+    public void read(InputStream kmlInput, Instant modelRunTime, Consumer<PointTimeForecast> consumer, String... stationIdsToRead) throws XMLStreamException {
+        allStations = false;
+        missingStationIds = new LinkedHashSet<>(Arrays.asList(stationIdsToRead));
+        read(kmlInput, modelRunTime, consumer);
+    }
+
+    /**
+     * Reads a KML file and passes every station to the consumer as soon as it has been extracted.
+     *
+     * @param kmlInput     The KML file.
+     * @param modelRunTime The model run time.
+     * @param consumer     Consumer for the extracted forecasts, called in file order.
+     */
+    public void readAll(InputStream kmlInput, Instant modelRunTime, Consumer<PointTimeForecast> consumer) throws XMLStreamException {
+        allStations = true;
+        missingStationIds = new LinkedHashSet<>();
+        read(kmlInput, modelRunTime, consumer);
+    }
+
+    /**
+     * Reads the given stations from the KML file of a placemark index. Only the placemarks of the given stations are
+     * read from the file, seeking directly to their positions.
+     *
+     * @param index            The placemark index of the KML file.
+     * @param consumer         Consumer for the extracted forecasts, called in the given order.
+     * @param stationIdsToRead Station IDs to extract.
+     */
+    public void read(PlacemarkIndex index, Consumer<PointTimeForecast> consumer, String... stationIdsToRead) throws IOException, XMLStreamException {
+        allStations = false;
+        missingStationIds = new LinkedHashSet<>(Arrays.asList(stationIdsToRead));
+        dataForElements.clear();
+        PipelineEvents.Read event = beginRead();
+        long bytesRead = index.getHeader().length;
+        try {
+            parser = xmlFactory.createXMLStreamReader(new ByteArrayInputStream(index.getHeader()));
+            List<Instant> forecastTimes = readForecastTimes();
+            parser.close();
+
+            try (FileChannel channel = FileChannel.open(index.getKmlFile(), StandardOpenOption.READ)) {
+                for (String stationId : stationIdsToRead) {
+                    if (!missingStationIds.contains(stationId)) continue;
+                    beginScan();
+                    InputStream placemark = index.readPlacemark(channel, stationId);
+                    if (placemark == null) {
+                        endScan();
+                        continue;
+                    }
+                    scanned();
+                    endScan();
+                    missingStationIds.remove(stationId);
+                    CountingInputStream placemarkInput = new CountingInputStream(placemark);
+                    consumer.accept(readPlacemark(placemarkInput, forecastTimes, index.getModelRunTime()));
+                    bytesRead += placemarkInput.getCount();
+                }
+            }
+        } finally {
+            endRead(event, index.getModelRunTime(), bytesRead);
+        }
+    }
+
+    /**
+     * Sets whether KML and KMZ files are read or inflated ahead on a separate thread, while this reader parses.
+     * Files read by the {@link Engine#MAPPED} engine are not affected.
+     */
+    void setReadAhead(boolean readAhead) {
+        this.readAhead = readAhead;
+    }
+
+    /**
+     * Returns the metrics of all reads of this reader.
+     */
+    PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics the reads of this reader are added to, e.g. shared by several readers.
+     */
+    void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private void read(InputStream kmlInput, Instant modelRunTime, Consumer<PointTimeForecast> consumer) throws XMLStreamException {
+        dataForElements.clear();
+        CountingInputStream input = new CountingInputStream(kmlInput);
+        PipelineEvents.Read event = beginRead();
+        try {
+            if (threads > 1) {
+                readParallel(input, modelRunTime, consumer);
+                return;
+            }
+
+            parser = xmlFactory.createXMLStreamReader(input);
+            List<Instant> forecastTimes = readForecastTimes();
+
+            // Read data and fill forecast objects, stop as soon as all stations are found
+            beginScan();
+            while (hasMissingStations() && gotoNextStationNameElement()) {
+                scanned();
+                String stationId = readText();
+                if (isRequired(stationId)) {
+                    endScan();
+                    consumer.accept(readStation(stationId, forecastTimes, modelRunTime));
+                    beginScan();
+                }
+            }
+            endScan();
+            parser.close();
+        } finally {
+            endRead(event, modelRunTime, input.getCount());
+        }
+    }
+
+    /**
+     * Splits the KML file into placemarks and parses the required ones on a fork-join pool.
+     * The number of placemarks waiting to be parsed is limited, results are passed on in file order.
+     */
+    private void readParallel(InputStream kmlInput, Instant modelRunTime, Consumer<PointTimeForecast> consumer) throws XMLStreamException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            PlacemarkSplitter splitter = new PlacemarkSplitter(kmlInput);
+            parser = xmlFactory.createXMLStreamReader(new ByteArrayInputStream(splitter.readHeader()));
+            List<Instant> forecastTimes = readForecastTimes();
+            parser.close();
+
+            ThreadLocal<MosmixKmlReader> workers = createWorkers();
+            Deque<Future<PointTimeForecast>> pending = new ArrayDeque<>();
+            PlacemarkSplitter.Placemark placemark;
+            beginScan();
+            while (hasMissingStations() && (placemark = splitter.next()) != null) {
+                scanned();
+                if (!isRequired(placemark.getStationId())) continue;
+                endScan();
+                InputStream placemarkInput = splitter.wrap(placemark);
+                pending.add(pool.submit(() -> workers.get().readPlacemark(placemarkInput, forecastTimes, modelRunTime)));
+                if (pending.size() > threads * MAX_PENDING_PLACEMARKS_PER_THREAD) consumer.accept(await(pending.poll()));
+                beginScan();
+            }
+            endScan();
+            while (!pending.isEmpty()) consumer.accept(await(pending.poll()));
+        } catch (IOException e) {
+            throw new XMLStreamException(e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private boolean isMapped(Path kmlFile) {
+        return engine == Engine.MAPPED && !MosmixKmlInput.isKmz(kmlFile);
+    }
+
+    /**
+     * Reads a plain KML file with the zero-copy scanner, parsing the required placemarks on a fork-join pool if more
+     * than one thread is given.
+     */
+    private void readMapped(Path kmlFile, Consumer<PointTimeForecast> consumer) throws IOException, XMLStreamException {
+        dataForElements.clear();
+        Instant modelRunTime = MosmixKmlInput.parseModelRunTime(kmlFile.getFileName().toString());
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try (MappedKmlScanner scanner = new MappedKmlScanner(kmlFile)) {
+            PipelineEvents.Read event = beginRead();
+            try {
+                long start = System.nanoTime();
+                PipelineEvents.TimeSteps timeSteps = new PipelineEvents.TimeSteps();
+                timeSteps.begin();
+                List<Instant> forecastTimes = scanner.readForecastTimes();
+                endTimeSteps(timeSteps, start, forecastTimes);
+
+                ThreadLocal<MosmixKmlReader> workers = pool != null ? createWorkers() : null;
+                Deque<Future<PointTimeForecast>> pending = new ArrayDeque<>();
+                MappedKmlScanner.Placemark placemark;
+                beginScan();
+                while (hasMissingStations() && (placemark = scanner.next()) != null) {
+                    scanned();
+                    if (!isRequired(placemark.getStationId())) continue;
+                    endScan();
+                    if (pool == null) {
+                        consumer.accept(readStation(placemark, forecastTimes, modelRunTime));
+                    } else {
+                        MappedKmlScanner.Placemark required = placemark;
+                        pending.add(pool.submit(() -> workers.get().readStation(required, forecastTimes, modelRunTime)));
+                        if (pending.size() > threads * MAX_PENDING_PLACEMARKS_PER_THREAD) consumer.accept(await(pending.poll()));
+                    }
+                    beginScan();
+                }
+                endScan();
+                while (!pending.isEmpty()) consumer.accept(await(pending.poll()));
+            } finally {
+                endRead(event, modelRunTime, scanner.getPosition());
+            }
+        } finally {
+            if (pool != null) pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns readers of the worker threads parsing placemarks, adding to the metrics of the current read.
+     */
+    private ThreadLocal<MosmixKmlReader> createWorkers() {
+        PipelineMetrics workerMetrics = readMetrics;
+        return ThreadLocal.withInitial(() -> {
+            MosmixKmlReader worker = new MosmixKmlReader(xmlFactory, elements, 1, engine);
+            worker.readMetrics = workerMetrics;
+            return worker;
+        });
+    }
+
+    /**
+     * Starts the metrics and the JFR event of a read.
+     */
+    private PipelineEvents.Read beginRead() {
+        readMetrics = new PipelineMetrics();
+        PipelineEvents.Read event = new PipelineEvents.Read();
+        event.begin();
+        return event;
+    }
+
+    private void endRead(PipelineEvents.Read event, Instant modelRunTime, long bytesRead) {
+        readMetrics.addBytesRead(bytesRead);
+        metrics.addAll(readMetrics);
+        if (event.shouldCommit()) {
+            event.modelRunTime = String.valueOf(modelRunTime);
+            event.bytesRead = bytesRead;
+            event.placemarksScanned = readMetrics.getPlacemarksScanned();
+            event.stationsMatched = readMetrics.getStationsMatched();
+            event.valuesParsed = readMetrics.getValuesParsed();
+            event.commit();
+        }
+    }
+
+    /**
+     * Starts the scan for the next required placemark.
+     */
+    private void beginScan() {
+        scan = new PipelineEvents.PlacemarkScan();
+        scan.begin();
+        scanStart = System.nanoTime();
+    }
+
+    private void scanned() {
+        scan.placemarks++;
+        readMetrics.addPlacemarksScanned(1);
+    }
+
+    private void endScan() {
+        scan.commit();
+        readMetrics.addPhase(PipelineMetrics.Phase.PLACEMARK_SCAN, scanStart);
+    }
+
+    private boolean hasMissingStations() {
+        return allStations || !missingStationIds.isEmpty();
+    }
+
+    private boolean isRequired(String stationId) {
+        return missingStationIds.remove(stationId) || allStations;
+    }
+
+    private PointTimeForecast readPlacemark(InputStream placemarkInput, List<Instant> forecastTimes, Instant modelRunTime) throws XMLStreamException {
+        parser = xmlFactory.createXMLStreamReader(placemarkInput);
+        try {
+            gotoNextStationNameElement();
+            return readStation(readText(), forecastTimes, modelRunTime);
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static PointTimeForecast await(Future<PointTimeForecast> future) throws XMLStreamException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XMLStreamException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof XMLStreamException) throw (XMLStreamException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new XMLStreamException(e.getCause());
+        }
+    }
+
+    private List<Instant> readForecastTimes() throws XMLStreamException {
+        long start = System.nanoTime();
+        PipelineEvents.TimeSteps event = new PipelineEvents.TimeSteps();
+        event.begin();
         List<Instant> forecastTimes = new ArrayList<>();
         while (gotoNextTimeStepElement()) {
-            Instant forecastTime = Instant.parse(parser.getText());
+            Instant forecastTime = Instant.parse(readText());
             forecastTimes.add(forecastTime);
         }
+        endTimeSteps(event, start, forecastTimes);
+        return forecastTimes;
+    }
 
-        // Read data and fill forecast objects
-        while (gotoNextStationNameElement()) {
-            String stationId = parser.getText();
-            if (requiredStationIds.contains(stationId)) {
-                dataForElements.clear();
-                while (gotoNextForecastElementWithinCurrentStation()) {
-                    String elementName = parser.getAttributeValue(0);
-                    gotoNextContent(MosmixKmlSchema.XML_VALUE_ELEMENT);
-                    String[] values = parser.getText().trim().split(MosmixKmlSchema.VALUES_DELIMITER);
-                    dataForElements.putAll(elementName, Arrays.asList(values));
-                }
-                gotoNextContent(MosmixKmlSchema.XML_COORDINATES_ELEMENT);
-                String[] coordinates = parser.getText().trim().split(MosmixKmlSchema.COORDINATES_DELIMTER);
-
-                Quantity<Angle> lat = Quantities.getQuantity(Double.valueOf(coordinates[0]), MosmixKmlSchema.STATION_COORDINATES_UNIT);
-                Quantity<Angle> lon = Quantities.getQuantity(Double.valueOf(coordinates[1]), MosmixKmlSchema.STATION_COORDINATES_UNIT);
-                Quantity<Length> height = Quantities.getQuantity(Double.valueOf(coordinates[2]), MosmixKmlSchema.STATION_HEIGHT_UNIT);
-                List<Forecast> forecasts = new ArrayList<>();
-                forecastTimes.forEach(forecastTime -> forecasts.add(new Forecast(forecastTime)));
-                PointTimeForecast ptfc = new PointTimeForecast(stationId, lat, lon, height, modelRunTime, forecasts);
-
-                MeteoCalculator calculator = new MeteoCalculator();
-                for (int step = 0; step < forecastTimes.size(); step++) {
-                    Forecast fc = ptfc.getForecast(step + 1);
-                    fc.setPPPP(parseNumericValue(dataForElements.get(MosmixKmlSchema.PPPP_SYMBOL).get(step)), MosmixKmlSchema.PPPP_UNIT);
-                    fc.setTX(parseNumericValue(dataForElements.get(MosmixKmlSchema.TX_SYMBOL).get(step)), MosmixKmlSchema.T_UNIT);
-                    fc.setTTT(parseNumericValue(dataForElements.get(MosmixKmlSchema.TTT_SYMBOL).get(step)), MosmixKmlSchema.T_UNIT);
-                    fc.setTD(parseNumericValue(dataForElements.get(MosmixKmlSchema.TD_SYMBOL).get(step)), MosmixKmlSchema.T_UNIT);
-                    fc.setTN(parseNumericValue(dataForElements.get(MosmixKmlSchema.TN_SYMBOL).get(step)), MosmixKmlSchema.T_UNIT);
-                    fc.setT5cm(parseNumericValue(dataForElements.get(MosmixKmlSchema.T5CM_SYMBOL).get(step)), MosmixKmlSchema.T_UNIT);
-                    fc.setDD(parseNumericValue(dataForElements.get(MosmixKmlSchema.DD_SYMBOL).get(step)), MosmixKmlSchema.DD_UNIT);
-                    fc.setFF(parseNumericValue(dataForElements.get(MosmixKmlSchema.FF_SYMBOL).get(step)), MosmixKmlSchema.F_UNIT);
-                    fc.setFX1(parseNumericValue(dataForElements.get(MosmixKmlSchema.FX1_SYMBOL).get(step)), MosmixKmlSchema.F_UNIT);
-                    fc.setFX3(parseNumericValue(dataForElements.get(MosmixKmlSchema.FX3_SYMBOL).get(step)), MosmixKmlSchema.F_UNIT);
-                    fc.setN(parseNumericValue(dataForElements.get(MosmixKmlSchema.N_SYMBOL).get(step)), MosmixKmlSchema.N_UNIT);
-                    fc.setNEFF(parseNumericValue(dataForElements.get(MosmixKmlSchema.NEFF_SYMBOL).get(step)), MosmixKmlSchema.N_UNIT);
-                    fc.setWW((int) parseNumericValue(dataForElements.get(MosmixKmlSchema.WW_SYMBOL).get(step)));
-                    fc.setRR1(parseNumericValue(dataForElements.get(MosmixKmlSchema.RR1_SYMBOL).get(step)), MosmixKmlSchema.RR_UNIT);
-                    fc.setRR3(parseNumericValue(dataForElements.get(MosmixKmlSchema.RR3_SYMBOL).get(step)), MosmixKmlSchema.RR_UNIT);
-                    fc.setSUND1(parseNumericValue(dataForElements.get(MosmixKmlSchema.SUND1_SYMBOL).get(step)), MosmixKmlSchema.SUND_UNIT);
-
-                    calculator.addTTT(fc.getTTT(KELVIN));
-                    calculator.addRR1(fc.getRR1(MILLI(METRE)));
-                    calculator.addWW(fc.getWW());
-                    calculator.addSUND1(fc.getSUND1(SECOND));
-
-                    fc.setWW3(calculator.getWW3());
-                    fc.setTM(calculator.getTM(), KELVIN);
-                    fc.setRR3(calculator.getRR3(), MILLI(METRE));
-                    fc.setRR12(calculator.getRR12(), MILLI(METRE));
-                    fc.setRR24(calculator.getRR24(), MILLI(METRE));
-                    fc.setSUND3(calculator.getSUND3(), SECOND);
-                    fc.setSUND24(calculator.getSUND24(), SECOND);
-                }
-                ptfcs.add(ptfc);
+    private void endTimeSteps(PipelineEvents.TimeSteps event, long start, List<Instant> forecastTimes) {
+        event.steps = forecastTimes.size();
+        event.commit();
+        readMetrics.addPhase(PipelineMetrics.Phase.TIME_STEPS, start);
+    }
+
+    /**
+     * Reads the forecast values of the current station, the parser is positioned at the station name.
+     */
+    private PointTimeForecast readStation(String stationId, List<Instant> forecastTimes, Instant modelRunTime) throws XMLStreamException {
+        long start = System.nanoTime();
+        PipelineEvents.Station event = new PipelineEvents.Station();
+        event.begin();
+        int valueCount = 0;
+        dataForElements.values().forEach(values -> Arrays.fill(values, Double.NaN));
+        stationElements.clear();
+        while (gotoNextForecastElementWithinCurrentStation()) {
+            String elementName = parser.getAttributeValue(0);
+            if (!isRead(elementName)) {
+                parser.next();
+                continue;
             }
+            gotoNextContent(MosmixKmlSchema.XML_VALUE_ELEMENT);
+            double[] values = valuesOf(elementName, forecastTimes.size());
+            readValues(values);
+            valueCount += values.length;
         }
-        parser.close();
-        return ptfcs;
+        gotoNextContent(MosmixKmlSchema.XML_COORDINATES_ELEMENT);
+        String[] coordinates = readText().trim().split(MosmixKmlSchema.COORDINATES_DELIMTER);
+
+        // KML coordinates are longitude, latitude, height
+        double lon = Double.parseDouble(coordinates[0]);
+        double lat = Double.parseDouble(coordinates[1]);
+        double height = Double.parseDouble(coordinates[2]);
+        PointTimeForecast ptfc = createForecast(stationId, lat, lon, height, forecastTimes, modelRunTime);
+        endStation(event, start, stationId, valueCount);
+        calculateElements(ptfc, forecastTimes.size());
+        return ptfc;
     }
 
-    private double parseNumericValue(String value) {
-        return Double.parseDouble(value.trim().replace(MosmixKmlSchema.NO_VALUE_STRING, "NaN"));
+    /**
+     * Reads the forecast values of a placemark found by the zero-copy scanner.
+     */
+    private PointTimeForecast readStation(MappedKmlScanner.Placemark placemark, List<Instant> forecastTimes, Instant modelRunTime) throws IOException {
+        long start = System.nanoTime();
+        PipelineEvents.Station event = new PipelineEvents.Station();
+        event.begin();
+        int valueCount = 0;
+        dataForElements.values().forEach(values -> Arrays.fill(values, Double.NaN));
+        stationElements.clear();
+        String elementName;
+        while ((elementName = placemark.nextForecastElement()) != null) {
+            if (!isRead(elementName)) continue;
+            double[] values = valuesOf(elementName, forecastTimes.size());
+            placemark.readValues(tokenizer, values);
+            valueCount += values.length;
+        }
+        double[] coordinates = placemark.readCoordinates();
+
+        // KML coordinates are longitude, latitude, height
+        PointTimeForecast ptfc = createForecast(placemark.getStationId(), coordinates[1], coordinates[0], coordinates[2], forecastTimes, modelRunTime);
+        endStation(event, start, placemark.getStationId(), valueCount);
+        calculateElements(ptfc, forecastTimes.size());
+        return ptfc;
+    }
+
+    private boolean isRead(String elementName) {
+        return allElements || elements.contains(elementName);
+    }
+
+    /**
+     * Returns the array for the values of an element of the current station.
+     */
+    private double[] valuesOf(String elementName, int steps) {
+        ElementRegistry.Element element = ElementRegistry.register(elementName);
+        if (!stationElements.contains(element)) stationElements.add(element);
+        return dataForElements.computeIfAbsent(elementName, name -> new double[steps]);
+    }
+
+    /**
+     * Creates the forecasts of a station from the values read. Elements with typed fields are stored in the forecasts,
+     * all others in an {@link ElementSeries} shared by them.
+     */
+    private PointTimeForecast createForecast(String stationId, double lat, double lon, double height, List<Instant> forecastTimes, Instant modelRunTime) {
+        List<Forecast> forecasts = new ArrayList<>();
+        forecastTimes.forEach(forecastTime -> forecasts.add(new Forecast(forecastTime)));
+        PointTimeForecast ptfc = new PointTimeForecast(stationId, lat, lon, height, modelRunTime, forecasts);
+
+        SortedMap<Integer, double[]> valuesBySlot = new TreeMap<>();
+        for (ElementRegistry.Element element : stationElements) {
+            double[] values = dataForElements.get(element.getSymbol());
+            if (element.getColumn() == null) {
+                valuesBySlot.put(element.getSlot(), values.clone());
+                continue;
+            }
+            for (int step = 0; step < forecastTimes.size(); step++) element.getColumn().set(ptfc.getForecast(step + 1), values[step]);
+        }
+        if (!valuesBySlot.isEmpty()) {
+            ElementSeries series = new ElementSeries(valuesBySlot);
+            for (int step = 0; step < forecastTimes.size(); step++) ptfc.getForecast(step + 1).setElementSeries(series, step);
+        }
+        return ptfc;
+    }
+
+    /**
+     * Calculates the elements derived while reading, e.g. TM, RR3 and WW3, as the derived values phase.
+     */
+    private void calculateElements(PointTimeForecast ptfc, int steps) {
+        long start = System.nanoTime();
+        PipelineEvents.CalculatedElements event = new PipelineEvents.CalculatedElements();
+        event.begin();
+        MeteoCalculator calculator = new MeteoCalculator();
+        for (int step = 0; step < steps; step++) {
+            Forecast fc = ptfc.getForecast(step + 1);
+            if (isRead(MosmixKmlSchema.TTT_SYMBOL)) {
+                calculator.addTTT(fc.getTTT(MosmixKmlSchema.T_UNIT));
+                fc.setTM(calculator.getTM(), MosmixKmlSchema.T_UNIT);
+            }
+            if (isRead(MosmixKmlSchema.RR1_SYMBOL)) {
+                calculator.addRR1(fc.getRR1(MosmixKmlSchema.RR_UNIT));
+                fc.setRR3(calculator.getRR3(), MosmixKmlSchema.RR_UNIT);
+                fc.setRR12(calculator.getRR12(), MosmixKmlSchema.RR_UNIT);
+                fc.setRR24(calculator.getRR24(), MosmixKmlSchema.RR_UNIT);
+            }
+            if (isRead(MosmixKmlSchema.WW_SYMBOL)) {
+                calculator.addWW(fc.getWW());
+                fc.setWW3(calculator.getWW3());
+            }
+            if (isRead(MosmixKmlSchema.SUND1_SYMBOL)) {
+                calculator.addSUND1(fc.getSUND1(MosmixKmlSchema.SUND_UNIT));
+                fc.setSUND3(calculator.getSUND3(), MosmixKmlSchema.SUND_UNIT);
+                fc.setSUND24(calculator.getSUND24(), MosmixKmlSchema.SUND_UNIT);
+            }
+        }
+        event.stationId = ptfc.getStationId();
+        event.steps = steps;
+        event.commit();
+        readMetrics.addPhase(PipelineMetrics.Phase.DERIVED, start);
+    }
+
+    private void endStation(PipelineEvents.Station event, long start, String stationId, int valueCount) {
+        event.stationId = stationId;
+        event.values = valueCount;
+        event.commit();
+        readMetrics.addPhase(PipelineMetrics.Phase.STATION, start);
+        readMetrics.addStationsMatched(1);
+        readMetrics.addValuesParsed(valueCount);
+    }
+
+    /**
+     * Returns the station IDs of the last read, which have not been found in the KML file.
+     */
+    public Set<String> getMissingStationIds() {
+        return Collections.unmodifiableSet(missingStationIds);
+    }
+
+    /**
+     * Returns the text content at the current position, which may be split into several events, and moves behind it.
+     */
+    private String readText() throws XMLStreamException {
+        String text = parser.getText();
+        if (parser.next() != XMLStreamConstants.CHARACTERS) return text;
+        StringBuilder builder = new StringBuilder(text);
+        do {
+            builder.append(parser.getText());
+        } while (parser.next() == XMLStreamConstants.CHARACTERS);
+        return builder.toString();
+    }
+
+    /**
+     * Tokenizes the text content at the current position, which may be split into several events.
+     */
+    private void readValues(double[] values) throws XMLStreamException {
+        tokenizer.reset(values);
+        while (parser.isCharacters() || parser.getEventType() == XMLStreamConstants.SPACE) {
+            tokenizer.feed(parser.getTextCharacters(), parser.getTextStart(), parser.getTextLength());
+            parser.next();
+        }
+        tokenizer.finish();
     }
 
     private void gotoNextContent(String xmlElementName) throws XMLStreamException {
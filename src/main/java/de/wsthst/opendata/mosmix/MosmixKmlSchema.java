@@ -1,7 +1,10 @@
 package de.wsthst.opendata.mosmix;
 
+import com.google.common.collect.ImmutableSet;
+
 import javax.measure.Unit;
 import javax.measure.quantity.*;
+import java.util.Set;
 
 import static si.uom.NonSI.DEGREE_ANGLE;
 import static tec.units.ri.unit.MetricPrefix.MILLI;
@@ -14,13 +17,13 @@ final class MosmixKmlSchema {
 
     static final String XML_TIMESTEPS_ELEMENT = "ForecastTimeSteps";
     static final String XML_TIMESTEP_ELEMENT = "TimeStep";
+    static final String XML_PLACEMARK_ELEMENT = "Placemark";
     static final String XML_NAME_ELEMENT = "name";
     static final String XML_EXTENDED_DATA_ELEMENT = "ExtendedData";
     static final String XML_FORECAST_ELEMENT = "Forecast";
     static final String XML_VALUE_ELEMENT = "value";
     static final String XML_COORDINATES_ELEMENT = "coordinates";
     static final String COORDINATES_DELIMTER = ",";
-    static final String VALUES_DELIMITER  = "\\s+";
 
     static final String PPPP_SYMBOL = "PPPP";
     static final String TX_SYMBOL = "TX";
@@ -39,6 +42,10 @@ final class MosmixKmlSchema {
     static final String RR3_SYMBOL = "RR3c";
     static final String SUND1_SYMBOL = "SunD1";
 
+    static final Set<String> ELEMENT_SYMBOLS = ImmutableSet.of(
+        PPPP_SYMBOL, TX_SYMBOL, TTT_SYMBOL, TD_SYMBOL, TN_SYMBOL, T5CM_SYMBOL, DD_SYMBOL, FF_SYMBOL,
+        FX1_SYMBOL, FX3_SYMBOL, N_SYMBOL, NEFF_SYMBOL, WW_SYMBOL, RR1_SYMBOL, RR3_SYMBOL, SUND1_SYMBOL);
+
     static final Unit<Pressure> PPPP_UNIT = PASCAL;
     static final Unit<Temperature> T_UNIT = KELVIN;
     static final Unit<Angle> DD_UNIT = DEGREE_ANGLE;
@@ -49,7 +56,7 @@ final class MosmixKmlSchema {
     static final Unit<Angle> STATION_COORDINATES_UNIT = DEGREE_ANGLE;
     static final Unit<Length> STATION_HEIGHT_UNIT = METRE;
 
-    static final String NO_VALUE_STRING = "-";
+    static final char NO_VALUE_CHAR = '-';
 
     private MosmixKmlSchema() {}
 }
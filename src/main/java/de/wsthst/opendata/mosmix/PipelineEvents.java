@@ -0,0 +1,127 @@
+package de.wsthst.opendata.mosmix;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events of the pipeline phases, recorded with e.g.
+ * <code>-XX:StartFlightRecording:filename=mosmix.jfr</code> and shown in JDK Mission Control under MOSMIX.
+ */
+final class PipelineEvents {
+
+    private static final String PREFIX = "de.wsthst.opendata.mosmix.";
+    private static final String CATEGORY = "MOSMIX";
+
+    private PipelineEvents() {}
+
+    @Name(PREFIX + "Read")
+    @Label("KML Read")
+    @Description("Read of a KML file with all its phases")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class Read extends Event {
+
+        @Label("Model Run Time")
+        String modelRunTime;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+
+        @Label("Placemarks Scanned")
+        long placemarksScanned;
+
+        @Label("Stations Matched")
+        long stationsMatched;
+
+        @Label("Values Parsed")
+        long valuesParsed;
+    }
+
+    @Name(PREFIX + "TimeSteps")
+    @Label("Time Steps Read")
+    @Description("Read of the forecast time steps from the document header")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class TimeSteps extends Event {
+
+        @Label("Forecast Steps")
+        int steps;
+    }
+
+    @Name(PREFIX + "PlacemarkScan")
+    @Label("Placemark Scan")
+    @Description("Scan for the next required station, including all skipped placemarks")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class PlacemarkScan extends Event {
+
+        @Label("Placemarks Scanned")
+        int placemarks;
+    }
+
+    @Name(PREFIX + "Station")
+    @Label("Station Materialization")
+    @Description("Parsing of the values of a station into forecasts")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class Station extends Event {
+
+        @Label("Station")
+        String stationId;
+
+        @Label("Values Parsed")
+        int values;
+    }
+
+    @Name(PREFIX + "CalculatedElements")
+    @Label("Calculated Elements")
+    @Description("Calculation of the elements derived while reading a station, e.g. TM, RR3 and WW3")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class CalculatedElements extends Event {
+
+        @Label("Station")
+        String stationId;
+
+        @Label("Forecast Steps")
+        int steps;
+    }
+
+    @Name(PREFIX + "DerivedValues")
+    @Label("Derived Values")
+    @Description("Calculation of the derived parameters of a station")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class DerivedValues extends Event {
+
+        @Label("Station")
+        String stationId;
+
+        @Label("Parameters")
+        int parameters;
+    }
+
+    @Name(PREFIX + "Write")
+    @Label("Station Write")
+    @Description("Output of a station as CSV or JSON")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class Write extends Event {
+
+        @Label("Station")
+        String stationId;
+
+        @Label("Format")
+        String format;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytes;
+    }
+}
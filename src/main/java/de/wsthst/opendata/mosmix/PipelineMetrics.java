@@ -0,0 +1,146 @@
+package de.wsthst.opendata.mosmix;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe counters and phase durations of reading, deriving and writing stations, summarized by
+ * <code>--metrics</code>. Phase durations of parallel threads add up, so they may exceed the elapsed time.
+ */
+final class PipelineMetrics {
+
+    /**
+     * Phases of the pipeline.
+     */
+    enum Phase {
+        TIME_STEPS("timeSteps"),
+        PLACEMARK_SCAN("placemarkScan"),
+        STATION("stationMaterialization"),
+        DERIVED("derivedValues"),
+        WRITE("write");
+
+        private final String key;
+
+        Phase(String key) {
+            this.key = key;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final LongAdder[] phaseNanos = new LongAdder[PHASES.length];
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder placemarksScanned = new LongAdder();
+    private final LongAdder stationsMatched = new LongAdder();
+    private final LongAdder valuesParsed = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    PipelineMetrics() {
+        for (int i = 0; i < phaseNanos.length; i++) phaseNanos[i] = new LongAdder();
+    }
+
+    /**
+     * Adds the time since the start of a phase.
+     *
+     * @param phase      The phase.
+     * @param startNanos The start of the phase from {@link System#nanoTime()}.
+     */
+    void addPhase(Phase phase, long startNanos) {
+        phaseNanos[phase.ordinal()].add(System.nanoTime() - startNanos);
+    }
+
+    void addBytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    void addPlacemarksScanned(long placemarks) {
+        placemarksScanned.add(placemarks);
+    }
+
+    void addStationsMatched(long stations) {
+        stationsMatched.add(stations);
+    }
+
+    void addValuesParsed(long values) {
+        valuesParsed.add(values);
+    }
+
+    void addBytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    /**
+     * Adds all counters and phase durations of other metrics.
+     */
+    void addAll(PipelineMetrics other) {
+        for (int i = 0; i < phaseNanos.length; i++) phaseNanos[i].add(other.phaseNanos[i].sum());
+        bytesRead.add(other.getBytesRead());
+        placemarksScanned.add(other.getPlacemarksScanned());
+        stationsMatched.add(other.getStationsMatched());
+        valuesParsed.add(other.getValuesParsed());
+        bytesWritten.add(other.getBytesWritten());
+    }
+
+    Duration getPhase(Phase phase) {
+        return Duration.ofNanos(phaseNanos[phase.ordinal()].sum());
+    }
+
+    long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    long getPlacemarksScanned() {
+        return placemarksScanned.sum();
+    }
+
+    long getStationsMatched() {
+        return stationsMatched.sum();
+    }
+
+    long getValuesParsed() {
+        return valuesParsed.sum();
+    }
+
+    long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    /**
+     * Returns the summary as JSON object with counters, throughput per second of the elapsed time and the seconds of
+     * each phase.
+     *
+     * @param elapsed The elapsed time of the run.
+     */
+    String toJson(Duration elapsed) {
+        double seconds = elapsed.toNanos() / 1e9;
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"elapsedSeconds\": ").append(decimal(seconds)).append(",\n");
+        json.append("  \"bytesRead\": ").append(getBytesRead()).append(",\n");
+        json.append("  \"placemarksScanned\": ").append(getPlacemarksScanned()).append(",\n");
+        json.append("  \"stationsMatched\": ").append(getStationsMatched()).append(",\n");
+        json.append("  \"valuesParsed\": ").append(getValuesParsed()).append(",\n");
+        json.append("  \"bytesWritten\": ").append(getBytesWritten()).append(",\n");
+        json.append("  \"throughput\": {\n");
+        json.append("    \"megabytesReadPerSecond\": ").append(decimal(perSecond(getBytesRead() / 1e6, seconds))).append(",\n");
+        json.append("    \"placemarksPerSecond\": ").append(decimal(perSecond(getPlacemarksScanned(), seconds))).append(",\n");
+        json.append("    \"stationsPerSecond\": ").append(decimal(perSecond(getStationsMatched(), seconds))).append(",\n");
+        json.append("    \"valuesPerSecond\": ").append(decimal(perSecond(getValuesParsed(), seconds))).append("\n");
+        json.append("  },\n");
+        json.append("  \"phaseSeconds\": {\n");
+        for (Phase phase : PHASES) {
+            json.append("    \"").append(phase.key).append("\": ").append(decimal(getPhase(phase).toNanos() / 1e9));
+            json.append(phase.ordinal() < PHASES.length - 1 ? ",\n" : "\n");
+        }
+        json.append("  }\n");
+        return json.append("}").toString();
+    }
+
+    private static double perSecond(double count, double seconds) {
+        return seconds > 0 ? count / seconds : 0;
+    }
+
+    private static String decimal(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
@@ -0,0 +1,193 @@
+package de.wsthst.opendata.mosmix;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Sidecar index of a plain MOSMIX KML file holding the byte offset and length of every placemark as well as the
+ * document header with the forecast time steps. Allows reading single stations without scanning the whole file.
+ * The index also holds the {@link SpatialIndex} of the station coordinates.
+ * The index is stored next to the KML file and rebuilt if the KML file has changed. Of placemarks with the same station
+ * ID only the first one is indexed.
+ */
+public final class PlacemarkIndex {
+
+    static final String FILE_EXTENSION = ".idx";
+    private static final int VERSION = 2;
+
+    private final Path kmlFile;
+    private final Instant modelRunTime;
+    private final long kmlSize;
+    private final long kmlLastModified;
+    private final byte[] header;
+    private final Map<String, Entry> entries;
+    private final SpatialIndex spatialIndex;
+
+    private PlacemarkIndex(Path kmlFile, long kmlSize, long kmlLastModified, byte[] header, Map<String, Entry> entries, SpatialIndex spatialIndex) {
+        this.kmlFile = kmlFile;
+        this.modelRunTime = MosmixKmlInput.parseModelRunTime(kmlFile.getFileName().toString());
+        this.kmlSize = kmlSize;
+        this.kmlLastModified = kmlLastModified;
+        this.header = header;
+        this.entries = entries;
+        this.spatialIndex = spatialIndex;
+    }
+
+    /**
+     * Returns the index of a KML file. An existing up-to-date index file is loaded, else the index is built and stored.
+     *
+     * @param kmlFile The plain KML file.
+     * @return The index.
+     */
+    public static PlacemarkIndex open(Path kmlFile) throws IOException {
+        Path indexFile = indexFileOf(kmlFile);
+        if (Files.exists(indexFile)) {
+            PlacemarkIndex index = load(kmlFile, indexFile);
+            if (index != null && index.kmlSize == Files.size(kmlFile) && index.kmlLastModified == Files.getLastModifiedTime(kmlFile).toMillis()) {
+                return index;
+            }
+        }
+        return build(kmlFile);
+    }
+
+    /**
+     * Scans a KML file, builds its index and stores it next to the KML file.
+     *
+     * @param kmlFile The plain KML file.
+     * @return The index.
+     */
+    public static PlacemarkIndex build(Path kmlFile) throws IOException {
+        if (MosmixKmlInput.isKmz(kmlFile)) throw new IOException("Placemark index requires an uncompressed KML file: " + kmlFile);
+        long kmlSize = Files.size(kmlFile);
+        long kmlLastModified = Files.getLastModifiedTime(kmlFile).toMillis();
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        List<double[]> coordinates = new ArrayList<>();
+        byte[] header;
+        try (InputStream in = Files.newInputStream(kmlFile)) {
+            PlacemarkSplitter splitter = new PlacemarkSplitter(in);
+            header = splitter.readHeader();
+            PlacemarkSplitter.Placemark placemark;
+            while ((placemark = splitter.next()) != null) {
+                // coordinates are added in the order of the entries, so a duplicate is skipped altogether
+                if (entries.putIfAbsent(placemark.getStationId(), new Entry(placemark.getOffset(), placemark.getBytes().length)) != null) continue;
+                coordinates.add(SpatialIndex.parseCoordinates(placemark.getBytes()));
+            }
+        }
+        SpatialIndex spatialIndex = SpatialIndex.build(new ArrayList<>(entries.keySet()),
+            coordinates.stream().mapToDouble(c -> c[0]).toArray(), coordinates.stream().mapToDouble(c -> c[1]).toArray());
+
+        PlacemarkIndex index = new PlacemarkIndex(kmlFile, kmlSize, kmlLastModified, header, entries, spatialIndex);
+        index.store(indexFileOf(kmlFile));
+        return index;
+    }
+
+    /**
+     * Returns the path of the index file belonging to a KML file.
+     */
+    public static Path indexFileOf(Path kmlFile) {
+        return kmlFile.resolveSibling(kmlFile.getFileName() + FILE_EXTENSION);
+    }
+
+    /**
+     * Loads an index file, returns null if it has been written by another version.
+     */
+    private static PlacemarkIndex load(Path kmlFile, Path indexFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != VERSION) return null;
+            long kmlSize = in.readLong();
+            long kmlLastModified = in.readLong();
+            byte[] header = new byte[in.readInt()];
+            in.readFully(header);
+            int count = in.readInt();
+            Map<String, Entry> entries = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                entries.put(in.readUTF(), new Entry(in.readLong(), in.readInt()));
+            }
+            return new PlacemarkIndex(kmlFile, kmlSize, kmlLastModified, header, entries, SpatialIndex.read(in));
+        }
+    }
+
+    private void store(Path indexFile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile)))) {
+            out.writeInt(VERSION);
+            out.writeLong(kmlSize);
+            out.writeLong(kmlLastModified);
+            out.writeInt(header.length);
+            out.write(header);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().offset);
+                out.writeInt(entry.getValue().length);
+            }
+            spatialIndex.write(out);
+        }
+    }
+
+    public Path getKmlFile() {
+        return kmlFile;
+    }
+
+    public Instant getModelRunTime() {
+        return modelRunTime;
+    }
+
+    /**
+     * Returns all station IDs in the order of the KML file.
+     */
+    public Set<String> getStationIds() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * Returns the spatial index of the station coordinates.
+     */
+    SpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    /**
+     * Returns the document header up to the first placemark, containing the forecast time steps.
+     */
+    byte[] getHeader() {
+        return header;
+    }
+
+    /**
+     * Reads the raw bytes of a station placemark and wraps them into the document root element.
+     *
+     * @param channel   Channel of the KML file.
+     * @param stationId The station ID.
+     * @return The placemark document or null if the station is not contained.
+     */
+    InputStream readPlacemark(FileChannel channel, String stationId) throws IOException {
+        Entry entry = entries.get(stationId);
+        if (entry == null) return null;
+        ByteBuffer bytes = ByteBuffer.allocate(entry.length);
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes, entry.offset + bytes.position()) < 0) throw new IOException("Placemark index of " + kmlFile + " is outdated");
+        }
+        return PlacemarkSplitter.wrap(header, bytes.array());
+    }
+
+    private static final class Entry {
+
+        private final long offset;
+        private final int length;
+
+        Entry(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
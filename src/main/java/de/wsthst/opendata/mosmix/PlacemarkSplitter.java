@@ -0,0 +1,258 @@
+package de.wsthst.opendata.mosmix;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits the raw bytes of a MOSMIX KML file into the document header and single <code>kml:Placemark</code> chunks,
+ * without parsing the XML. Each chunk can be parsed on its own, wrapped into the root element of the document.
+ * The splitter relies on the regular structure of DWD KML files, which contain no comments or CDATA sections.
+ */
+final class PlacemarkSplitter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream input;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private long consumed;
+
+    private final ByteArrayOutputStream chunk = new ByteArrayOutputStream(BUFFER_SIZE);
+    private byte[] tagName = new byte[32];
+    private int tagNameLength;
+    private byte[] header;
+    private byte[] rootStart;
+    private byte[] rootEnd;
+    private boolean placemarkStarted;
+    private long placemarkOffset;
+
+    /**
+     * Constructor.
+     *
+     * @param input The raw KML content.
+     */
+    PlacemarkSplitter(InputStream input) {
+        this.input = input;
+    }
+
+    /**
+     * Reads everything before the first placemark, which contains the forecast time steps.
+     *
+     * @return The header bytes, not well-formed as the document is not closed.
+     */
+    byte[] readHeader() throws IOException {
+        if (header != null) return header;
+        chunk.reset();
+        placemarkStarted = copyUntilTag(true, MosmixKmlSchema.XML_PLACEMARK_ELEMENT, false);
+        byte[] bytes = chunk.toByteArray();
+        header = placemarkStarted ? Arrays.copyOf(bytes, bytes.length - tagNameLength - 1) : bytes;
+        initRoot();
+        return header;
+    }
+
+    /**
+     * Reads the next placemark.
+     *
+     * @return The next placemark or null at the end of the file.
+     */
+    Placemark next() throws IOException {
+        readHeader();
+        if (!placemarkStarted) return null;
+
+        chunk.reset();
+        chunk.write('<');
+        chunk.write(tagName, 0, tagNameLength);
+        String stationId = null;
+        boolean closed = false;
+        while (!closed) {
+            if (!copyUntilTag(true, null, true)) throw new IOException("Unexpected end of file within placemark");
+            if (stationId == null && isTag(false, MosmixKmlSchema.XML_NAME_ELEMENT)) {
+                copyUntil('>', true);
+                int start = chunk.size();
+                copyUntil('<', false);
+                stationId = new String(chunk.toByteArray(), start, chunk.size() - start, StandardCharsets.ISO_8859_1).trim();
+            }
+            closed = isTag(true, MosmixKmlSchema.XML_PLACEMARK_ELEMENT);
+        }
+        copyUntil('>', true);
+        Placemark placemark = new Placemark(stationId, placemarkOffset, chunk.toByteArray());
+
+        chunk.reset();
+        placemarkStarted = copyUntilTag(false, MosmixKmlSchema.XML_PLACEMARK_ELEMENT, false);
+        return placemark;
+    }
+
+    /**
+     * Returns a stream with the given placemark wrapped into the XML declaration and the root element of the document.
+     */
+    InputStream wrap(Placemark placemark) {
+        return wrap(rootStart, placemark.getBytes(), rootEnd);
+    }
+
+    /**
+     * Returns a stream with the given placemark bytes wrapped into the root element of the given header.
+     */
+    static InputStream wrap(byte[] header, byte[] placemark) {
+        int[] root = findRoot(header);
+        return wrap(Arrays.copyOf(header, root[2]), placemark, rootEnd(header, root));
+    }
+
+    private static InputStream wrap(byte[] rootStart, byte[] placemark, byte[] rootEnd) {
+        return new SequenceInputStream(
+            new SequenceInputStream(new ByteArrayInputStream(rootStart), new ByteArrayInputStream(placemark)),
+            new ByteArrayInputStream(rootEnd));
+    }
+
+    private void initRoot() {
+        int[] root = findRoot(header);
+        rootStart = Arrays.copyOf(header, root[2]);
+        rootEnd = rootEnd(header, root);
+    }
+
+    /**
+     * Finds the root element start tag.
+     *
+     * @return Start and end of the root element name and the end of the start tag, exclusive.
+     */
+    private static int[] findRoot(byte[] header) {
+        int i = 0;
+        while (i < header.length - 1 && (header[i] != '<' || header[i + 1] == '?' || header[i + 1] == '!')) i++;
+        int nameStart = i + 1;
+        int nameEnd = nameStart;
+        while (nameEnd < header.length && !isNameEnd(header[nameEnd])) nameEnd++;
+        int end = nameEnd;
+        while (end < header.length && header[end] != '>') end++;
+        return new int[] {nameStart, nameEnd, Math.min(end + 1, header.length)};
+    }
+
+    private static byte[] rootEnd(byte[] header, int[] root) {
+        String rootName = new String(header, root[0], root[1] - root[0], StandardCharsets.ISO_8859_1);
+        return ("</" + rootName + ">").getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Reads until the next start or end tag with the given local name has been read, or any tag if the name is null.
+     * Afterwards the tag name is available without the closing bracket. Runs of bytes up to the next tag are copied
+     * from the read buffer at once.
+     *
+     * @param copy        Whether to copy the read bytes to the current chunk.
+     * @param localName   The local name of the tag or null.
+     * @param includeEnds Whether end tags match as well.
+     * @return False at the end of file.
+     */
+    private boolean copyUntilTag(boolean copy, String localName, boolean includeEnds) throws IOException {
+        while (position < limit || fill()) {
+            int start = position;
+            while (position < limit && buffer[position] != '<') position++;
+            boolean tag = position < limit;
+            if (tag) position++;
+            if (copy) chunk.write(buffer, start, position - start);
+            if (!tag) continue;
+            int b;
+            tagNameLength = 0;
+            while ((b = peek()) >= 0 && !isNameEnd(b) || b == '/' && tagNameLength == 0) {
+                if (tagNameLength == tagName.length) tagName = Arrays.copyOf(tagName, tagName.length * 2);
+                tagName[tagNameLength++] = (byte) read();
+            }
+            if (copy) chunk.write(tagName, 0, tagNameLength);
+            boolean endTag = tagNameLength > 0 && tagName[0] == '/';
+            if ((localName == null || isTag(endTag, localName)) && (includeEnds || !endTag)) {
+                if (isTag(false, MosmixKmlSchema.XML_PLACEMARK_ELEMENT)) placemarkOffset = offset() - tagNameLength - 1;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void copyUntil(int stop, boolean inclusive) throws IOException {
+        while (position < limit || fill()) {
+            int start = position;
+            while (position < limit && buffer[position] != stop) position++;
+            boolean found = position < limit;
+            if (found && inclusive) position++;
+            chunk.write(buffer, start, position - start);
+            if (found) return;
+        }
+    }
+
+    private boolean isTag(boolean endTag, String localName) {
+        int start = endTag ? 1 : 0;
+        if (endTag != (tagNameLength > 0 && tagName[0] == '/')) return false;
+        for (int i = start; i < tagNameLength; i++) {
+            if (tagName[i] == ':') start = i + 1;
+        }
+        int length = tagNameLength - start;
+        if (length != localName.length()) return false;
+        for (int i = 0; i < length; i++) {
+            if (tagName[start + i] != localName.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isNameEnd(int b) {
+        return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private long offset() {
+        return consumed - limit + position;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) return -1;
+        return buffer[position] & 0xff;
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) return -1;
+        return buffer[position++] & 0xff;
+    }
+
+    private boolean fill() throws IOException {
+        limit = input.read(buffer, 0, buffer.length);
+        position = 0;
+        if (limit < 0) {
+            limit = 0;
+            return false;
+        }
+        consumed += limit;
+        return true;
+    }
+
+    /**
+     * Raw bytes of a single placemark.
+     */
+    static final class Placemark {
+
+        private final String stationId;
+        private final long offset;
+        private final byte[] bytes;
+
+        Placemark(String stationId, long offset, byte[] bytes) {
+            this.stationId = stationId;
+            this.offset = offset;
+            this.bytes = bytes;
+        }
+
+        String getStationId() {
+            return stationId;
+        }
+
+        /**
+         * Returns the byte offset of the placemark within the KML file.
+         */
+        long getOffset() {
+            return offset;
+        }
+
+        byte[] getBytes() {
+            return bytes;
+        }
+    }
+
+}
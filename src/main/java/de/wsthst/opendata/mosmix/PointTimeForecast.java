@@ -16,10 +16,13 @@ import java.util.*;
  */
 public final class PointTimeForecast implements Iterable<Forecast> {
 
+    private static final UnitConversion<Angle> COORDINATES = new UnitConversion<>(MosmixKmlSchema.STATION_COORDINATES_UNIT);
+    private static final UnitConversion<Length> HEIGHT = new UnitConversion<>(MosmixKmlSchema.STATION_HEIGHT_UNIT);
+
     private final String stationId;
-    private final Quantity<Angle> latitude;
-    private final Quantity<Angle> longitude;
-    private final Quantity<Length> height;
+    private final double latitude;
+    private final double longitude;
+    private final double height;
     private final Instant modelRunTime;
     private final List<Forecast> forecasts;
 
@@ -31,6 +34,21 @@ public final class PointTimeForecast implements Iterable<Forecast> {
             Quantity<Angle> latitude, Quantity<Angle> longitude, Quantity<Length> height,
             Instant modelRunTime,
             List<Forecast> forecasts) {
+        this(stationId,
+            COORDINATES.toCanonical(latitude.getValue().doubleValue(), latitude.getUnit()),
+            COORDINATES.toCanonical(longitude.getValue().doubleValue(), longitude.getUnit()),
+            HEIGHT.toCanonical(height.getValue().doubleValue(), height.getUnit()),
+            modelRunTime, forecasts);
+    }
+
+    /**
+     * Constructor with coordinates and height given in the units of the KML input.
+     */
+    PointTimeForecast(
+            String stationId,
+            double latitude, double longitude, double height,
+            Instant modelRunTime,
+            List<Forecast> forecasts) {
         this.stationId = stationId;
         this.latitude = latitude;
         this.longitude = longitude;
@@ -56,15 +74,15 @@ public final class PointTimeForecast implements Iterable<Forecast> {
     }
 
     public double getStationLatitude(Unit<Angle> unit) {
-        return latitude.to(unit).getValue().doubleValue();
+        return COORDINATES.fromCanonical(latitude, unit);
     }
 
     public double getStationLongitude(Unit<Angle> unit) {
-        return longitude.to(unit).getValue().doubleValue();
+        return COORDINATES.fromCanonical(longitude, unit);
     }
 
     public double getStationHeight(Unit<Length> unit) {
-        return height.to(unit).getValue().doubleValue();
+        return HEIGHT.fromCanonical(height, unit);
     }
 
     @Override
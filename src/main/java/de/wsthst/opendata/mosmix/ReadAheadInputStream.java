@@ -0,0 +1,153 @@
+package de.wsthst.opendata.mosmix;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Input stream reading its source, e.g. inflating a KMZ archive, on a separate thread into a ring of byte buffers,
+ * while the caller parses. The source is read ahead by at most the size of the ring, so memory remains bounded and
+ * a slower parser throttles the reading thread.
+ */
+final class ReadAheadInputStream extends InputStream {
+
+    static final int BUFFER_SIZE = 1 << 16;
+    static final int BUFFERS = 16;
+
+    private static final Chunk END = new Chunk(null, 0, null);
+
+    private final InputStream source;
+    private final BlockingQueue<byte[]> free;
+    private final BlockingQueue<Chunk> filled;
+    private final Thread thread;
+    private Chunk current;
+    private int position;
+    private Throwable failure;
+
+    /**
+     * Constructor, starts reading the source.
+     *
+     * @param source The source, closed with this stream.
+     */
+    ReadAheadInputStream(InputStream source) {
+        this(source, BUFFER_SIZE, BUFFERS);
+    }
+
+    /**
+     * Constructor, starts reading the source.
+     *
+     * @param source     The source, closed with this stream.
+     * @param bufferSize The size of each buffer.
+     * @param buffers    The number of buffers of the ring.
+     */
+    ReadAheadInputStream(InputStream source, int bufferSize, int buffers) {
+        if (bufferSize < 1 || buffers < 1) throw new IllegalArgumentException("Invalid ring of " + buffers + " buffers of " + bufferSize + " bytes");
+        this.source = source;
+        this.free = new ArrayBlockingQueue<>(buffers);
+        this.filled = new ArrayBlockingQueue<>(buffers + 1);
+        for (int i = 0; i < buffers; i++) free.add(new byte[bufferSize]);
+        this.thread = new Thread(this::readSource, "mosmix-read-ahead");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Fills free buffers from the source until its end, a failure or until this stream is closed.
+     */
+    private void readSource() {
+        try {
+            try {
+                while (true) {
+                    byte[] buffer = free.take();
+                    int length = source.readNBytes(buffer, 0, buffer.length);
+                    if (length > 0) filled.put(new Chunk(buffer, length, null));
+                    if (length < buffer.length) break;
+                }
+                filled.put(END);
+            } catch (Throwable e) {
+                filled.put(new Chunk(null, 0, e));
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!next()) return -1;
+        return current.bytes[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) return 0;
+        if (!next()) return -1;
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current.bytes, position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    /**
+     * Moves to the next filled buffer if the current one is consumed, returning the consumed one to the ring.
+     * A failure of the source is rethrown on every call, so it cannot be mistaken for the end of the source.
+     *
+     * @return False at the end of the source.
+     */
+    private boolean next() throws IOException {
+        if (failure != null) throw new IOException("Reading ahead failed", failure);
+        if (current != null && position < current.length) return true;
+        if (current == END) return false;
+        if (current != null) free.add(current.bytes);
+        try {
+            current = filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for input");
+        }
+        position = 0;
+        if (current.failure != null) {
+            failure = current.failure;
+            current = END;
+            throw new IOException("Reading ahead failed", failure);
+        }
+        return current != END;
+    }
+
+    @Override
+    public int available() {
+        return current != null ? current.length - position : 0;
+    }
+
+    /**
+     * Stops reading ahead and closes the source.
+     */
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        source.close();
+    }
+
+    /**
+     * A filled buffer, or the end of the source or its failure.
+     */
+    private static final class Chunk {
+
+        private final byte[] bytes;
+        private final int length;
+        private final Throwable failure;
+
+        Chunk(byte[] bytes, int length, Throwable failure) {
+            this.bytes = bytes;
+            this.length = length;
+            this.failure = failure;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package de.wsthst.opendata.mosmix;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Two dimensional k-d tree over the station coordinates of a model run, answering nearest station and bounding box
+ * queries in logarithmic time. Distances are great circle distances, longitudes wrap at the antimeridian.
+ * <p>
+ * The tree is implicit: the stations are ordered so that every range of stations has its splitting station in the
+ * middle, splitting by latitude and longitude alternately. This order is also the persisted form of the index.
+ * Coordinates are taken from <code>kml:coordinates</code> in KML order, longitude before latitude.
+ */
+final class SpatialIndex {
+
+    static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final byte[] COORDINATES_START = "coordinates>".getBytes(StandardCharsets.US_ASCII);
+
+    private final String[] stationIds;
+    private final double[] latitudes;
+    private final double[] longitudes;
+
+    private SpatialIndex(String[] stationIds, double[] latitudes, double[] longitudes) {
+        this.stationIds = stationIds;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+    }
+
+    /**
+     * Builds the index.
+     *
+     * @param stationIds The station IDs.
+     * @param latitudes  The station latitudes in degrees.
+     * @param longitudes The station longitudes in degrees.
+     */
+    static SpatialIndex build(List<String> stationIds, double[] latitudes, double[] longitudes) {
+        Integer[] order = new Integer[stationIds.size()];
+        Arrays.setAll(order, i -> i);
+        sort(order, 0, order.length, 0, latitudes, longitudes);
+        String[] treeStationIds = new String[order.length];
+        double[] treeLatitudes = new double[order.length];
+        double[] treeLongitudes = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            treeStationIds[i] = stationIds.get(order[i]);
+            treeLatitudes[i] = latitudes[order[i]];
+            treeLongitudes[i] = longitudes[order[i]];
+        }
+        return new SpatialIndex(treeStationIds, treeLatitudes, treeLongitudes);
+    }
+
+    private static void sort(Integer[] order, int from, int to, int depth, double[] latitudes, double[] longitudes) {
+        if (to - from < 2) return;
+        double[] axis = depth % 2 == 0 ? latitudes : longitudes;
+        Arrays.sort(order, from, to, Comparator.comparingDouble(i -> axis[i]));
+        int middle = (from + to) >>> 1;
+        sort(order, from, middle, depth + 1, latitudes, longitudes);
+        sort(order, middle + 1, to, depth + 1, latitudes, longitudes);
+    }
+
+    /**
+     * Scans all placemarks of a KML or KMZ file for their coordinates and builds the index.
+     */
+    static SpatialIndex scan(Path kmlFile) throws IOException {
+        try (MosmixKmlInput input = MosmixKmlInput.open(kmlFile)) {
+            return scan(input.getStream());
+        }
+    }
+
+    static SpatialIndex scan(InputStream kml) throws IOException {
+        PlacemarkSplitter splitter = new PlacemarkSplitter(kml);
+        splitter.readHeader();
+        List<String> stationIds = new ArrayList<>();
+        List<double[]> coordinates = new ArrayList<>();
+        PlacemarkSplitter.Placemark placemark;
+        while ((placemark = splitter.next()) != null) {
+            stationIds.add(placemark.getStationId());
+            coordinates.add(parseCoordinates(placemark.getBytes()));
+        }
+        return build(stationIds, coordinates.stream().mapToDouble(c -> c[0]).toArray(), coordinates.stream().mapToDouble(c -> c[1]).toArray());
+    }
+
+    /**
+     * Returns latitude and longitude of the <code>kml:coordinates</code> of a placemark.
+     */
+    static double[] parseCoordinates(byte[] placemark) throws IOException {
+        int start = indexOf(placemark, COORDINATES_START);
+        if (start < 0) throw new IOException("Placemark without coordinates");
+        start += COORDINATES_START.length;
+        int end = start;
+        while (end < placemark.length && placemark[end] != '<') end++;
+        String[] coordinates = new String(placemark, start, end - start, StandardCharsets.US_ASCII).trim().split(MosmixKmlSchema.COORDINATES_DELIMTER);
+        return new double[] {Double.parseDouble(coordinates[1]), Double.parseDouble(coordinates[0])};
+    }
+
+    private static int indexOf(byte[] bytes, byte[] pattern) {
+        for (int i = 0; i <= bytes.length - pattern.length; i++) {
+            int j = 0;
+            while (j < pattern.length && bytes[i + j] == pattern[j]) j++;
+            if (j == pattern.length) return i;
+        }
+        return -1;
+    }
+
+    static SpatialIndex read(DataInput in) throws IOException {
+        int count = in.readInt();
+        String[] stationIds = new String[count];
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+        for (int i = 0; i < count; i++) {
+            stationIds[i] = in.readUTF();
+            latitudes[i] = in.readDouble();
+            longitudes[i] = in.readDouble();
+        }
+        return new SpatialIndex(stationIds, latitudes, longitudes);
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeInt(stationIds.length);
+        for (int i = 0; i < stationIds.length; i++) {
+            out.writeUTF(stationIds[i]);
+            out.writeDouble(latitudes[i]);
+            out.writeDouble(longitudes[i]);
+        }
+    }
+
+    int size() {
+        return stationIds.length;
+    }
+
+    /**
+     * Returns the stations nearest to a location.
+     *
+     * @param latitude  The latitude in degrees.
+     * @param longitude The longitude in degrees.
+     * @param count     The number of stations.
+     * @return The station IDs ordered by distance.
+     */
+    List<String> nearest(double latitude, double longitude, int count) {
+        PriorityQueue<double[]> candidates = new PriorityQueue<>(Comparator.comparingDouble((double[] c) -> c[0]).reversed());
+        nearest(0, stationIds.length, 0, latitude, longitude, count, candidates);
+        List<double[]> sorted = new ArrayList<>(candidates);
+        sorted.sort(Comparator.comparingDouble(c -> c[0]));
+        List<String> nearest = new ArrayList<>(sorted.size());
+        sorted.forEach(c -> nearest.add(stationIds[(int) c[1]]));
+        return nearest;
+    }
+
+    private void nearest(int from, int to, int depth, double latitude, double longitude, int count, PriorityQueue<double[]> candidates) {
+        if (from >= to) return;
+        int middle = (from + to) >>> 1;
+        double distance = distance(latitude, longitude, latitudes[middle], longitudes[middle]);
+        if (candidates.size() < count) {
+            candidates.add(new double[] {distance, middle});
+        } else if (distance < candidates.peek()[0]) {
+            candidates.poll();
+            candidates.add(new double[] {distance, middle});
+        }
+
+        boolean byLatitude = depth % 2 == 0;
+        double split = byLatitude ? latitudes[middle] : longitudes[middle];
+        boolean lower = (byLatitude ? latitude : longitude) < split;
+        if (lower) {
+            nearest(from, middle, depth + 1, latitude, longitude, count, candidates);
+        } else {
+            nearest(middle + 1, to, depth + 1, latitude, longitude, count, candidates);
+        }
+        double bound = byLatitude ? Math.toRadians(Math.abs(latitude - split)) * EARTH_RADIUS_KM : longitudeBound(latitude, longitude, split, !lower);
+        if (candidates.size() < count || bound < candidates.peek()[0]) {
+            if (lower) {
+                nearest(middle + 1, to, depth + 1, latitude, longitude, count, candidates);
+            } else {
+                nearest(from, middle, depth + 1, latitude, longitude, count, candidates);
+            }
+        }
+    }
+
+    /**
+     * Returns the minimum distance from a location to the stations west or east of a splitting longitude, which is
+     * the distance to the nearest bounding meridian, either the split or the antimeridian.
+     */
+    private static double longitudeBound(double latitude, double longitude, double split, boolean west) {
+        double gap = west ? Math.min(longitude - split, 180 - longitude) : Math.min(split - longitude, longitude + 180);
+        if (gap <= 0) return 0;
+        if (gap >= 90) return Math.toRadians(90 - Math.abs(latitude)) * EARTH_RADIUS_KM;
+        return Math.asin(Math.cos(Math.toRadians(latitude)) * Math.sin(Math.toRadians(gap))) * EARTH_RADIUS_KM;
+    }
+
+    /**
+     * Returns the stations within a bounding box. If the minimum longitude is greater than the maximum longitude,
+     * the box crosses the antimeridian.
+     *
+     * @return The station IDs in alphabetical order.
+     */
+    List<String> within(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+        List<String> within = new ArrayList<>();
+        if (minLongitude <= maxLongitude) {
+            within(0, stationIds.length, 0, minLatitude, minLongitude, maxLatitude, maxLongitude, within);
+        } else {
+            within(0, stationIds.length, 0, minLatitude, minLongitude, maxLatitude, 180, within);
+            within(0, stationIds.length, 0, minLatitude, -180, maxLatitude, maxLongitude, within);
+        }
+        Collections.sort(within);
+        return within;
+    }
+
+    private void within(int from, int to, int depth, double minLatitude, double minLongitude, double maxLatitude, double maxLongitude, List<String> within) {
+        if (from >= to) return;
+        int middle = (from + to) >>> 1;
+        double latitude = latitudes[middle];
+        double longitude = longitudes[middle];
+        if (latitude >= minLatitude && latitude <= maxLatitude && longitude >= minLongitude && longitude <= maxLongitude) within.add(stationIds[middle]);
+
+        double split = depth % 2 == 0 ? latitude : longitude;
+        double min = depth % 2 == 0 ? minLatitude : minLongitude;
+        double max = depth % 2 == 0 ? maxLatitude : maxLongitude;
+        if (min <= split) within(from, middle, depth + 1, minLatitude, minLongitude, maxLatitude, maxLongitude, within);
+        if (max >= split) within(middle + 1, to, depth + 1, minLatitude, minLongitude, maxLatitude, maxLongitude, within);
+    }
+
+    /**
+     * Returns the great circle distance between two locations by the haversine formula.
+     *
+     * @return The distance in kilometres.
+     */
+    static double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double sinLatitude = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+        double sinLongitude = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinLatitude * sinLatitude + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2)) * sinLongitude * sinLongitude;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,149 @@
+package de.wsthst.opendata.mosmix;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToDoubleBiFunction;
+
+import static java.lang.Double.NaN;
+
+/**
+ * Derived parameters provided by the tool.
+ */
+public enum StandardDerivedParameter implements DerivedParameter {
+
+    /**
+     * Relative humidity from temperature air and dew point using the Magnus formula.
+     */
+    RH("%", (series, step) -> relativeHumidity(celsius(series, MosmixKmlSchema.TTT_SYMBOL, step), celsius(series, MosmixKmlSchema.TD_SYMBOL, step)),
+        MosmixKmlSchema.TTT_SYMBOL, MosmixKmlSchema.TD_SYMBOL),
+
+    /**
+     * Wind chill temperature after the North American and UK formula for temperatures up to 10 °C and wind speeds
+     * above 4.8 km/h, else the temperature air.
+     */
+    WCHILL("°C", StandardDerivedParameter::windChill, MosmixKmlSchema.TTT_SYMBOL, MosmixKmlSchema.FF_SYMBOL),
+
+    /**
+     * Heat index after the Rothfusz regression for temperatures from 26.7 °C and relative humidity from 40 %,
+     * else the temperature air.
+     */
+    HI("°C", StandardDerivedParameter::heatIndex, MosmixKmlSchema.TTT_SYMBOL, MosmixKmlSchema.TD_SYMBOL),
+
+    /**
+     * 6-hours precipitation amount.
+     */
+    RR6("mm", 6, (series, hours) -> MeteoCalculator.sums(series.get(MosmixKmlSchema.RR1_SYMBOL), hours), MosmixKmlSchema.RR1_SYMBOL),
+
+    /**
+     * 6-hours sunshine duration.
+     */
+    SUND6("h", 6, (series, hours) -> toHours(MeteoCalculator.sums(series.get(MosmixKmlSchema.SUND1_SYMBOL), hours)), MosmixKmlSchema.SUND1_SYMBOL),
+
+    /**
+     * Maximum temperature air of the last 12 hours.
+     */
+    TX12("°C", 12, (series, hours) -> toCelsius(MeteoCalculator.maximums(series.get(MosmixKmlSchema.TTT_SYMBOL), hours)), MosmixKmlSchema.TTT_SYMBOL),
+
+    /**
+     * Minimum temperature air of the last 12 hours.
+     */
+    TN12("°C", 12, (series, hours) -> toCelsius(MeteoCalculator.minimums(series.get(MosmixKmlSchema.TTT_SYMBOL), hours)), MosmixKmlSchema.TTT_SYMBOL);
+
+    private static final double ZERO_CELSIUS = 273.15;
+
+    private final String unit;
+    private final int window;
+    private final Set<String> elements;
+    private final Function<Map<String, double[]>, double[]> calculation;
+
+    /**
+     * Constructor for parameters of a single time step, calculated step by step.
+     */
+    StandardDerivedParameter(String unit, ToDoubleBiFunction<Map<String, double[]>, Integer> calculation, String... elements) {
+        this.unit = unit;
+        this.window = 1;
+        this.elements = Set.of(elements);
+        this.calculation = series -> {
+            double[] values = new double[series.values().iterator().next().length];
+            for (int step = 0; step < values.length; step++) values[step] = calculation.applyAsDouble(series, step);
+            return values;
+        };
+    }
+
+    /**
+     * Constructor for parameters over a window of hours, calculated over the complete series.
+     */
+    StandardDerivedParameter(String unit, int window, BiFunction<Map<String, double[]>, Integer, double[]> calculation, String... elements) {
+        this.unit = unit;
+        this.window = window;
+        this.elements = Set.of(elements);
+        this.calculation = series -> calculation.apply(series, window);
+    }
+
+    @Override
+    public String getName() {
+        return name();
+    }
+
+    @Override
+    public String getUnit() {
+        return unit;
+    }
+
+    @Override
+    public Set<String> getElements() {
+        return elements;
+    }
+
+    @Override
+    public int getWindow() {
+        return window;
+    }
+
+    @Override
+    public double[] calculate(Map<String, double[]> series) {
+        return calculation.apply(series);
+    }
+
+    private static double windChill(Map<String, double[]> series, int step) {
+        double t = celsius(series, MosmixKmlSchema.TTT_SYMBOL, step);
+        double v = series.get(MosmixKmlSchema.FF_SYMBOL)[step] * 3.6;
+        if (Double.isNaN(v) || t > 10 || v <= 4.8) return t;
+        double vPow = Math.pow(v, 0.16);
+        return 13.12 + 0.6215 * t - 11.37 * vPow + 0.3965 * t * vPow;
+    }
+
+    private static double heatIndex(Map<String, double[]> series, int step) {
+        double t = celsius(series, MosmixKmlSchema.TTT_SYMBOL, step);
+        double rh = relativeHumidity(t, celsius(series, MosmixKmlSchema.TD_SYMBOL, step));
+        if (Double.isNaN(rh) || t < 26.7 || rh < 40) return t;
+        double f = t * 1.8 + 32;
+        double hi = -42.379 + 2.04901523 * f + 10.14333127 * rh - 0.22475541 * f * rh - 6.83783e-3 * f * f
+            - 5.481717e-2 * rh * rh + 1.22874e-3 * f * f * rh + 8.5282e-4 * f * rh * rh - 1.99e-6 * f * f * rh * rh;
+        return (hi - 32) / 1.8;
+    }
+
+    private static double celsius(Map<String, double[]> series, String element, int step) {
+        return series.get(element)[step] - ZERO_CELSIUS;
+    }
+
+    private static double[] toHours(double[] seconds) {
+        for (int step = 0; step < seconds.length; step++) seconds[step] /= 3600;
+        return seconds;
+    }
+
+    private static double[] toCelsius(double[] kelvin) {
+        for (int step = 0; step < kelvin.length; step++) kelvin[step] -= ZERO_CELSIUS;
+        return kelvin;
+    }
+
+    /**
+     * Relative humidity in percent by the Magnus formula over water.
+     */
+    private static double relativeHumidity(double t, double td) {
+        if (Double.isNaN(t) || Double.isNaN(td)) return NaN;
+        return 100 * Math.exp(17.625 * td / (243.04 + td)) / Math.exp(17.625 * t / (243.04 + t));
+    }
+}
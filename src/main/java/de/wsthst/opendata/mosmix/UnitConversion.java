@@ -0,0 +1,92 @@
+package de.wsthst.opendata.mosmix;
+
+import javax.measure.Quantity;
+import javax.measure.Unit;
+import javax.measure.UnitConverter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Converts primitive values from and to a canonical unit. Converters are created once per unit and cached.
+ * The converters of the first {@link #MAX_CACHED_UNITS} unit instances used, usually the constant output units, are
+ * looked up by identity without hashing the unit or allocating.
+ *
+ * @param <Q> The quantity type.
+ */
+final class UnitConversion<Q extends Quantity<Q>> {
+
+    private static final int MAX_CACHED_UNITS = 8;
+
+    private final Unit<Q> canonicalUnit;
+    private final Map<Unit<Q>, UnitConverter> fromCanonical = new ConcurrentHashMap<>();
+    private final Map<Unit<Q>, UnitConverter> toCanonical = new ConcurrentHashMap<>();
+    private volatile Converter[] fromCanonicalByInstance = new Converter[0];
+    private volatile Converter[] toCanonicalByInstance = new Converter[0];
+
+    /**
+     * Constructor.
+     *
+     * @param canonicalUnit The unit values are stored in.
+     */
+    UnitConversion(Unit<Q> canonicalUnit) {
+        this.canonicalUnit = canonicalUnit;
+    }
+
+    Unit<Q> getCanonicalUnit() {
+        return canonicalUnit;
+    }
+
+    /**
+     * Converts a value given in the canonical unit to the given unit.
+     */
+    double fromCanonical(double value, Unit<Q> unit) {
+        if (unit == canonicalUnit) return value;
+        for (Converter converter : fromCanonicalByInstance) {
+            if (converter.unit == unit) return converter.converter.convert(value);
+        }
+        UnitConverter converter = fromCanonical.computeIfAbsent(unit, canonicalUnit::getConverterTo);
+        fromCanonicalByInstance = add(fromCanonicalByInstance, unit, converter);
+        return converter.convert(value);
+    }
+
+    /**
+     * Converts a value given in the given unit to the canonical unit.
+     */
+    double toCanonical(double value, Unit<Q> unit) {
+        if (unit == canonicalUnit) return value;
+        for (Converter converter : toCanonicalByInstance) {
+            if (converter.unit == unit) return converter.converter.convert(value);
+        }
+        UnitConverter converter = toCanonical.computeIfAbsent(unit, u -> u.getConverterTo(canonicalUnit));
+        toCanonicalByInstance = add(toCanonicalByInstance, unit, converter);
+        return converter.convert(value);
+    }
+
+    /**
+     * Returns a copy of the converters with the given one appended, or the converters if full or already contained.
+     */
+    private static Converter[] add(Converter[] converters, Unit<?> unit, UnitConverter converter) {
+        if (converters.length == MAX_CACHED_UNITS) return converters;
+        for (Converter cached : converters) {
+            if (cached.unit == unit) return converters;
+        }
+        Converter[] added = Arrays.copyOf(converters, converters.length + 1);
+        added[converters.length] = new Converter(unit, converter);
+        return added;
+    }
+
+    /**
+     * Converter to or from a unit instance.
+     */
+    private static final class Converter {
+
+        private final Unit<?> unit;
+        private final UnitConverter converter;
+
+        Converter(Unit<?> unit, UnitConverter converter) {
+            this.unit = unit;
+            this.converter = converter;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package de.wsthst.opendata.mosmix;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Parses the whitespace delimited values of a <code>dwd:value</code> element into a reusable double array
+ * without creating intermediate strings. The text may be fed in several chunks, as delivered by
+ * {@link javax.xml.stream.XMLStreamReader#getTextCharacters()}, or as raw bytes of a memory-mapped file.
+ * The no value marker is parsed as NaN. Results are identical to {@link Double#parseDouble(String)}.
+ */
+final class ValueTokenizer {
+
+    private static final int MAX_FAST_PATH_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private char[] token = new char[32];
+    private int tokenLength;
+    private double[] values;
+    private int count;
+
+    /**
+     * Starts tokenizing into the given array. Values not set remain NaN.
+     *
+     * @param values The target array.
+     */
+    void reset(double[] values) {
+        this.values = values;
+        Arrays.fill(values, Double.NaN);
+        count = 0;
+        tokenLength = 0;
+    }
+
+    /**
+     * Tokenizes the next chunk of text. A value may span several chunks.
+     */
+    void feed(char[] chars, int start, int length) {
+        int end = start + length;
+        for (int i = start; i < end; i++) {
+            char c = chars[i];
+            if (Character.isWhitespace(c)) {
+                endToken();
+            } else {
+                if (tokenLength == token.length) token = Arrays.copyOf(token, token.length * 2);
+                token[tokenLength++] = c;
+            }
+        }
+    }
+
+    /**
+     * Tokenizes the bytes of an ASCII compatible encoding like ISO-8859-1 and parses the values straight from the
+     * bytes. Unlike {@link #feed(char[], int, int)} the range has to contain complete values.
+     *
+     * @param bytes The bytes, read by absolute position only.
+     * @param start The start of the range.
+     * @param end   The end of the range, exclusive.
+     */
+    void feed(ByteBuffer bytes, int start, int end) {
+        int tokenStart = -1;
+        for (int i = start; i < end; i++) {
+            if (isWhitespace(bytes.get(i))) {
+                if (tokenStart >= 0) add(parse(bytes, tokenStart, i));
+                tokenStart = -1;
+            } else if (tokenStart < 0) {
+                tokenStart = i;
+            }
+        }
+        if (tokenStart >= 0) add(parse(bytes, tokenStart, end));
+    }
+
+    /**
+     * Completes tokenizing.
+     *
+     * @return The number of values read.
+     */
+    int finish() {
+        endToken();
+        return count;
+    }
+
+    private void endToken() {
+        if (tokenLength == 0) return;
+        add(parse(token, tokenLength));
+        tokenLength = 0;
+    }
+
+    private void add(double value) {
+        if (count < values.length) values[count] = value;
+        count++;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return Character.isWhitespace((char) (b & 0xff));
+    }
+
+    /**
+     * Parses a single value. Plain decimals are calculated by {@link #parseDecimal(CharSource, int, int)}, all other
+     * values are passed to {@link Double#parseDouble(String)}.
+     */
+    static double parse(char[] chars, int length) {
+        if (length == 1 && chars[0] == MosmixKmlSchema.NO_VALUE_CHAR) return Double.NaN;
+        double value = parseDecimal(i -> chars[i], 0, length);
+        return Double.isNaN(value) ? Double.parseDouble(new String(chars, 0, length)) : value;
+    }
+
+    /**
+     * Parses a single value from bytes like {@link #parse(char[], int)}.
+     */
+    static double parse(ByteBuffer bytes, int start, int end) {
+        if (end - start == 1 && bytes.get(start) == MosmixKmlSchema.NO_VALUE_CHAR) return Double.NaN;
+        double value = parseDecimal(bytes::get, start, end);
+        return Double.isNaN(value) ? Double.parseDouble(decode(bytes, start, end)) : value;
+    }
+
+    /**
+     * Calculates a plain decimal with up to 15 significant digits directly, which is exact as both the mantissa and
+     * the power of ten are representable as double.
+     *
+     * @return The value or NaN if the text is no such decimal.
+     */
+    private static double parseDecimal(CharSource text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        int first = text.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int significantDigits = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            int c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (mantissa != 0) significantDigits++;
+                if (fractionDigits >= 0) fractionDigits++;
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                return Double.NaN;
+            }
+            if (significantDigits > MAX_FAST_PATH_DIGITS) return Double.NaN;
+        }
+        if (digits == 0 || fractionDigits >= POWERS_OF_TEN.length) return Double.NaN;
+
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private static String decode(ByteBuffer bytes, int start, int end) {
+        byte[] token = new byte[end - start];
+        bytes.get(start, token);
+        return new String(token, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Characters of a value by index, the chars of the StAX text or the bytes of the mapped file.
+     */
+    @FunctionalInterface
+    private interface CharSource {
+
+        int charAt(int index);
+    }
+}
@@ -0,0 +1,117 @@
+package de.wsthst.opendata.mosmix;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class ConsumerStageTest {
+
+  @Test
+  void testOrder() {
+    List<Integer> consumed = new ArrayList<>();
+    try (ConsumerStage<Integer> stage = new ConsumerStage<>("test", 4, consumed::add)) {
+      for (int i = 0; i < 1000; i++) stage.accept(i);
+    }
+    assertThat(consumed.size(), is(1000));
+    for (int i = 0; i < 1000; i++) assertThat(consumed.get(i), is(i));
+  }
+
+  /**
+   * The producer is blocked while the consumer is slow, so no more than the capacity plus the item being consumed
+   * are pending.
+   */
+  @Test
+  void testBackpressure() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger produced = new AtomicInteger();
+    AtomicInteger consumed = new AtomicInteger();
+    ConsumerStage<Integer> stage = new ConsumerStage<>("test", 2, item -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      consumed.incrementAndGet();
+    });
+    Thread producer = new Thread(() -> {
+      for (int i = 0; i < 10; i++) {
+        stage.accept(i);
+        produced.incrementAndGet();
+      }
+    });
+    producer.start();
+    Thread.sleep(200);
+    assertThat(produced.get(), lessThanOrEqualTo(3));
+    release.countDown();
+    producer.join();
+    stage.close();
+    assertThat(consumed.get(), is(10));
+  }
+
+  @Test
+  void testFailure() {
+    AtomicInteger consumed = new AtomicInteger();
+    ConsumerStage<Integer> stage = new ConsumerStage<>("test", 1, item -> {
+      if (item == 3) throw new IllegalArgumentException("Item " + item);
+      consumed.incrementAndGet();
+    });
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> {
+      try (stage) {
+        for (int i = 0; i < 100; i++) stage.accept(i);
+      }
+    });
+    assertThat(e.getMessage(), is("Item 3"));
+    assertThat(e.getSuppressed().length, is(0));
+    assertThat(consumed.get(), is(3));
+  }
+
+  /**
+   * An error of the consumer fails the producer instead of leaving it blocked on the full queue.
+   */
+  @Test
+  void testError() {
+    ConsumerStage<Integer> stage = new ConsumerStage<>("test", 1, item -> {
+      if (item == 3) throw new StackOverflowError("Item " + item);
+    });
+    StackOverflowError e = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(StackOverflowError.class, () -> {
+      try (stage) {
+        for (int i = 0; i < 100; i++) stage.accept(i);
+      }
+    }));
+    assertThat(e.getMessage(), is("Item 3"));
+  }
+
+  /**
+   * A checked exception thrown without declaration fails the producer wrapped in an IllegalStateException.
+   */
+  @Test
+  void testUndeclaredCheckedException() {
+    ConsumerStage<Integer> stage = new ConsumerStage<>("test", 1, item -> {
+      if (item == 3) sneakyThrow(new IOException("Item " + item));
+    });
+    IllegalStateException e = assertThrows(IllegalStateException.class, () -> {
+      try (stage) {
+        for (int i = 0; i < 100; i++) stage.accept(i);
+      }
+    });
+    assertThat(e.getCause(), instanceOf(IOException.class));
+    assertThat(e.getCause().getMessage(), is("Item 3"));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <E extends Throwable> void sneakyThrow(Throwable e) throws E {
+    throw (E) e;
+  }
+}
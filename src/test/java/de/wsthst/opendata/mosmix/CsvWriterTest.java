@@ -0,0 +1,175 @@
+package de.wsthst.opendata.mosmix;
+
+import com.sun.management.ThreadMXBean;
+import org.apache.commons.math3.util.Precision;
+import org.apache.commons.text.TextStringBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static java.lang.Double.NaN;
+import static java.time.ZoneOffset.UTC;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static si.uom.NonSI.DEGREE_ANGLE;
+import static tec.units.ri.unit.MetricPrefix.HECTO;
+import static tec.units.ri.unit.Units.*;
+
+class CsvWriterTest {
+
+  private static final int STEPS = 500;
+
+  private static final double[] SPECIAL_VALUES = {
+      NaN, 0, -0.0, 0.05, -0.05, 0.15, 0.25, 0.35, 1.45, 2.5, -2.5, 0.04999999999999999, 1e8 + 0.05, -1e9, 359.5, 12.345};
+
+  /**
+   * Special values in the range of forecast values, all of which are formatted without allocating.
+   */
+  private static final double[] FORECAST_RANGE_VALUES = {
+      NaN, 0, -0.0, 0.05, -0.05, 0.15, 0.25, 0.35, 1.45, 2.5, -2.5, 0.04999999999999999, 359.5, 12.345};
+
+  @Test
+  void testIdenticalToReferenceFormat() throws Exception {
+    PointTimeForecast ptfc = randomForecast(SPECIAL_VALUES);
+
+    StringWriter csv = new StringWriter();
+    try (PrintWriter out = new PrintWriter(csv)) {
+      new CsvWriter().write(ptfc, out);
+    }
+    assertThat(csv.toString(), is(reference(ptfc)));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    CsvWriter writer = new CsvWriter();
+    writer.write(ptfc, Channels.newChannel(bytes));
+    writer.write(ptfc, Channels.newChannel(bytes));
+    assertThat(bytes.toString(StandardCharsets.UTF_8), is(reference(ptfc) + reference(ptfc)));
+  }
+
+  @Test
+  void testCodesNotRead() throws Exception {
+    Forecast fc = new Forecast(Instant.parse("2018-03-29T08:00:00Z"));
+    fc.setTTT(273.15, MosmixKmlSchema.T_UNIT);
+    PointTimeForecast ptfc = new PointTimeForecast("X", 0, 0, 0, Instant.parse("2018-03-29T07:00:00Z"), List.of(fc));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new CsvWriter().write(ptfc, Channels.newChannel(bytes));
+    String[] lines = bytes.toString(StandardCharsets.UTF_8).split(System.lineSeparator());
+    assertThat(lines[lines.length - 1], is("29.03.18;08:00;0.0;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---"));
+    assertThat(CsvWriter.format(CsvColumn.Format.CODE, fc.getWW()), is("---"));
+  }
+
+  @Test
+  void testNoAllocationPerRow() throws Exception {
+    ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    PointTimeForecast ptfc = randomForecast(FORECAST_RANGE_VALUES);
+    CsvWriter writer = new CsvWriter();
+    WritableByteChannel discard = new WritableByteChannel() {
+      @Override
+      public int write(ByteBuffer src) {
+        int length = src.remaining();
+        src.position(src.limit());
+        return length;
+      }
+
+      @Override
+      public boolean isOpen() {
+        return true;
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    for (int i = 0; i < 2000; i++) {
+      writer.write(ptfc, discard);
+    }
+
+    int writes = 1000;
+    long threadId = Thread.currentThread().threadId();
+    long before = threads.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < writes; i++) {
+      writer.write(ptfc, discard);
+    }
+    long bytesPerRow = (threads.getThreadAllocatedBytes(threadId) - before) / writes / STEPS;
+    assertThat("bytes per row " + bytesPerRow, bytesPerRow < 16, is(true));
+  }
+
+  private static PointTimeForecast randomForecast(double[] specialValues) {
+    Random random = new Random(7);
+    List<Forecast> forecasts = new ArrayList<>();
+    for (int step = 0; step < STEPS; step++) {
+      Forecast fc = new Forecast(Instant.parse("2018-03-29T08:00:00Z").plusSeconds(3600L * step));
+      fc.setTTT(value(random, specialValues, step, 273.15, 40), MosmixKmlSchema.T_UNIT);
+      fc.setTD(value(random, specialValues, step + 1, 273.15, 40), MosmixKmlSchema.T_UNIT);
+      fc.setDD(value(random, specialValues, step + 2, 0, 360), MosmixKmlSchema.DD_UNIT);
+      fc.setFF(value(random, specialValues, step + 3, 0, 30), MosmixKmlSchema.F_UNIT);
+      fc.setN(value(random, specialValues, step + 4, 0, 100), MosmixKmlSchema.N_UNIT);
+      fc.setNEFF(value(random, specialValues, step + 5, 0, 100), MosmixKmlSchema.N_UNIT);
+      fc.setRR1(value(random, specialValues, step + 6, 0, 10), MosmixKmlSchema.RR_UNIT);
+      fc.setPPPP(value(random, specialValues, step + 7, 95000, 10000), MosmixKmlSchema.PPPP_UNIT);
+      fc.setSUND1(value(random, specialValues, step + 8, 0, 3600), MosmixKmlSchema.SUND_UNIT);
+      fc.setWW(random.nextInt(100));
+      fc.setWW3(random.nextInt(100));
+      forecasts.add(fc);
+    }
+    return new PointTimeForecast("X", 0, 0, 0, Instant.parse("2018-03-29T07:00:00Z"), forecasts);
+  }
+
+  private static double value(Random random, double[] specialValues, int step, double offset, double range) {
+    if (step % 7 == 0) return specialValues[(step / 7) % specialValues.length];
+    return offset + Math.round(random.nextDouble() * range * 100) / 100.0 - (step % 3 == 0 ? range / 2 : 0);
+  }
+
+  /**
+   * Formatting of the rows as originally implemented.
+   */
+  private static String reference(PointTimeForecast ptfc) {
+    StringWriter csv = new StringWriter();
+    PrintWriter writer = new PrintWriter(csv);
+    writer.println("forecast;parameter;TT;Td;Tx;Tn;Tm;Tg;dd;ff;fx;fx3;RR1;RR3;RR12;RR24;ww;ww3;N;Nf;PPPP;SS1;SS3;SS24");
+    writer.println("today 07 UTC;unit;°C;°C;°C;°C;°C;°C;°;km/h;km/h;km/h;mm;mm;mm;mm;WW Code;WW Code;1/8;1/8;hPa;h;h;h");
+    for (int hour = 0; hour <= 7; hour++) {
+      writer.printf("29.03.18;%02d:00;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---;---%n", hour);
+    }
+    TextStringBuilder line = new TextStringBuilder();
+    DateTimeFormatter timeFormat = DateTimeFormatter.ofPattern("dd.MM.yy;HH:mm");
+    for (Forecast fc : ptfc) {
+      line
+          .append(fc.getForecastTime().atZone(UTC).format(timeFormat)).append(";")
+          .append(Precision.round(fc.getTTT(CELSIUS), 1)).append(";")
+          .append(Precision.round(fc.getTD(CELSIUS), 1)).append(";")
+          .append("NaN;NaN;NaN;NaN;")
+          .append("%.0f", Precision.round(fc.getDD(DEGREE_ANGLE), 0)).append(";")
+          .append(Precision.round(fc.getFF(KILOMETRE_PER_HOUR), 1)).append(";")
+          .append("NaN;NaN;")
+          .append(Precision.round(fc.getRR1(MosmixKmlSchema.RR_UNIT), 1)).append(";")
+          .append("NaN;NaN;NaN;")
+          .append(fc.getWW()).append(";")
+          .append(fc.getWW3()).append(";")
+          .append("%.0f", Precision.round(fc.getN(PERCENT), 2) / 100.0 * 8.0).append(";")
+          .append("%.0f", Precision.round(fc.getNEFF(PERCENT), 2) / 100.0 * 8.0).append(";")
+          .append(Precision.round(fc.getPPPP(HECTO(PASCAL)), 1)).append(";")
+          .append(Precision.round(fc.getSUND1(HOUR), 1)).append(";")
+          .append("NaN;NaN")
+          .replaceAll("NaN", "---");
+      writer.println(line);
+      line.clear();
+    }
+    writer.flush();
+    return csv.toString();
+  }
+}
@@ -0,0 +1,103 @@
+package de.wsthst.opendata.mosmix;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.lang.Double.NaN;
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static tec.units.ri.unit.Units.CELSIUS;
+
+class DerivedParameterEngineTest {
+
+  @Test
+  void testStandardParameters() throws Exception {
+    PointTimeForecast ptfc;
+    try (InputStream kml = new BufferedInputStream(getClass().getResource("/MOSMIX_S_2018032907_240.kml").openStream())) {
+      ptfc = new MosmixKmlReader().read(kml, Instant.parse("2018-03-29T07:00:00.00Z"), "10637").get(0);
+    }
+    DerivedParameterEngine engine = new DerivedParameterEngine(Arrays.asList(StandardDerivedParameter.values()));
+    engine.apply(ptfc);
+
+    Forecast fc = ptfc.getForecast(1);
+    assertThat(fc.getDerived("RH"), is(closeTo(100 * Math.exp(17.625 * fc.getTD(CELSIUS) / (243.04 + fc.getTD(CELSIUS)))
+        / Math.exp(17.625 * fc.getTTT(CELSIUS) / (243.04 + fc.getTTT(CELSIUS))), 1e-9)));
+    assertThat(fc.getDerived("HI"), is(closeTo(fc.getTTT(CELSIUS), 1e-9)));
+    assertThat(fc.getDerived("RR6"), is(NaN));
+    assertThat(fc.getDerived("TX12"), is(NaN));
+    assertThat(fc.getDerived("UNKNOWN"), is(NaN));
+
+    double max = Double.NEGATIVE_INFINITY;
+    double rr6 = 0;
+    for (int step = 1; step <= 12; step++) {
+      max = Math.max(max, ptfc.getForecast(step).getTTT(CELSIUS));
+      if (step > 6) rr6 += ptfc.getForecast(step).getRR1(MosmixKmlSchema.RR_UNIT);
+    }
+    assertThat(ptfc.getForecast(12).getDerived("TX12"), is(closeTo(max, 1e-9)));
+    assertThat(ptfc.getForecast(12).getDerived("RR6"), is(closeTo(rr6, 1e-9)));
+
+    StringWriter csv = new StringWriter();
+    try (PrintWriter out = new PrintWriter(csv)) {
+      new CsvWriter(engine.getParameters()).write(ptfc, out);
+    }
+    String[] lines = csv.toString().split("\\R");
+    assertThat(lines[0], endsWith(";SS24;RH;WCHILL;HI;RR6;SUND6;TX12;TN12"));
+    assertThat(lines[1], endsWith(";h;%;°C;°C;mm;h;°C;°C"));
+  }
+
+  @Test
+  void testWindowExtremes() {
+    double[] values = {3, 1, 4, 1, 5, NaN, 2, 6, 5, 3};
+    assertThat(MeteoCalculator.maximums(values, 3), is(new double[]{NaN, NaN, 4, 4, 5, NaN, NaN, NaN, 6, 6}));
+    assertThat(MeteoCalculator.minimums(values, 3), is(new double[]{NaN, NaN, 1, 1, 1, NaN, NaN, NaN, 2, 3}));
+  }
+
+  @Test
+  void testCustomParameter() {
+    DerivedParameter spread = new DerivedParameter() {
+      @Override
+      public String getName() {
+        return "SPREAD";
+      }
+
+      @Override
+      public String getUnit() {
+        return "K";
+      }
+
+      @Override
+      public Set<String> getElements() {
+        return Set.of("TTT", "Td");
+      }
+
+      @Override
+      public int getWindow() {
+        return 1;
+      }
+
+      @Override
+      public double[] calculate(Map<String, double[]> series) {
+        double[] values = series.get("TTT").clone();
+        for (int i = 0; i < values.length; i++) values[i] -= series.get("Td")[i];
+        return values;
+      }
+    };
+    Forecast fc = new Forecast(Instant.EPOCH);
+    fc.setTTT(290, MosmixKmlSchema.T_UNIT);
+    fc.setTD(285, MosmixKmlSchema.T_UNIT);
+    PointTimeForecast ptfc = new PointTimeForecast("X", 0, 0, 0, Instant.EPOCH, List.of(fc));
+    new DerivedParameterEngine(List.of(spread)).apply(ptfc);
+    assertThat(ptfc.getForecast(1).getDerived("SPREAD"), is(5.0));
+  }
+}
@@ -0,0 +1,114 @@
+package de.wsthst.opendata.mosmix;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import static java.lang.Double.NaN;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static tec.units.ri.AbstractUnit.ONE;
+import static tec.units.ri.unit.MetricPrefix.KILO;
+import static tec.units.ri.unit.Units.*;
+
+class ElementRegistryTest {
+
+  private static final Path MOSMIX_L = Paths.get("src/test/resources/MOSMIX_L_2019021903_10637.kml");
+
+  @Test
+  void testRegistry() {
+    assertThat(ElementRegistry.getListedSymbols().size(), is(114));
+    assertThat(ElementRegistry.getListedSymbols().containsAll(MosmixKmlSchema.ELEMENT_SYMBOLS), is(true));
+
+    ElementRegistry.Element ttt = ElementRegistry.find("TTT");
+    assertThat(ttt.getUnit(), is(KELVIN));
+    assertThat(ttt.getColumn(), is(ForecastColumn.TTT));
+    assertThat(ElementRegistry.find("VV").getUnit(), is(METRE));
+    assertThat(ElementRegistry.find("VV").getColumn(), is(nullValue()));
+    assertThat(ElementRegistry.find("E_TTT").getUnit(), is(KELVIN));
+    assertThat(ElementRegistry.find("E_TTT").isDifference(), is(true));
+    assertThat(ttt.isDifference(), is(false));
+
+    assertThat(ElementRegistry.find("XYZ1"), is(nullValue()));
+    ElementRegistry.Element unknown = ElementRegistry.register("XYZ1");
+    assertThat(unknown.getUnit(), is(ONE));
+    assertThat(unknown.getSlot(), is(not(ttt.getSlot())));
+    assertThat(ElementRegistry.find("XYZ1"), is(unknown));
+  }
+
+  @Test
+  void testReadAllElements() throws Exception {
+    for (MosmixKmlReader.Engine engine : MosmixKmlReader.Engine.values()) {
+      MosmixKmlReader reader = new MosmixKmlReader(Collections.singleton(MosmixKmlReader.ALL_ELEMENTS), 1, engine);
+      Forecast fc = reader.read(MOSMIX_L, "10637").get(0).getForecast(1);
+      assertThat(fc.get("VV", KILO(METRE)), is(closeTo(30.6, 1e-9)));
+      assertThat(fc.get("wwP", PERCENT), is(1.0));
+      assertThat(fc.get("TTT", CELSIUS), is(closeTo(0.2, 1e-9)));
+      assertThat(fc.getTTT(CELSIUS), is(closeTo(0.2, 1e-9)));
+      assertThat(fc.get("UNKNOWN", ONE), is(NaN));
+      assertThrows(IllegalArgumentException.class, () -> fc.get("VV", CELSIUS));
+      assertThat(fc.get("E_TTT", KELVIN), is(closeTo(0.6, 1e-9)));
+      assertThrows(IllegalArgumentException.class, () -> fc.get("E_TTT", CELSIUS));
+      assertThrows(IllegalArgumentException.class, () -> fc.get("E_Td", CELSIUS));
+    }
+
+    Forecast fc = new MosmixKmlReader().read(MOSMIX_L, "10637").get(0).getForecast(1);
+    assertThat(fc.get("VV", METRE), is(NaN));
+    assertThat(fc.get("TTT", KELVIN), is(closeTo(273.35, 1e-9)));
+  }
+
+  @Test
+  void testSubsetOfElements() throws Exception {
+    MosmixKmlReader reader = new MosmixKmlReader(Arrays.asList("TTT", "VV", "R101"));
+    PointTimeForecast ptfc = reader.read(MOSMIX_L, "10637").get(0);
+    Forecast fc = ptfc.getForecast(1);
+    assertThat(fc.get("VV", METRE), is(30600.0));
+    assertThat(fc.get("VV10", PERCENT), is(NaN));
+    assertThat(fc.get("FF", METRE_PER_SECOND), is(NaN));
+    assertThat(ptfc.getForecast(2).get("VV", METRE), is(24800.0));
+  }
+
+  @Test
+  void testDerivedParameterOfListedElement() throws Exception {
+    PointTimeForecast ptfc = new MosmixKmlReader(Arrays.asList("VV")).read(MOSMIX_L, "10637").get(0);
+    new DerivedParameterEngine(Collections.singletonList(new VisibilityKm())).apply(ptfc);
+    assertThat(ptfc.getForecast(1).getDerived("VVKM"), is(closeTo(30.6, 1e-9)));
+  }
+
+  private static final class VisibilityKm implements DerivedParameter {
+
+    @Override
+    public String getName() {
+      return "VVKM";
+    }
+
+    @Override
+    public String getUnit() {
+      return "km";
+    }
+
+    @Override
+    public Set<String> getElements() {
+      return Collections.singleton("VV");
+    }
+
+    @Override
+    public int getWindow() {
+      return 1;
+    }
+
+    @Override
+    public double[] calculate(Map<String, double[]> series) {
+      return Arrays.stream(series.get("VV")).map(vv -> vv / 1000).toArray();
+    }
+  }
+}
@@ -0,0 +1,173 @@
+package de.wsthst.opendata.mosmix;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.Double.NaN;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static si.uom.NonSI.DEGREE_ANGLE;
+
+class ForecastArchiveTest {
+
+  private static final int RUNS = 12;
+  private static final Instant MODEL_RUN_TIME = Instant.parse("2018-03-29T07:00:00.00Z");
+
+  @Test
+  void testArchiveIdenticalToKml(@TempDir Path tempDir) throws Exception {
+    List<PointTimeForecast> stations;
+    try (InputStream kml = new BufferedInputStream(getClass().getResource("/MOSMIX_S_2018032907_240.kml").openStream())) {
+      stations = new MosmixKmlReader().read(kml, MODEL_RUN_TIME, "10637", "01025");
+    }
+    List<List<PointTimeForecast>> runs = new ArrayList<>();
+    for (int run = 0; run < RUNS; run++) {
+      List<PointTimeForecast> ptfcs = new ArrayList<>();
+      for (PointTimeForecast ptfc : stations) {
+        if (run == 5 && ptfc.getStationId().equals("01025")) continue;
+        ptfcs.add(nextRun(ptfc, run));
+      }
+      runs.add(ptfcs);
+    }
+
+    Path archiveFile = tempDir.resolve("mosmix.mfa");
+    try (ForecastArchive archive = ForecastArchive.open(archiveFile)) {
+      for (int run = 0; run < RUNS / 2; run++) append(archive, runs.get(run));
+    }
+    try (ForecastArchive archive = ForecastArchive.open(archiveFile)) {
+      for (int run = RUNS / 2; run < RUNS; run++) append(archive, runs.get(run));
+      assertThrows(IllegalArgumentException.class, () -> archive.append(MODEL_RUN_TIME));
+    }
+    assertThat(Files.size(archiveFile), lessThan(RUNS * 2L * ForecastColumn.values().length * 240 * Double.BYTES / 10));
+
+    try (ForecastArchive archive = ForecastArchive.open(archiveFile)) {
+      assertThat(archive.getModelRunTimes().size(), is(RUNS));
+      for (List<PointTimeForecast> run : runs) {
+        for (PointTimeForecast expected : run) {
+          PointTimeForecast ptfc = archive.get(expected.getStationId(), expected.getModelRunTime());
+          assertThat(ptfc.getStationLatitude(DEGREE_ANGLE), is(expected.getStationLatitude(DEGREE_ANGLE)));
+          assertEquals(ptfc, expected);
+        }
+      }
+      assertThat(archive.get("01025", MODEL_RUN_TIME.plusSeconds(5 * 3600)), is(nullValue()));
+      assertThat(archive.get("99999", MODEL_RUN_TIME), is(nullValue()));
+
+      List<ForecastArchive.Series> series = archive.query("01025", "TTT", MODEL_RUN_TIME.plusSeconds(3 * 3600), MODEL_RUN_TIME.plusSeconds(10 * 3600));
+      assertThat(series.size(), is(7));
+      for (ForecastArchive.Series runSeries : series) {
+        int run = (int) ((runSeries.getModelRunTime().getEpochSecond() - MODEL_RUN_TIME.getEpochSecond()) / 3600);
+        PointTimeForecast expected = runs.get(run).stream().filter(ptfc -> ptfc.getStationId().equals("01025")).findFirst().get();
+        assertThat(runSeries.getForecastTimes().get(0), is(expected.getForecast(1).getForecastTime()));
+        for (int step = 1; step <= 240; step++) {
+          assertThat(runSeries.getValues()[step - 1], is(ForecastColumn.TTT.get(expected.getForecast(step))));
+        }
+      }
+    }
+  }
+
+  @Test
+  void testFailedAppendDiscarded(@TempDir Path tempDir) throws Exception {
+    List<PointTimeForecast> stations;
+    try (InputStream kml = new BufferedInputStream(getClass().getResource("/MOSMIX_S_2018032907_240.kml").openStream())) {
+      stations = new MosmixKmlReader().read(kml, MODEL_RUN_TIME, "10637", "01025");
+    }
+    Path archiveFile = tempDir.resolve("mosmix.mfa");
+    try (ForecastArchive archive = ForecastArchive.open(archiveFile)) {
+      for (int run = 0; run < 3; run++) append(archive, List.of(nextRun(stations.get(0), run), nextRun(stations.get(1), run)));
+    }
+    long size = Files.size(archiveFile);
+
+    try (ForecastArchive archive = ForecastArchive.open(archiveFile)) {
+      PointTimeForecast invalid = new PointTimeForecast("123456789", 0, 0, 0, MODEL_RUN_TIME.plusSeconds(3 * 3600), List.of());
+      assertThrows(IllegalArgumentException.class, () -> {
+        try (ForecastArchive.RunAppender appender = archive.append(MODEL_RUN_TIME.plusSeconds(3 * 3600))) {
+          List.of(nextRun(stations.get(0), 3), invalid).forEach(appender);
+          appender.commit();
+        }
+      });
+      assertThat(archive.getModelRunTimes().size(), is(3));
+      assertThat(Files.size(archiveFile), is(size));
+      append(archive, List.of(nextRun(stations.get(1), 3)));
+    }
+
+    try (ForecastArchive archive = ForecastArchive.open(archiveFile)) {
+      assertThat(archive.getModelRunTimes().size(), is(4));
+      for (int run = 0; run < 3; run++) {
+        for (PointTimeForecast station : stations) {
+          assertEquals(archive.get(station.getStationId(), MODEL_RUN_TIME.plusSeconds(run * 3600L)), nextRun(station, run));
+        }
+      }
+      assertEquals(archive.get(stations.get(1).getStationId(), MODEL_RUN_TIME.plusSeconds(3 * 3600)), nextRun(stations.get(1), 3));
+      assertThat(archive.get(stations.get(0).getStationId(), MODEL_RUN_TIME.plusSeconds(3 * 3600)), is(nullValue()));
+    }
+  }
+
+  @Test
+  void testCodecSpecialValues() {
+    double[] values = {NaN, 0, -0.0, 0.1 + 0.2, 1e300, Double.POSITIVE_INFINITY, -273.15, Double.MIN_VALUE};
+    double[] references = {1, NaN, 2, 0.3, NaN, NaN, -273.15, 5};
+    for (double[] columnReferences : new double[][] {null, references}) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ForecastColumnCodec.encode(values, columnReferences, out);
+      double[] decoded = new double[values.length];
+      ForecastColumnCodec.decode(ByteBuffer.wrap(out.toByteArray()), columnReferences, decoded);
+      for (int i = 0; i < values.length; i++) {
+        assertThat(Double.doubleToRawLongBits(decoded[i]), is(Double.doubleToRawLongBits(values[i])));
+      }
+    }
+
+    double[] decimals = {NaN, 271.85, 271.85, 271.85, 271.75, NaN, NaN, 101320};
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ForecastColumnCodec.encode(decimals, null, out);
+    double[] decoded = new double[decimals.length];
+    ForecastColumnCodec.decode(ByteBuffer.wrap(out.toByteArray()), null, decoded);
+    assertThat(decoded, is(decimals));
+    assertThat(out.toByteArray()[0], is((byte) 2));
+  }
+
+  /**
+   * Returns the forecast shifted by the given model runs of one hour, with slightly changed temperatures.
+   */
+  private static PointTimeForecast nextRun(PointTimeForecast ptfc, int run) {
+    List<Forecast> forecasts = new ArrayList<>();
+    for (int step = 1; step <= 240; step++) {
+      Forecast original = ptfc.getForecast(Math.min(step + run, 240));
+      Forecast fc = new Forecast(ptfc.getForecast(step).getForecastTime().plusSeconds(run * 3600L));
+      for (ForecastColumn column : ForecastColumn.values()) column.set(fc, column.get(original));
+      if (step % 7 == run % 7) ForecastColumn.TTT.set(fc, ForecastColumn.TTT.get(original) + 0.1 * run);
+      forecasts.add(fc);
+    }
+    return new PointTimeForecast(ptfc.getStationId(), ptfc.getStationLatitude(DEGREE_ANGLE), ptfc.getStationLongitude(DEGREE_ANGLE),
+        ptfc.getStationHeight(MosmixKmlSchema.STATION_HEIGHT_UNIT), ptfc.getModelRunTime().plusSeconds(run * 3600L), forecasts);
+  }
+
+  private static void append(ForecastArchive archive, List<PointTimeForecast> run) throws Exception {
+    try (ForecastArchive.RunAppender appender = archive.append(run.get(0).getModelRunTime())) {
+      run.forEach(appender);
+      appender.commit();
+    }
+  }
+
+  private static void assertEquals(PointTimeForecast ptfc, PointTimeForecast expected) {
+    for (int step = 1; step <= 240; step++) {
+      Forecast expectedFc = expected.getForecast(step);
+      Forecast fc = ptfc.getForecast(step);
+      assertThat(fc.getForecastTime(), is(expectedFc.getForecastTime()));
+      for (ForecastColumn column : ForecastColumn.values()) {
+        assertThat(column + " step " + step, column.get(fc), is(column.get(expectedFc)));
+      }
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package de.wsthst.opendata.mosmix;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+
+class ForecastInterpolatorTest {
+
+  private static final Instant MODEL_RUN_TIME = Instant.parse("2018-03-29T07:00:00Z");
+
+  @Test
+  void testPoints() {
+    List<PointTimeForecast> stations = List.of(
+        station("A", 50, 8, 100, 280, 90, 10),
+        station("B", 50, 9, 500, 270, 180, Double.NaN),
+        station("C", 51, 8, 100, Double.NaN, Double.NaN, 20));
+    ForecastInterpolator interpolator = new ForecastInterpolator(stations, 2, 2, true);
+    List<PointTimeForecast> points = interpolator.interpolate(List.of(
+        new ForecastInterpolator.Point("exact", 50, 8, 300),
+        new ForecastInterpolator.Point("middle", 50, 8.5, Double.NaN),
+        new ForecastInterpolator.Point("north", 50.9, 8, Double.NaN),
+        new ForecastInterpolator.Point("exactMissing", 50, 9, Double.NaN)));
+
+    Forecast exact = points.get(0).getForecast(1);
+    assertThat(points.get(0).getStationId(), is("exact"));
+    assertThat(exact.getTTT(MosmixKmlSchema.T_UNIT), closeTo(280 - 200 * ForecastInterpolator.LAPSE_RATE, 1e-9));
+    assertThat(exact.getDD(MosmixKmlSchema.DD_UNIT), closeTo(90, 1e-9));
+
+    Forecast middle = points.get(1).getForecast(1);
+    assertThat(middle.getTTT(MosmixKmlSchema.T_UNIT), closeTo(275, 1e-6));
+    assertThat(middle.getDD(MosmixKmlSchema.DD_UNIT), closeTo(135, 1e-6));
+    assertThat(middle.getRR1(MosmixKmlSchema.RR_UNIT), closeTo(10, 1e-9));
+    assertThat(middle.getWW(), is(61));
+
+    Forecast north = points.get(2).getForecast(2);
+    assertThat(north.getTTT(MosmixKmlSchema.T_UNIT), closeTo(281, 1e-9));
+    assertThat(north.getRR1(MosmixKmlSchema.RR_UNIT), closeTo(10 + (20 - 10) * 0.9 * 0.9 / (0.9 * 0.9 + 0.1 * 0.1), 0.01));
+    assertThat(north.getWW(), is(62));
+
+    // RR1 missing at B is interpolated from A
+    Forecast exactMissing = points.get(3).getForecast(1);
+    assertThat(exactMissing.getTTT(MosmixKmlSchema.T_UNIT), closeTo(270, 1e-9));
+    assertThat(exactMissing.getRR1(MosmixKmlSchema.RR_UNIT), closeTo(10, 1e-9));
+  }
+
+  @Test
+  void testParallelIdenticalToSequential() {
+    Random random = new Random(5);
+    List<PointTimeForecast> stations = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      stations.add(station("S" + i, 47 + random.nextDouble() * 8, 6 + random.nextDouble() * 9, random.nextDouble() * 1000,
+          260 + random.nextDouble() * 30, random.nextDouble() * 360, random.nextDouble() < 0.2 ? Double.NaN : random.nextDouble() * 5));
+    }
+    List<ForecastInterpolator.Point> points = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      points.add(new ForecastInterpolator.Point("P" + i, 47 + random.nextDouble() * 8, 6 + random.nextDouble() * 9, random.nextDouble() * 1000));
+    }
+    ForkJoinPool sequential = new ForkJoinPool(1);
+    try {
+      List<PointTimeForecast> expected = new ForecastInterpolator(stations, 6, 2, true, sequential).interpolate(points);
+      List<PointTimeForecast> actual = new ForecastInterpolator(stations, 6, 2, true).interpolate(points);
+      for (int i = 0; i < points.size(); i++) {
+        for (int step = 1; step <= 2; step++) {
+          for (ForecastColumn column : ForecastColumn.values()) {
+            assertThat(Double.compare(column.get(actual.get(i).getForecast(step)), column.get(expected.get(i).getForecast(step))), is(0));
+          }
+        }
+      }
+    } finally {
+      sequential.shutdown();
+    }
+  }
+
+  @Test
+  void testGrid(@TempDir Path folder) throws Exception {
+    List<PointTimeForecast> stations = List.of(
+        station("A", 50, 8, 100, 280, 90, 10),
+        station("B", 50, 9, 500, 270, 180, Double.NaN));
+    ForecastInterpolator interpolator = new ForecastInterpolator(stations, 4, 2, false);
+    ForecastInterpolator.Grid grid = new ForecastInterpolator.Grid(50, 8, 51, 9, 0.5);
+    assertThat(grid.getRows(), is(3));
+    assertThat(grid.getColumns(), is(3));
+
+    // TTT, DD, RR1, WW and WW3 have values for 2 steps
+    assertThat(interpolator.writeGrid(grid, folder), is(10));
+    try (DataInputStream in = new DataInputStream(Files.newInputStream(folder.resolve("TTT_002.grid")))) {
+      byte[] magic = new byte[ForecastInterpolator.GRID_MAGIC.length];
+      in.readFully(magic);
+      assertThat(new String(magic, "US-ASCII"), is("MOSMIXGR"));
+      assertThat(in.readInt(), is(ForecastInterpolator.GRID_VERSION));
+      assertThat(in.readInt(), is(3));
+      assertThat(in.readInt(), is(3));
+      assertThat(in.readDouble(), is(50.0));
+      assertThat(in.readDouble(), is(8.0));
+      assertThat(in.readDouble(), is(0.5));
+      assertThat(Instant.ofEpochMilli(in.readLong()), is(MODEL_RUN_TIME));
+      assertThat(Instant.ofEpochMilli(in.readLong()), is(MODEL_RUN_TIME.plus(2, ChronoUnit.HOURS)));
+      float[] values = new float[9];
+      for (int i = 0; i < values.length; i++) values[i] = in.readFloat();
+      assertThat(in.read(), is(-1));
+      assertThat((double) values[0], closeTo(281, 1e-4));
+      assertThat((double) values[2], closeTo(271, 1e-4));
+      assertThat((double) values[7], closeTo(276, 0.1));
+    }
+  }
+
+  /**
+   * Returns a station with two hourly forecasts, the second one 1 K warmer.
+   */
+  private static PointTimeForecast station(String id, double latitude, double longitude, double height, double ttt, double dd, double rr1) {
+    List<Forecast> forecasts = new ArrayList<>();
+    for (int step = 1; step <= 2; step++) {
+      Forecast fc = new Forecast(MODEL_RUN_TIME.plus(step, ChronoUnit.HOURS));
+      fc.setTTT(ttt + step - 1, MosmixKmlSchema.T_UNIT);
+      fc.setDD(dd, MosmixKmlSchema.DD_UNIT);
+      fc.setRR1(rr1, MosmixKmlSchema.RR_UNIT);
+      fc.setWW(60 + step);
+      fc.setWW3(2);
+      forecasts.add(fc);
+    }
+    return new PointTimeForecast(id, latitude, longitude, height, MODEL_RUN_TIME, forecasts);
+  }
+}
@@ -0,0 +1,85 @@
+package de.wsthst.opendata.mosmix;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class ForecastServerTest {
+
+  @Test
+  void testServeStations() throws Exception {
+    Map<String, PointTimeForecast> stations = new HashMap<>();
+    try (InputStream kml = new BufferedInputStream(getClass().getResource("/MOSMIX_S_2018032907_240.kml").openStream())) {
+      new MosmixKmlReader().readAll(kml, Instant.parse("2018-03-29T07:00:00.00Z"), ptfc -> stations.put(ptfc.getStationId(), ptfc));
+    }
+    StringWriter expectedCsv = new StringWriter();
+    try (PrintWriter out = new PrintWriter(expectedCsv)) {
+      new CsvWriter().write(stations.get("10637"), out);
+    }
+
+    try (ForecastServer server = new ForecastServer(0)) {
+      server.update(Instant.parse("2018-03-29T07:00:00.00Z"), stations);
+      server.start();
+      HttpClient client = HttpClient.newHttpClient();
+      String url = "http://localhost:" + server.getPort() + ForecastServer.STATIONS_PATH;
+
+      HttpResponse<String> csv = client.send(HttpRequest.newBuilder(URI.create(url + "10637")).build(), HttpResponse.BodyHandlers.ofString());
+      assertThat(csv.statusCode(), is(200));
+      assertThat(csv.body(), is(expectedCsv.toString()));
+
+      HttpResponse<String> json = client.send(HttpRequest.newBuilder(URI.create(url + "10637?format=json")).build(), HttpResponse.BodyHandlers.ofString());
+      assertThat(json.statusCode(), is(200));
+      assertThat(json.body(), startsWith("{\n \"N\": [\n  \"---\","));
+      assertThat(json.body(), containsString("\"modelrun\": \"07 UTC\""));
+
+      HttpResponse<String> missing = client.send(HttpRequest.newBuilder(URI.create(url + "99999")).build(), HttpResponse.BodyHandlers.ofString());
+      assertThat(missing.statusCode(), is(404));
+    }
+  }
+
+  @Test
+  void testServeDerivedParameters() throws Exception {
+    Map<String, PointTimeForecast> stations = new HashMap<>();
+    DerivedParameterEngine engine = new DerivedParameterEngine(List.of(StandardDerivedParameter.RH, StandardDerivedParameter.TX12));
+    try (InputStream kml = new BufferedInputStream(getClass().getResource("/MOSMIX_S_2018032907_240.kml").openStream())) {
+      new MosmixKmlReader().readAll(kml, Instant.parse("2018-03-29T07:00:00.00Z"), ptfc -> {
+        engine.apply(ptfc);
+        stations.put(ptfc.getStationId(), ptfc);
+      });
+    }
+    StringWriter expectedCsv = new StringWriter();
+    try (PrintWriter out = new PrintWriter(expectedCsv)) {
+      new CsvWriter(engine.getParameters()).write(stations.get("10637"), out);
+    }
+
+    try (ForecastServer server = new ForecastServer(0, engine.getParameters())) {
+      server.update(Instant.parse("2018-03-29T07:00:00.00Z"), stations);
+      server.start();
+      HttpClient client = HttpClient.newHttpClient();
+      String url = "http://localhost:" + server.getPort() + ForecastServer.STATIONS_PATH;
+
+      HttpResponse<String> csv = client.send(HttpRequest.newBuilder(URI.create(url + "10637")).build(), HttpResponse.BodyHandlers.ofString());
+      assertThat(csv.body(), is(expectedCsv.toString()));
+      assertThat(csv.body(), containsString(";RH;TX12"));
+
+      HttpResponse<String> json = client.send(HttpRequest.newBuilder(URI.create(url + "10637?format=json")).build(), HttpResponse.BodyHandlers.ofString());
+      assertThat(json.body(), containsString("\"RH\""));
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package de.wsthst.opendata.mosmix;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class JsonWriterTest {
+
+  @Test
+  void testIdenticalToMosmix2Json() throws Exception {
+    PointTimeForecast ptfc = read("10637");
+    StringBuilder json = new StringBuilder();
+    new JsonWriter().write(ptfc, json);
+
+    // mosmix_10637.json is the output of mosmix2json.py for mosmix_10637.csv
+    String expected;
+    try (InputStream in = getClass().getResourceAsStream("/mosmix_10637.json")) {
+      expected = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+    assertThat(json.toString(), is(expected));
+  }
+
+  @Test
+  void testDerivedParameters() throws Exception {
+    PointTimeForecast ptfc = read("10637");
+    DerivedParameterEngine engine = new DerivedParameterEngine(List.of(StandardDerivedParameter.RH));
+    engine.apply(ptfc);
+    StringBuilder json = new StringBuilder();
+    new JsonWriter(engine.getParameters()).write(ptfc, json);
+
+    assertThat(json.toString(), containsString("\n \"RH\": [\n  \"---\","));
+    assertThat(json.toString(), containsString("\n \"RH_unit\": \"%\","));
+  }
+
+  private PointTimeForecast read(String stationId) throws Exception {
+    try (InputStream kml = new BufferedInputStream(getClass().getResource("/MOSMIX_S_2018032907_240.kml").openStream())) {
+      Collection<PointTimeForecast> ptfcs = new MosmixKmlReader().read(kml, Instant.parse("2018-03-29T07:00:00.00Z"), stationId);
+      return ptfcs.iterator().next();
+    }
+  }
+}
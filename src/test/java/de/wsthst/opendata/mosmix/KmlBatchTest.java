@@ -0,0 +1,42 @@
+package de.wsthst.opendata.mosmix;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+class KmlBatchTest {
+
+  @Test
+  void testResolveAndRun(@TempDir Path tempDir) throws Exception {
+    for (String name : new String[]{"MOSMIX_S_2018032908_240.kmz", "MOSMIX_S_2018032907_240.kml", "MOSMIX_L_2019021903_10637.kml", "readme.txt"}) {
+      Files.createFile(tempDir.resolve(name));
+    }
+
+    assertThat(KmlBatch.isBatch(tempDir), is(true));
+    assertThat(KmlBatch.isBatch(tempDir.resolve("MOSMIX_S_*.kml")), is(true));
+    assertThat(KmlBatch.isBatch(tempDir.resolve("MOSMIX_S_2018032907_240.kml")), is(false));
+    assertThat(KmlBatch.resolve(tempDir.resolve("MOSMIX_S_*")), contains(
+        tempDir.resolve("MOSMIX_S_2018032907_240.kml"), tempDir.resolve("MOSMIX_S_2018032908_240.kmz")));
+
+    List<Path> files = KmlBatch.resolve(tempDir);
+    assertThat(files.size(), is(3));
+    List<KmlBatch.Result> results = new KmlBatch(2).run(files, file -> {
+      if (MosmixKmlInput.isKmz(file)) throw new IOException("broken");
+      return 1;
+    });
+    assertThat(results.size(), is(3));
+    assertThat(results.get(0).getFile(), is(tempDir.resolve("MOSMIX_L_2019021903_10637.kml")));
+    assertThat(results.get(0).isSuccess(), is(true));
+    assertThat(results.get(0).getStations(), is(1));
+    assertThat(results.get(2).isSuccess(), is(false));
+    assertThat(results.get(2).getError().getMessage(), is("broken"));
+  }
+}
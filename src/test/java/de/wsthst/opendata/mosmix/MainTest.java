@@ -0,0 +1,46 @@
+package de.wsthst.opendata.mosmix;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+class MainTest {
+
+  private static final Instant MODEL_RUN_TIME = Instant.parse("2018-03-29T07:00:00Z");
+
+  @Test
+  void testArchiveLatestKmz(@TempDir Path tempDir) throws Exception {
+    Path kmzFile = latestKmz(tempDir);
+    Path archiveFile = tempDir.resolve("mosmix.mfa");
+    Main.main(new String[] {"--kml", kmzFile.toString(), "--archive", archiveFile.toString()});
+
+    try (ForecastArchive archive = ForecastArchive.open(archiveFile)) {
+      assertThat(archive.getModelRunTimes(), contains(MODEL_RUN_TIME));
+      assertThat(archive.get("10637", MODEL_RUN_TIME).getForecast(1).getTTT(MosmixKmlSchema.T_UNIT), is(284.05));
+    }
+  }
+
+  /**
+   * Writes the MOSMIX_S test file into a KMZ archive named like the latest model run of the DWD server.
+   */
+  static Path latestKmz(Path folder) throws Exception {
+    Path kmzFile = folder.resolve("MOSMIX_S_LATEST_240.kmz");
+    try (InputStream kml = MainTest.class.getResourceAsStream("/MOSMIX_S_2018032907_240.kml");
+         ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(kmzFile))) {
+      zip.putNextEntry(new ZipEntry("MOSMIX_S_2018032907_240.kml"));
+      kml.transferTo(zip);
+      zip.closeEntry();
+    }
+    return kmzFile;
+  }
+}
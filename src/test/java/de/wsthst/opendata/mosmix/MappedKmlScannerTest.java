@@ -0,0 +1,96 @@
+package de.wsthst.opendata.mosmix;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Compares the zero-copy engine with the StAX engine.
+ */
+class MappedKmlScannerTest {
+
+  private static final Path MOSMIX_S = Paths.get("src/test/resources/MOSMIX_S_2018032907_240.kml");
+  private static final Path MOSMIX_L = Paths.get("src/test/resources/MOSMIX_L_2019021903_10637.kml");
+
+  @Test
+  void testIdenticalToStax() throws Exception {
+    for (Path kmlFile : Arrays.asList(MOSMIX_S, MOSMIX_L)) {
+      List<Object> expected = readAll(kmlFile, MosmixKmlSchema.ELEMENT_SYMBOLS, 1, MosmixKmlReader.Engine.STAX);
+      assertThat(readAll(kmlFile, MosmixKmlSchema.ELEMENT_SYMBOLS, 1, MosmixKmlReader.Engine.MAPPED), is(expected));
+      assertThat(readAll(kmlFile, MosmixKmlSchema.ELEMENT_SYMBOLS, 3, MosmixKmlReader.Engine.MAPPED), is(expected));
+    }
+    List<String> elements = Arrays.asList("TTT", "RR1c", "ww");
+    assertThat(readAll(MOSMIX_S, elements, 1, MosmixKmlReader.Engine.MAPPED), is(readAll(MOSMIX_S, elements, 1, MosmixKmlReader.Engine.STAX)));
+  }
+
+  @Test
+  void testIdenticalToStaxSynthetic(@TempDir Path folder) throws Exception {
+    Path kmlFile = new SyntheticKml(SyntheticKml.Product.L, 40, 12, 7, 0.1).write(folder);
+    assertThat(readAll(kmlFile, MosmixKmlSchema.ELEMENT_SYMBOLS, 2, MosmixKmlReader.Engine.MAPPED),
+        is(readAll(kmlFile, MosmixKmlSchema.ELEMENT_SYMBOLS, 1, MosmixKmlReader.Engine.STAX)));
+  }
+
+  @Test
+  void testReadStations() throws Exception {
+    MosmixKmlReader reader = new MosmixKmlReader(MosmixKmlSchema.ELEMENT_SYMBOLS, 1, MosmixKmlReader.Engine.MAPPED);
+    List<PointTimeForecast> ptfcs = reader.read(MOSMIX_S, "10637", "99999");
+    assertThat(ptfcs.size(), is(1));
+    assertThat(ptfcs.get(0).getStationId(), is("10637"));
+    assertThat(reader.getMissingStationIds(), contains("99999"));
+    assertThat(reader.getMetrics().getPlacemarksScanned(), is(2L));
+  }
+
+  @Test
+  void testWindows(@TempDir Path folder) throws Exception {
+    Path kmlFile = new SyntheticKml(SyntheticKml.Product.S, 30, 6, 3, 0).write(folder);
+    List<String> stationIds = new ArrayList<>();
+    try (MappedKmlScanner scanner = new MappedKmlScanner(kmlFile, 20_000)) {
+      assertThat(scanner.readForecastTimes().size(), is(6));
+      MappedKmlScanner.Placemark placemark;
+      while ((placemark = scanner.next()) != null) {
+        stationIds.add(placemark.getStationId());
+        assertThat(placemark.readCoordinates().length, is(3));
+      }
+    }
+    assertThat(stationIds.size(), is(30));
+    assertThat(stationIds.get(29), is(SyntheticKml.stationId(29)));
+
+    try (MappedKmlScanner scanner = new MappedKmlScanner(kmlFile, 2_000)) {
+      scanner.readForecastTimes();
+      assertThrows(IOException.class, () -> {
+        while (scanner.next() != null) ;
+      });
+    }
+  }
+
+  /**
+   * Reads all stations into a comparable list of station attributes and all values of all forecasts.
+   */
+  private static List<Object> readAll(Path kmlFile, Collection<String> elements, int threads, MosmixKmlReader.Engine engine) throws Exception {
+    List<Object> result = new ArrayList<>();
+    new MosmixKmlReader(elements, threads, engine).readAll(kmlFile, ptfc -> {
+      result.add(ptfc.getStationId());
+      result.add(ptfc.getModelRunTime());
+      result.add(ptfc.getStationLatitude(MosmixKmlSchema.STATION_COORDINATES_UNIT));
+      result.add(ptfc.getStationLongitude(MosmixKmlSchema.STATION_COORDINATES_UNIT));
+      result.add(ptfc.getStationHeight(MosmixKmlSchema.STATION_HEIGHT_UNIT));
+      for (Forecast fc : ptfc) {
+        result.add(fc.getForecastTime());
+        for (ForecastColumn column : ForecastColumn.values()) result.add(column.get(fc));
+      }
+    });
+    return result;
+  }
+}
@@ -1,7 +1,10 @@
 package de.wsthst.opendata.mosmix;
 
+import org.apache.commons.math3.util.Precision;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.Random;
 import java.util.stream.IntStream;
 
 import static java.lang.Double.NaN;
@@ -108,4 +111,43 @@ class MeteoCalculatorTest {
     calculator.addTTT(24);
     assertThat(calculator.getTM(), is(12.5));
   }
-}
\ No newline at end of file
+
+  @Test
+  void testWW3Window() {
+    MeteoCalculator calculator = new MeteoCalculator();
+    int[] ww = {61, 3, 2, 1, 80, 2, 2, 2};
+    int[] expected = {0, 0, 61, 3, 80, 80, 80, 2};
+    for (int step = 0; step < ww.length; step++) {
+      calculator.addWW(ww[step]);
+      assertThat(calculator.getWW3(), is(expected[step]));
+    }
+    assertThat(MeteoCalculator.maximums3(ww), is(expected));
+  }
+
+  @Test
+  void testSeries() {
+    Random random = new Random(42);
+    double[] rr1 = new double[240];
+    double[] ttt = new double[240];
+    for (int step = 0; step < rr1.length; step++) {
+      rr1[step] = step == 100 ? NaN : random.nextInt(500) / 100.0;
+      ttt[step] = 273.15 + random.nextInt(300) / 10.0;
+    }
+
+    MeteoCalculator calculator = new MeteoCalculator();
+    double[] rr24 = MeteoCalculator.sums(rr1, 24);
+    double[] tm = MeteoCalculator.dailyMeans(ttt);
+    for (int step = 0; step < rr1.length; step++) {
+      calculator.addRR1(rr1[step]);
+      calculator.addTTT(ttt[step]);
+      assertThat(rr24[step], is(calculator.getRR24()));
+      assertThat(tm[step], is(calculator.getTM()));
+      if (step >= 23) {
+        assertThat(rr24[step], is(Arrays.stream(rr1, step - 23, step + 1).sum()));
+        assertThat(tm[step], is(Precision.round(Arrays.stream(ttt, step - 23, step + 1).average().getAsDouble(), 2)));
+      } else {
+        assertThat(rr24[step], is(NaN));
+      }
+    }
+  }
+}
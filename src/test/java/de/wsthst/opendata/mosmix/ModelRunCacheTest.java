@@ -0,0 +1,73 @@
+package de.wsthst.opendata.mosmix;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static si.uom.NonSI.DEGREE_ANGLE;
+import static tec.units.ri.unit.Units.METRE;
+
+class ModelRunCacheTest {
+
+  @Test
+  void testCacheIdenticalToKml(@TempDir Path tempDir) throws Exception {
+    Instant modelRunTime = Instant.parse("2018-03-29T07:00:00.00Z");
+    List<PointTimeForecast> expected;
+    try (InputStream kml = new BufferedInputStream(getClass().getResource("/MOSMIX_S_2018032907_240.kml").openStream())) {
+      expected = new MosmixKmlReader().read(kml, modelRunTime, "01025", "10637");
+    }
+
+    Path cacheFile = tempDir.resolve("MOSMIX_S_2018032907_240.mrc");
+    try (ModelRunCacheWriter writer = new ModelRunCacheWriter(cacheFile)) {
+      expected.forEach(writer);
+      writer.commit();
+    }
+
+    try (ModelRunCache cache = ModelRunCache.open(cacheFile)) {
+      assertThat(cache.getModelRunTime(), is(modelRunTime));
+      assertThat(cache.getStationIds(), contains("01025", "10637"));
+      assertThat(cache.get("99999"), is(nullValue()));
+      for (PointTimeForecast expectedPtfc : expected) {
+        PointTimeForecast ptfc = cache.get(expectedPtfc.getStationId());
+        assertThat(ptfc.getModelRunTime(), is(modelRunTime));
+        assertThat(ptfc.getStationLatitude(DEGREE_ANGLE), is(expectedPtfc.getStationLatitude(DEGREE_ANGLE)));
+        assertThat(ptfc.getStationLongitude(DEGREE_ANGLE), is(expectedPtfc.getStationLongitude(DEGREE_ANGLE)));
+        assertThat(ptfc.getStationHeight(METRE), is(expectedPtfc.getStationHeight(METRE)));
+        for (int step = 1; step <= 240; step++) {
+          Forecast expectedFc = expectedPtfc.getForecast(step);
+          Forecast fc = ptfc.getForecast(step);
+          assertThat(fc.getForecastTime(), is(expectedFc.getForecastTime()));
+          for (ForecastColumn column : ForecastColumn.values()) {
+            assertThat(column + " step " + step, column.get(fc), is(column.get(expectedFc)));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void testUncommittedCacheDeleted(@TempDir Path tempDir) throws Exception {
+    Path cacheFile = tempDir.resolve("MOSMIX_S_2018032907_240.mrc");
+    Path kmlFile = tempDir.resolve("MOSMIX_S_2018032907_240.kml");
+    byte[] kml = getClass().getResourceAsStream("/MOSMIX_S_2018032907_240.kml").readAllBytes();
+    Files.write(kmlFile, Arrays.copyOf(kml, kml.length * 3 / 4));
+
+    try (ModelRunCacheWriter writer = new ModelRunCacheWriter(cacheFile)) {
+      assertThrows(XMLStreamException.class, () -> new MosmixKmlReader().readAll(kmlFile, writer));
+    }
+    assertThat(Files.exists(cacheFile), is(false));
+  }
+}
@@ -0,0 +1,41 @@
+package de.wsthst.opendata.mosmix;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class ModelRunWatcherTest {
+
+  @Test
+  void testReportCompletedModelRuns(@TempDir Path tempDir) throws Exception {
+    Path kml = Paths.get(getClass().getResource("/MOSMIX_S_2018032907_240.kml").toURI());
+    Files.copy(kml, tempDir.resolve("MOSMIX_S_2018032906_240.kml"));
+    Files.copy(kml, tempDir.resolve("MOSMIX_S_2018032905_240.kml"));
+
+    BlockingQueue<Path> completed = new LinkedBlockingQueue<>();
+    ModelRunWatcher watcher = new ModelRunWatcher(tempDir, completed::add);
+    try {
+      assertThat(completed.poll(10, TimeUnit.SECONDS), is(tempDir.resolve("MOSMIX_S_2018032906_240.kml")));
+
+      Files.writeString(tempDir.resolve("readme.txt"), "no model run");
+      Files.copy(kml, tempDir.resolve("MOSMIX_S_2018032907_240.kml"));
+      assertThat(completed.poll(10, TimeUnit.SECONDS), is(tempDir.resolve("MOSMIX_S_2018032907_240.kml")));
+      assertThat(completed.poll(3, TimeUnit.SECONDS), is(nullValue()));
+    } finally {
+      watcher.close();
+    }
+
+    Files.copy(kml, tempDir.resolve("MOSMIX_S_2018032908_240.kml"));
+    assertThat(completed.poll(3, TimeUnit.SECONDS), is(nullValue()));
+  }
+}
@@ -3,16 +3,25 @@ package de.wsthst.opendata.mosmix;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.BufferedInputStream;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static java.lang.Double.NaN;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static si.uom.NonSI.DEGREE_ANGLE;
 import static tec.units.ri.unit.MetricPrefix.HECTO;
@@ -42,6 +51,96 @@ public class MosmixKmlReaderTest {
   public void testReadAllStations() throws Exception {
     Collection<PointTimeForecast> ptfcs = reader.read(kmlTestData, modelRunTime, "10637", "01025");
     assertThat(ptfcs.size(), is(2));
+    assertThat(reader.getMissingStationIds().isEmpty(), is(true));
+  }
+
+  @Test
+  public void testReadAllStationsStreaming() throws Exception {
+    List<String> stationIds = new ArrayList<>();
+    reader.readAll(kmlTestData, modelRunTime, ptfc -> stationIds.add(ptfc.getStationId()));
+    assertThat(stationIds, contains("01025", "10637"));
+  }
+
+  @Test
+  public void testMissingStation() throws Exception {
+    Collection<PointTimeForecast> ptfcs = reader.read(kmlTestData, modelRunTime, "01025", "99999");
+    assertThat(ptfcs.size(), is(1));
+    assertThat(reader.getMissingStationIds(), contains("99999"));
+  }
+
+  @Test
+  public void testReadKmz(@TempDir Path tempDir) throws Exception {
+    Path kmzFile = tempDir.resolve("MOSMIX_S_LATEST_240.kmz");
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(kmzFile))) {
+      zip.putNextEntry(new ZipEntry("MOSMIX_S_2018032907_240.kml"));
+      kmlTestData.transferTo(zip);
+      zip.closeEntry();
+    }
+
+    Collection<PointTimeForecast> ptfcs = reader.read(kmzFile, "10637");
+    assertThat(ptfcs.size(), is(1));
+    PointTimeForecast ptfc = ptfcs.iterator().next();
+    assertThat(ptfc.getModelRunTime(), is(modelRunTime));
+    assertThat(ptfc.getForecast(1).getTTT(KELVIN), is(284.05));
+  }
+
+  @Test
+  public void testReadSelectedElements() throws Exception {
+    reader = new MosmixKmlReader(Arrays.asList("TTT", "RR1c"));
+    PointTimeForecast ptfc = reader.read(kmlTestData, modelRunTime, "10637").get(0);
+
+    assertThat("TTT", ptfc.getForecast(1).getTTT(KELVIN), is(284.05));
+    assertThat("TM step 24", ptfc.getForecast(24).getTM(KELVIN), is(286.04));
+    assertThat("RR24 step 24", ptfc.getForecast(24).getRR24(MILLI(METRE)), is(1.5));
+    assertThat("PPPP", ptfc.getForecast(1).getPPPP(HECTO(PASCAL)), is(NaN));
+    assertThat("SUND24 step 24", ptfc.getForecast(24).getSUND24(SECOND), is(NaN));
+    assertThat("WW3 step 6", ptfc.getForecast(6).getWW3(), is(Forecast.NO_CODE));
+  }
+
+  @Test
+  public void testReadParallel() throws Exception {
+    URL kmlFile = this.getClass().getResource("/MOSMIX_S_2018032907_240.kml");
+    List<PointTimeForecast> sequential;
+    try (InputStream kml = new BufferedInputStream(kmlFile.openStream())) {
+      sequential = new MosmixKmlReader().read(kml, modelRunTime, "10637", "01025");
+    }
+    reader = new MosmixKmlReader(MosmixKmlSchema.ELEMENT_SYMBOLS, 4);
+    List<PointTimeForecast> parallel = reader.read(kmlTestData, modelRunTime, "10637", "01025", "99999");
+
+    assertThat(parallel.size(), is(2));
+    assertThat(reader.getMissingStationIds(), contains("99999"));
+    for (int i = 0; i < parallel.size(); i++) {
+      assertThat(parallel.get(i).getStationId(), is(sequential.get(i).getStationId()));
+      assertThat(parallel.get(i).getStationHeight(METRE), is(sequential.get(i).getStationHeight(METRE)));
+      for (int step = 1; step <= 240; step++) {
+        Forecast expected = sequential.get(i).getForecast(step);
+        Forecast actual = parallel.get(i).getForecast(step);
+        assertThat(actual.getForecastTime(), is(expected.getForecastTime()));
+        assertThat(actual.getTTT(KELVIN), is(expected.getTTT(KELVIN)));
+        assertThat(actual.getRR24(MILLI(METRE)), is(expected.getRR24(MILLI(METRE))));
+        assertThat(actual.getWW3(), is(expected.getWW3()));
+      }
+    }
+  }
+
+  @Test
+  public void testReadWithIndex(@TempDir Path tempDir) throws Exception {
+    Path kmlFile = tempDir.resolve("MOSMIX_S_2018032907_240.kml");
+    Files.copy(kmlTestData, kmlFile);
+    PlacemarkIndex.build(kmlFile);
+    PlacemarkIndex index = PlacemarkIndex.open(kmlFile);
+    assertThat(index.getStationIds(), contains("01025", "10637"));
+
+    List<PointTimeForecast> ptfcs = new ArrayList<>();
+    reader.read(index, ptfcs::add, "10637", "99999");
+    assertThat(ptfcs.size(), is(1));
+    assertThat(reader.getMissingStationIds(), contains("99999"));
+    PointTimeForecast ptfc = ptfcs.get(0);
+    assertThat(ptfc.getStationId(), is("10637"));
+    assertThat(ptfc.getModelRunTime(), is(modelRunTime));
+    assertThat(ptfc.getStationHeight(METRE), is(111.0));
+    assertThat("PPPP step 240", ptfc.getForecast(240).getPPPP(HECTO(PASCAL)), is(1018.50));
+    assertThat("SUND24 step 24", ptfc.getForecast(24).getSUND24(SECOND), is(16740.0));
   }
 
   @Test
@@ -52,8 +151,8 @@ public class MosmixKmlReaderTest {
     PointTimeForecast ptfc = ptfcs.iterator().next();
     assertThat(ptfc.getStationId(), is("10637"));
     assertThat(ptfc.getModelRunTime(), is(modelRunTime));
-    assertThat(ptfc.getStationLatitude(DEGREE_ANGLE), is(8.6));
-    assertThat(ptfc.getStationLongitude(DEGREE_ANGLE), is(50.05));
+    assertThat(ptfc.getStationLatitude(DEGREE_ANGLE), is(50.05));
+    assertThat(ptfc.getStationLongitude(DEGREE_ANGLE), is(8.6));
     assertThat(ptfc.getStationHeight(METRE), is(111.0));
 
     Forecast fc = ptfc.getForecast(1);
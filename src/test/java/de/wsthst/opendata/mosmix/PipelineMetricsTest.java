@@ -0,0 +1,81 @@
+package de.wsthst.opendata.mosmix;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+
+class PipelineMetricsTest {
+
+  private static final String EVENT_PREFIX = "de.wsthst.opendata.mosmix.";
+
+  private final Path kmlFile = Paths.get("src/test/resources/MOSMIX_S_2018032907_240.kml");
+
+  @Test
+  void testCounters() throws Exception {
+    for (int threads : new int[] {1, 2}) {
+      MosmixKmlReader reader = new MosmixKmlReader(MosmixKmlSchema.ELEMENT_SYMBOLS, threads);
+      reader.readAll(kmlFile, ptfc -> {});
+      PipelineMetrics metrics = reader.getMetrics();
+      assertThat(metrics.getPlacemarksScanned(), is(2L));
+      assertThat(metrics.getStationsMatched(), is(2L));
+      assertThat(metrics.getValuesParsed(), is(2L * MosmixKmlSchema.ELEMENT_SYMBOLS.size() * 240));
+      assertThat(metrics.getBytesRead(), greaterThan(200_000L));
+      assertThat(metrics.getPhase(PipelineMetrics.Phase.STATION).toNanos(), greaterThan(0L));
+      assertThat(metrics.getPhase(PipelineMetrics.Phase.DERIVED).toNanos(), greaterThan(0L));
+    }
+  }
+
+  @Test
+  void testCountersAddUp() throws Exception {
+    PipelineMetrics metrics = new PipelineMetrics();
+    MosmixKmlReader reader = new MosmixKmlReader();
+    reader.setMetrics(metrics);
+    reader.read(kmlFile, "01025");
+    reader.read(kmlFile, "10637");
+    assertThat(metrics.getPlacemarksScanned(), is(3L));
+    assertThat(metrics.getStationsMatched(), is(2L));
+
+    String json = metrics.toJson(Duration.ofMillis(500));
+    assertThat(json, containsString("\"elapsedSeconds\": 0.500,"));
+    assertThat(json, containsString("\"stationsPerSecond\": 4.000,"));
+    assertThat(json, containsString("\"stationMaterialization\": "));
+  }
+
+  @Test
+  void testEvents(@TempDir Path folder) throws Exception {
+    Path file = folder.resolve("mosmix.jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable(EVENT_PREFIX + "Read").withoutThreshold();
+      recording.enable(EVENT_PREFIX + "Station").withoutThreshold();
+      recording.enable(EVENT_PREFIX + "CalculatedElements").withoutThreshold();
+      recording.start();
+      new MosmixKmlReader().readAll(kmlFile, ptfc -> {});
+      recording.stop();
+      recording.dump(file);
+    }
+    List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+    List<String> stationIds = events.stream().filter(event -> event.getEventType().getName().equals(EVENT_PREFIX + "Station"))
+        .map(event -> event.getString("stationId")).collect(Collectors.toList());
+    assertThat(stationIds, contains("01025", "10637"));
+    List<Integer> calculatedSteps = events.stream().filter(event -> event.getEventType().getName().equals(EVENT_PREFIX + "CalculatedElements"))
+        .map(event -> event.getInt("steps")).collect(Collectors.toList());
+    assertThat(calculatedSteps, contains(240, 240));
+    RecordedEvent read = events.stream().filter(event -> event.getEventType().getName().equals(EVENT_PREFIX + "Read")).findFirst().orElseThrow();
+    assertThat(read.getLong("stationsMatched"), is(2L));
+    assertThat(read.getString("modelRunTime"), is("2018-03-29T07:00:00Z"));
+  }
+}
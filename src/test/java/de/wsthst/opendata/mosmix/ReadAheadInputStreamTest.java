@@ -0,0 +1,94 @@
+package de.wsthst.opendata.mosmix;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ReadAheadInputStreamTest {
+
+  @Test
+  void testContent() throws Exception {
+    byte[] bytes = new byte[100_003];
+    new Random(5).nextBytes(bytes);
+    try (InputStream in = new ReadAheadInputStream(new ByteArrayInputStream(bytes), 1000, 3)) {
+      assertArrayEquals(bytes, in.readAllBytes());
+      assertThat(in.read(), is(-1));
+    }
+    try (InputStream in = new ReadAheadInputStream(new ByteArrayInputStream(bytes), 1 << 16, 2)) {
+      for (int i = 0; i < 10; i++) assertThat(in.read(), is(bytes[i] & 0xff));
+      byte[] rest = in.readAllBytes();
+      assertThat(rest.length, is(bytes.length - 10));
+      assertThat(rest[0], is(bytes[10]));
+    }
+  }
+
+  @Test
+  void testFailure() throws Exception {
+    InputStream failing = new InputStream() {
+      private int count;
+
+      @Override
+      public int read() throws IOException {
+        if (++count > 2500) throw new IOException("Broken archive");
+        return 'x';
+      }
+    };
+    try (InputStream in = new ReadAheadInputStream(failing, 1000, 2)) {
+      IOException e = assertThrows(IOException.class, in::readAllBytes);
+      assertThat(e.getCause().getMessage(), is("Broken archive"));
+      assertThat(assertThrows(IOException.class, in::read).getCause().getMessage(), is("Broken archive"));
+    }
+  }
+
+  /**
+   * Closing before the end stops reading ahead, though all buffers are filled.
+   */
+  @Test
+  void testCloseEarly() throws Exception {
+    InputStream endless = new InputStream() {
+      @Override
+      public int read() {
+        return 'x';
+      }
+    };
+    InputStream in = new ReadAheadInputStream(endless, 100, 2);
+    assertThat(in.read(), is((int) 'x'));
+    in.close();
+  }
+
+  /**
+   * Text split across buffers is parsed like a single text, here by buffers smaller than a station name.
+   */
+  @Test
+  void testReadStations() throws Exception {
+    Path kmlFile = Paths.get("src/test/resources/MOSMIX_S_2018032907_240.kml");
+    Instant modelRunTime = MosmixKmlInput.parseModelRunTime(kmlFile.getFileName().toString());
+    byte[] bytes = Files.readAllBytes(kmlFile);
+    List<String> stationIds = new ArrayList<>();
+    List<Double> latitudes = new ArrayList<>();
+    try (InputStream in = new ReadAheadInputStream(new ByteArrayInputStream(bytes), 3, 4)) {
+      new MosmixKmlReader().readAll(in, modelRunTime, ptfc -> {
+        stationIds.add(ptfc.getStationId());
+        latitudes.add(ptfc.getStationLatitude(MosmixKmlSchema.STATION_COORDINATES_UNIT));
+        assertThat(ptfc.getForecast(1).getForecastTime(), is(Instant.parse("2018-03-29T08:00:00Z")));
+      });
+    }
+    assertThat(stationIds, contains("01025", "10637"));
+    assertThat(latitudes, contains(69.68, 50.05));
+  }
+}
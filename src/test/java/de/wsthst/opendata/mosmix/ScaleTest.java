@@ -0,0 +1,191 @@
+package de.wsthst.opendata.mosmix;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * Reads synthetic KML files of production size, by default 5400 stations with 24 forecast steps, and checks time and
+ * heap budgets. The size is set by the system properties <code>mosmix.scale.stations</code> and
+ * <code>mosmix.scale.steps</code>, time budgets are multiplied by <code>mosmix.scale.timeFactor</code> on slow machines.
+ * Tagged "scale", the tests are run by the Maven profile <code>scale</code> only.
+ */
+@Tag("scale")
+class ScaleTest {
+
+  private static final int STATIONS = Integer.getInteger("mosmix.scale.stations", 5400);
+  private static final int STEPS = Integer.getInteger("mosmix.scale.steps", 24);
+  private static final double TIME_FACTOR = Double.parseDouble(System.getProperty("mosmix.scale.timeFactor", "1"));
+  private static final double NANOS_PER_VALUE = 3000;
+  private static final long STREAMING_HEAP_BYTES = 16L << 20;
+  private static final long BYTES_PER_FORECAST = 384;
+
+  @TempDir
+  static Path folder;
+  private static Path mosmixS;
+  private static Path mosmixL;
+  private static long valuesS;
+  private static long valuesL;
+
+  @BeforeAll
+  static void generate() throws Exception {
+    SyntheticKml s = new SyntheticKml(SyntheticKml.Product.S, STATIONS, STEPS, 1, 0.05);
+    mosmixS = s.write(folder);
+    valuesS = (long) STATIONS * STEPS * s.getElements().size();
+    SyntheticKml l = new SyntheticKml(SyntheticKml.Product.L, STATIONS, STEPS, 2, 0.05);
+    mosmixL = l.write(folder);
+    valuesL = (long) STATIONS * STEPS * l.getElements().size();
+  }
+
+  @Test
+  void testStreamMosmixS() throws Exception {
+    assertStreaming(mosmixS, valuesS);
+  }
+
+  @Test
+  void testStreamMosmixL() throws Exception {
+    assertStreaming(mosmixL, valuesL);
+  }
+
+  /**
+   * Reads all stations, calculates all derived parameters and renders CSV, holding no station longer than needed.
+   */
+  private static void assertStreaming(Path kmlFile, long values) throws Exception {
+    DerivedParameterEngine engine = new DerivedParameterEngine(Arrays.asList(StandardDerivedParameter.values()));
+    CsvWriter writer = new CsvWriter(engine.getParameters());
+    WritableByteChannel out = Channels.newChannel(OutputStream.nullOutputStream());
+    AtomicInteger stations = new AtomicInteger();
+    long start;
+    long peakHeap;
+    try (HeapMonitor heap = new HeapMonitor()) {
+      start = System.nanoTime();
+      new MosmixKmlReader().readAll(kmlFile, ptfc -> {
+        assertThat(ptfc.getForecast(STEPS).getForecastTime(), is(ptfc.getModelRunTime().plusSeconds(3600L * STEPS)));
+        engine.apply(ptfc);
+        try {
+          writer.write(ptfc, out);
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+        stations.incrementAndGet();
+      });
+      peakHeap = heap.getPeak();
+    }
+    assertThat(stations.get(), is(STATIONS));
+    assertTime(start, values);
+    assertThat("Peak heap after GC", peakHeap, lessThan(STREAMING_HEAP_BYTES));
+  }
+
+  @Test
+  void testReadLastStation() throws Exception {
+    String stationId = SyntheticKml.stationId(STATIONS - 1);
+    long start = System.nanoTime();
+    List<PointTimeForecast> stations = new MosmixKmlReader().read(mosmixS, stationId);
+    assertTime(start, valuesS);
+    assertThat(stations.size(), is(1));
+    assertThat(stations.get(0).getStationId(), is(stationId));
+  }
+
+  @Test
+  void testRetainedHeap() throws Exception {
+    List<PointTimeForecast> stations = new ArrayList<>(STATIONS);
+    long before = usedHeapAfterGc();
+    new MosmixKmlReader().readAll(mosmixS, stations::add);
+    long retained = usedHeapAfterGc() - before;
+    assertThat(stations.size(), is(STATIONS));
+    assertThat("Retained bytes per forecast", retained / ((long) STATIONS * STEPS), lessThan(BYTES_PER_FORECAST));
+  }
+
+  private static void assertTime(long start, long values) {
+    long elapsed = System.nanoTime() - start;
+    assertThat("Nanoseconds for " + values + " values", elapsed, lessThan((long) (values * NANOS_PER_VALUE * TIME_FACTOR)));
+  }
+
+  private static long usedHeapAfterGc() {
+    System.gc();
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  /**
+   * Tracks the maximum heap in use after garbage collections, the peak of live objects, relative to the heap in use
+   * when the monitor was started.
+   */
+  private static final class HeapMonitor implements NotificationListener, AutoCloseable {
+
+    private final Set<String> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+        .filter(pool -> pool.getType() == MemoryType.HEAP).map(MemoryPoolMXBean::getName).collect(Collectors.toSet());
+    private final long baseline = usedHeapAfterGc();
+    private final AtomicLong peak = new AtomicLong();
+    private final AtomicInteger samples = new AtomicInteger();
+
+    HeapMonitor() {
+      for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+        ((NotificationEmitter) collector).addNotificationListener(this, null, null);
+      }
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+      if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) return;
+      GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+      long used = info.getGcInfo().getMemoryUsageAfterGc().entrySet().stream()
+          .filter(pool -> heapPools.contains(pool.getKey())).mapToLong(pool -> pool.getValue().getUsed()).sum();
+      peak.accumulateAndGet(used, Math::max);
+      samples.incrementAndGet();
+    }
+
+    /**
+     * Returns the peak, including a sample of a garbage collection forced now, as notifications are sent only after
+     * collections and asynchronously.
+     */
+    long getPeak() throws InterruptedException {
+      int before = samples.get();
+      System.gc();
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (samples.get() == before) {
+        if (System.nanoTime() > deadline) throw new IllegalStateException("No garbage collection notification received");
+        Thread.sleep(10);
+      }
+      return Math.max(0, peak.get() - baseline);
+    }
+
+    @Override
+    public void close() {
+      for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+        try {
+          ((NotificationEmitter) collector).removeNotificationListener(this);
+        } catch (ListenerNotFoundException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    }
+  }
+}
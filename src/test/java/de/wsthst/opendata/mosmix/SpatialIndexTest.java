@@ -0,0 +1,105 @@
+package de.wsthst.opendata.mosmix;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.closeTo;
+
+class SpatialIndexTest {
+
+  @Test
+  void testIdenticalToBruteForce() throws Exception {
+    Random random = new Random(3);
+    int count = 2000;
+    List<String> stationIds = new ArrayList<>();
+    double[] latitudes = new double[count];
+    double[] longitudes = new double[count];
+    for (int i = 0; i < count; i++) {
+      stationIds.add(String.format("S%04d", i));
+      latitudes[i] = Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+      longitudes[i] = random.nextDouble() * 360 - 180;
+    }
+    SpatialIndex index = SpatialIndex.build(stationIds, latitudes, longitudes);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    index.write(new DataOutputStream(bytes));
+    SpatialIndex stored = SpatialIndex.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+    double[][] locations = {{50.1, 8.7}, {0, 179.9}, {-10, -179.95}, {89.9, 0}, {-90, 45}};
+    for (int i = 0; i < 200; i++) {
+      double latitude = i < locations.length ? locations[i][0] : random.nextDouble() * 180 - 90;
+      double longitude = i < locations.length ? locations[i][1] : random.nextDouble() * 360 - 180;
+      List<String> expected = IntStream.range(0, count).boxed()
+          .sorted(Comparator.comparingDouble(j -> SpatialIndex.distance(latitude, longitude, latitudes[j], longitudes[j])))
+          .limit(5).map(stationIds::get).collect(Collectors.toList());
+      assertThat(index.nearest(latitude, longitude, 5), is(expected));
+      assertThat(stored.nearest(latitude, longitude, 5), is(expected));
+    }
+
+    double[][] boxes = {{40, -10, 60, 30}, {-20, 170, 20, -170}, {80, -180, 90, 180}};
+    for (double[] box : boxes) {
+      List<String> expected = IntStream.range(0, count)
+          .filter(j -> latitudes[j] >= box[0] && latitudes[j] <= box[2]
+              && (box[1] <= box[3] ? longitudes[j] >= box[1] && longitudes[j] <= box[3] : longitudes[j] >= box[1] || longitudes[j] <= box[3]))
+          .mapToObj(stationIds::get).sorted().collect(Collectors.toList());
+      assertThat(index.within(box[0], box[1], box[2], box[3]), is(expected));
+    }
+  }
+
+  @Test
+  void testPlacemarkIndex(@TempDir Path tempDir) throws Exception {
+    Path kmlFile = tempDir.resolve("MOSMIX_S_2018032907_240.kml");
+    try (InputStream kml = getClass().getResourceAsStream("/MOSMIX_S_2018032907_240.kml")) {
+      Files.copy(kml, kmlFile);
+    }
+    PlacemarkIndex.build(kmlFile);
+    SpatialIndex index = PlacemarkIndex.open(kmlFile).getSpatialIndex();
+    assertThat(index.size(), is(2));
+    assertThat(index.nearest(50.11, 8.68, 2), contains("10637", "01025"));
+    assertThat(index.within(60, 10, 75, 25), contains("01025"));
+    assertThat(SpatialIndex.distance(50.05, 8.6, 69.68, 18.92), closeTo(2250, 1));
+  }
+
+  @Test
+  void testPlacemarkIndexDuplicateStation(@TempDir Path tempDir) throws Exception {
+    String kml;
+    try (InputStream in = getClass().getResourceAsStream("/MOSMIX_S_2018032907_240.kml")) {
+      kml = new String(in.readAllBytes(), StandardCharsets.ISO_8859_1);
+    }
+    int start = kml.indexOf("<kml:Placemark>");
+    int end = kml.indexOf("</kml:Placemark>", start) + "</kml:Placemark>".length();
+    String duplicate = kml.substring(start, end).replace("18.92,69.68,10.0", "0.0,0.0,0.0");
+    Path kmlFile = tempDir.resolve("MOSMIX_S_2018032907_240.kml");
+    Files.writeString(kmlFile, kml.substring(0, end) + "\n" + duplicate + kml.substring(end), StandardCharsets.ISO_8859_1);
+
+    PlacemarkIndex placemarkIndex = PlacemarkIndex.build(kmlFile);
+    assertThat(placemarkIndex.getStationIds(), contains("01025", "10637"));
+    SpatialIndex index = placemarkIndex.getSpatialIndex();
+    assertThat(index.size(), is(2));
+    assertThat(index.nearest(50.11, 8.68, 2), contains("10637", "01025"));
+    assertThat(index.within(60, 10, 75, 25), contains("01025"));
+    assertThat(index.within(-1, -1, 1, 1).isEmpty(), is(true));
+
+    List<PointTimeForecast> stations = new ArrayList<>();
+    new MosmixKmlReader().read(placemarkIndex, stations::add, "01025");
+    assertThat(stations.get(0).getStationLatitude(MosmixKmlSchema.STATION_COORDINATES_UNIT), is(69.68));
+  }
+}
@@ -0,0 +1,210 @@
+package de.wsthst.opendata.mosmix;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Generator of MOSMIX KML files of any size with the structure of the DWD files, for scale tests.
+ * <p>
+ * The elements of a product are taken from its fixture. Values are seeded random values in plausible ranges of the
+ * element, formatted like the DWD files, with a share of undefined values.
+ */
+final class SyntheticKml {
+
+  private static final DateTimeFormatter MODEL_RUN_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHH").withZone(ZoneOffset.UTC);
+  private static final DateTimeFormatter TIME_STEP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+  private static final Pattern ELEMENT_NAME = Pattern.compile("dwd:elementName=\"([^\"]+)\"");
+  private static final int VALUE_WIDTH = 11;
+
+  /**
+   * MOSMIX products with the fixture their elements are taken from.
+   */
+  enum Product {
+    S("MOSMIX_S", "DWD_MOSMIX_1H", "/MOSMIX_S_2018032907_240.kml"),
+    L("MOSMIX_L", "MOSMIX", "/MOSMIX_L_2019021903_10637.kml");
+
+    private final String prefix;
+    private final String productId;
+    private final String fixture;
+
+    Product(String prefix, String productId, String fixture) {
+      this.prefix = prefix;
+      this.productId = productId;
+      this.fixture = fixture;
+    }
+  }
+
+  private final Product product;
+  private final int stations;
+  private final int steps;
+  private final long seed;
+  private final double undefinedRate;
+  private final Instant modelRunTime;
+  private final List<String> elements;
+  private final byte[] buffer = new byte[VALUE_WIDTH];
+
+  /**
+   * Constructor.
+   *
+   * @param product       The product.
+   * @param stations      The number of stations.
+   * @param steps         The number of hourly forecast steps.
+   * @param seed          The seed of the random values.
+   * @param undefinedRate The share of undefined values between 0 and 1.
+   */
+  SyntheticKml(Product product, int stations, int steps, long seed, double undefinedRate) throws IOException {
+    this.product = product;
+    this.stations = stations;
+    this.steps = steps;
+    this.seed = seed;
+    this.undefinedRate = undefinedRate;
+    this.modelRunTime = Instant.parse("2018-03-29T03:00:00Z");
+    this.elements = readElements(product);
+  }
+
+  private static List<String> readElements(Product product) throws IOException {
+    try (InputStream in = SyntheticKml.class.getResourceAsStream(product.fixture)) {
+      Matcher matcher = ELEMENT_NAME.matcher(new String(in.readAllBytes(), StandardCharsets.ISO_8859_1));
+      Set<String> elements = new LinkedHashSet<>();
+      while (matcher.find()) elements.add(matcher.group(1));
+      return new ArrayList<>(elements);
+    }
+  }
+
+  List<String> getElements() {
+    return elements;
+  }
+
+  /**
+   * Returns the ID of the nth station beginning with 0.
+   */
+  static String stationId(int station) {
+    return String.format("%05d", station);
+  }
+
+  /**
+   * Writes the KML file into a folder, named like the DWD files with the model run time at third position.
+   */
+  Path write(Path folder) throws IOException {
+    Path file = folder.resolve(product.prefix + "_" + MODEL_RUN_FORMAT.format(modelRunTime) + "_" + stations + "x" + steps + ".kml");
+    try (OutputStream out = Files.newOutputStream(file)) {
+      write(out);
+    }
+    return file;
+  }
+
+  void write(OutputStream output) throws IOException {
+    BufferedOutputStream out = new BufferedOutputStream(output, 1 << 16);
+    write(out, "<?xml version=\"1.0\" encoding=\"ISO-8859-1\" standalone=\"yes\"?>\n"
+        + "<kml:kml xmlns:dwd=\"https://opendata.dwd.de/weather/lib/pointforecast_dwd_extension_V1_0.xsd\" "
+        + "xmlns:gx=\"http://www.google.com/kml/ext/2.2\" xmlns:xal=\"urn:oasis:names:tc:ciq:xsdschema:xAL:2.0\" "
+        + "xmlns:kml=\"http://www.opengis.net/kml/2.2\" xmlns:atom=\"http://www.w3.org/2005/Atom\">\n"
+        + "    <kml:Document>\n"
+        + "        <kml:ExtendedData>\n"
+        + "            <dwd:ProductDefinition>\n"
+        + "                <dwd:Issuer>Deutscher Wetterdienst</dwd:Issuer>\n"
+        + "                <dwd:ProductID>" + product.productId + "</dwd:ProductID>\n"
+        + "                <dwd:GeneratingProcess>DWD MOSMIX hourly, Version 1.0</dwd:GeneratingProcess>\n"
+        + "                <dwd:IssueTime>" + modelRunTime + "</dwd:IssueTime>\n"
+        + "                <dwd:ReferencedModel>\n"
+        + "                    <dwd:Model dwd:name=\"ICON\" dwd:referenceTime=\"" + modelRunTime.minus(3, ChronoUnit.HOURS) + "\"/>\n"
+        + "                </dwd:ReferencedModel>\n"
+        + "                <dwd:ForecastTimeSteps>\n");
+    for (int step = 1; step <= steps; step++) {
+      write(out, "                    <dwd:TimeStep>" + TIME_STEP_FORMAT.format(modelRunTime.plus(step, ChronoUnit.HOURS)) + "</dwd:TimeStep>\n");
+    }
+    write(out, "                </dwd:ForecastTimeSteps>\n"
+        + "                <dwd:FormatCfg>\n"
+        + "                    <dwd:DefaultUndefSign>-</dwd:DefaultUndefSign>\n"
+        + "                </dwd:FormatCfg>\n"
+        + "            </dwd:ProductDefinition>\n"
+        + "        </kml:ExtendedData>\n");
+
+    Random random = new Random(seed);
+    for (int station = 0; station < stations; station++) {
+      double latitude = -60 + random.nextDouble() * 140;
+      double longitude = -180 + random.nextDouble() * 360;
+      double height = Math.floor(random.nextDouble() * 30000) / 10;
+      write(out, "        <kml:Placemark>\n"
+          + "            <kml:name>" + stationId(station) + "</kml:name>\n"
+          + "            <kml:description>SYNTHETIC " + station + "</kml:description>\n"
+          + "            <kml:ExtendedData>\n");
+      for (String element : elements) {
+        write(out, "                <dwd:Forecast dwd:elementName=\"" + element + "\">\n"
+            + "                    <dwd:value>");
+        double[] range = range(element);
+        double value = range[0] + random.nextDouble() * (range[1] - range[0]);
+        for (int step = 0; step < steps; step++) {
+          value = Math.max(range[0], Math.min(range[1], value + (random.nextDouble() - 0.5) * (range[1] - range[0]) * 0.05));
+          writeValue(out, random.nextDouble() < undefinedRate ? Double.NaN : range[2] == 0 ? Math.rint(value) : value);
+        }
+        write(out, "</dwd:value>\n"
+            + "                </dwd:Forecast>\n");
+      }
+      write(out, "            </kml:ExtendedData>\n"
+          + "            <kml:Point>\n"
+          + String.format(Locale.ROOT, "                <kml:coordinates>%.2f,%.2f,%.1f</kml:coordinates>\n", longitude, latitude, height)
+          + "            </kml:Point>\n"
+          + "        </kml:Placemark>\n");
+    }
+    write(out, "    </kml:Document>\n"
+        + "</kml:kml>\n");
+    out.flush();
+  }
+
+  /**
+   * Returns minimum, maximum and 1 for decimals or 0 for integers of an element.
+   */
+  private static double[] range(String element) {
+    if (element.equals("PPPP")) return new double[] {97000, 104000, 1};
+    if (element.startsWith("T")) return new double[] {245, 310, 1};
+    if (element.equals("DD")) return new double[] {0, 360, 0};
+    if (element.startsWith("F")) return new double[] {0, 30, 1};
+    if (element.startsWith("ww") || element.equals("W1W2")) return new double[] {0, 95, 0};
+    if (element.startsWith("RR")) return new double[] {0, 8, 1};
+    if (element.startsWith("SunD") || element.startsWith("Rad")) return new double[] {0, 3600, 0};
+    if (element.equals("VV")) return new double[] {100, 50000, 0};
+    return new double[] {0, 100, 0};
+  }
+
+  /**
+   * Writes a value right aligned with two decimals like the DWD files, or the undefined sign.
+   */
+  private void writeValue(OutputStream out, double value) throws IOException {
+    int position = VALUE_WIDTH;
+    if (Double.isNaN(value)) {
+      buffer[--position] = '-';
+    } else {
+      long hundredths = Math.round(Math.abs(value) * 100);
+      for (int digits = 0; digits < 3 || hundredths > 0; digits++) {
+        if (digits == 2) buffer[--position] = '.';
+        buffer[--position] = (byte) ('0' + hundredths % 10);
+        hundredths /= 10;
+      }
+      if (value < 0) buffer[--position] = '-';
+    }
+    while (position > 0) buffer[--position] = ' ';
+    out.write(buffer);
+  }
+
+  private static void write(OutputStream out, String text) throws IOException {
+    out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+  }
+}
@@ -0,0 +1,79 @@
+package de.wsthst.opendata.mosmix;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import static java.lang.Double.NaN;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for parsing dwd:value contents.
+ */
+class ValueTokenizerTest {
+
+  @Test
+  void testTokenize() {
+    double[] values = new double[5];
+    ValueTokenizer tokenizer = new ValueTokenizer();
+    tokenizer.reset(values);
+    char[] text = "  100820.00        -\n    272.55  0.00  ".toCharArray();
+    tokenizer.feed(text, 0, text.length);
+
+    assertThat(tokenizer.finish(), is(4));
+    assertThat(values[0], is(100820.0));
+    assertThat(values[1], is(NaN));
+    assertThat(values[2], is(272.55));
+    assertThat(values[3], is(0.0));
+    assertThat(values[4], is(NaN));
+  }
+
+  @Test
+  void testTokenizeChunks() {
+    double[] values = new double[3];
+    ValueTokenizer tokenizer = new ValueTokenizer();
+    tokenizer.reset(values);
+    char[] text = " 1.25 27 -  ".toCharArray();
+    tokenizer.feed(text, 0, 3);
+    tokenizer.feed(text, 3, 4);
+    tokenizer.feed(text, 7, text.length - 7);
+
+    assertThat(tokenizer.finish(), is(3));
+    assertThat(values[0], is(1.25));
+    assertThat(values[1], is(27.0));
+    assertThat(values[2], is(NaN));
+  }
+
+  @Test
+  void testTokenizeBytes() {
+    double[] values = new double[4];
+    ValueTokenizer tokenizer = new ValueTokenizer();
+    tokenizer.reset(values);
+    ByteBuffer bytes = ByteBuffer.wrap("<v>  100820.00        -\n    -2.5  1e2</v>".getBytes(StandardCharsets.ISO_8859_1));
+    tokenizer.feed(bytes, 3, bytes.limit() - 4);
+
+    assertThat(tokenizer.finish(), is(4));
+    assertThat(values[0], is(100820.0));
+    assertThat(values[1], is(NaN));
+    assertThat(values[2], is(-2.5));
+    assertThat(values[3], is(100.0));
+  }
+
+  @Test
+  void testParseIdenticalToParseDouble() {
+    Random random = new Random(42);
+    String[] fixed = {"0", "0.00", "-0.00", "1e5", "0.1", "0.30000000000000004", "123456789012345678.5", "00012.50", "9007199254740993"};
+    for (String value : fixed) {
+      assertThat(value, ValueTokenizer.parse(value.toCharArray(), value.length()), is(Double.parseDouble(value)));
+      assertThat(value, ValueTokenizer.parse(ByteBuffer.wrap(value.getBytes(StandardCharsets.ISO_8859_1)), 0, value.length()), is(Double.parseDouble(value)));
+    }
+    for (int i = 0; i < 100_000; i++) {
+      String value = String.format(Locale.ROOT, "%." + random.nextInt(6) + "f", random.nextDouble() * Math.pow(10, random.nextInt(9)));
+      assertThat(value, ValueTokenizer.parse(value.toCharArray(), value.length()), is(Double.parseDouble(value)));
+    }
+  }
+}